@@ -18,34 +18,66 @@ package com.netflix.spinnaker.halyard.cli;
 
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.ParameterException;
+import com.netflix.spinnaker.halyard.cli.command.v1.CommandExitException;
 import com.netflix.spinnaker.halyard.cli.command.v1.GlobalOptions;
 import com.netflix.spinnaker.halyard.cli.command.v1.HalCommand;
 import com.netflix.spinnaker.halyard.cli.ui.v1.AnsiUi;
+import com.netflix.spinnaker.halyard.cli.ui.v1.StructuredOutput;
 
 
 public class Main {
   public static void main(String[] args) {
+    int exitCode = run(args);
+    if (exitCode != 0) {
+      System.exit(exitCode);
+    }
+  }
+
+  /**
+   * Parses & runs a single hal command, reporting any failure.
+   *
+   * @param args are the command's arguments, not including "hal".
+   * @return the command's exit code.
+   */
+  public static int run(String[] args) {
+    StructuredOutput.start();
+    try {
+      return parseAndExecute(args);
+    } finally {
+      StructuredOutput.finish();
+    }
+  }
+
+  private static int parseAndExecute(String[] args) {
     GlobalOptions globalOptions = GlobalOptions.getGlobalOptions();
 
     HalCommand hal = new HalCommand();
     JCommander jc = new JCommander(hal);
-    hal.setCommander(jc).configureSubcommands();
+    // Most invocations reach a single leaf command, so only build & register the commands named in args.
+    hal.setCommander(jc).configureSubcommands(args);
 
     try {
       jc.parse(args);
     } catch (IllegalArgumentException e) {
       AnsiUi.error("Illegal argument: " + e.getMessage());
-      System.exit(1);
+      return 1;
     } catch (ParameterException e) {
-      System.out.println(e.getMessage());
-      System.exit(1);
+      String message = describeParseFailure(args, e);
+      if (StructuredOutput.isEnabled()) {
+        StructuredOutput.message("error", message);
+      } else {
+        System.out.println(message);
+      }
+      return 1;
     }
 
     try {
       hal.execute();
+    } catch (CommandExitException e) {
+      return e.getExitCode();
     } catch (IllegalArgumentException e) {
       AnsiUi.error("Illegal argument: " + e.getMessage());
-      System.exit(1);
+      return 1;
     } catch (Exception e) {
       if (globalOptions.isDebug()) {
         e.printStackTrace();
@@ -53,7 +85,28 @@ public class Main {
 
       AnsiUi.error(e.getMessage());
       AnsiUi.remediation("That wasn't supposed to happen.\nPlease report an issue on https://github.com/spinnaker/halyard/issues");
-      System.exit(1);
+      return 1;
+    }
+
+    return 0;
+  }
+
+  /**
+   * A mistyped command isn't registered with the partial command tree, and so is reported as an unexpected main
+   * parameter. Reparsing against the full tree reports it the way it always has.
+   */
+  private static String describeParseFailure(String[] args, ParameterException e) {
+    HalCommand hal = new HalCommand();
+    JCommander jc = new JCommander(hal);
+    hal.setCommander(jc).configureSubcommands();
+
+    try {
+      jc.parse(args);
+    } catch (ParameterException fullTreeException) {
+      return fullTreeException.getMessage();
+    } catch (IllegalArgumentException ignored) {
     }
+
+    return e.getMessage();
   }
 }
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2017 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.halyard.cli.command.v1;
+
+import lombok.Getter;
+
+/**
+ * This is used by commands to end with a given exit code, once they've reported why. The caller decides whether to
+ * exit the JVM, so several commands can be run in one (e.g. by `hal shell`).
+ */
+public class CommandExitException extends RuntimeException {
+  @Getter
+  private final int exitCode;
+
+  public CommandExitException(int exitCode) {
+    super("Command exited with code " + exitCode);
+    this.exitCode = exitCode;
+  }
+}
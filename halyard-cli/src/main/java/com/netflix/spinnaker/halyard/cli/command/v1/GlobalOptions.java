@@ -18,6 +18,7 @@ package com.netflix.spinnaker.halyard.cli.command.v1;
 
 import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.Logger;
+import com.netflix.spinnaker.halyard.cli.ui.v1.OutputFormat;
 import lombok.Data;
 import org.slf4j.LoggerFactory;
 
@@ -28,7 +29,8 @@ import org.slf4j.LoggerFactory;
 public class GlobalOptions {
   private boolean version = false;
 
-  private boolean color = true;
+  // ANSI codes are only useful when a terminal will interpret them, not when output is piped or redirected.
+  private boolean color = System.console() != null;
 
   private boolean debug = false;
 
@@ -36,6 +38,8 @@ public class GlobalOptions {
 
   private Level log;
 
+  private OutputFormat output = OutputFormat.TEXT;
+
   private static GlobalOptions globalOptions = null;
 
   public void setLog(Level log) {
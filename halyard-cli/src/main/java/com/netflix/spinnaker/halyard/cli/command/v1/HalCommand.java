@@ -18,9 +18,16 @@ package com.netflix.spinnaker.halyard.cli.command.v1;
 
 import com.beust.jcommander.Parameter;
 import com.netflix.spinnaker.halyard.cli.services.v1.Daemon;
+import com.netflix.spinnaker.halyard.cli.ui.v1.StructuredOutput;
+import com.netflix.spinnaker.halyard.config.config.v1.AtomicFileWriter;
 import lombok.AccessLevel;
 import lombok.Getter;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
@@ -66,10 +73,11 @@ public class HalCommand extends NestableCommand {
   private boolean docs;
 
   public HalCommand() {
-    registerSubcommand(new AdminCommand());
-    registerSubcommand(new ConfigCommand());
-    registerSubcommand(new DeployCommand());
-    registerSubcommand(new VersionsCommand());
+    registerSubcommand("admin", AdminCommand::new);
+    registerSubcommand("config", ConfigCommand::new);
+    registerSubcommand("deploy", DeployCommand::new);
+    registerSubcommand("shell", ShellCommand::new);
+    registerSubcommand("versions", VersionsCommand::new);
   }
 
   private String getVersion() {
@@ -77,6 +85,40 @@ public class HalCommand extends NestableCommand {
         .ofNullable(HalCommand.class.getPackage().getImplementationVersion()).orElse("Unknown");
   }
 
+  /**
+   * The command tree only changes between releases, so the completion script is generated once per version of hal
+   * and read back from disk after that.
+   */
+  private String cachedCommandCompletor() {
+    String version = getVersion();
+    if (version.equals("Unknown")) {
+      return commandCompletor();
+    }
+
+    Path cache = Paths.get(System.getProperty("user.home"), ".hal", ".cache", "bash-completion-" + version);
+    try {
+      return new String(Files.readAllBytes(cache), StandardCharsets.UTF_8);
+    } catch (IOException ignored) {
+    }
+
+    String completor = commandCompletor();
+    // Written atomically, so a hal run concurrently (or interrupted mid-write) never reads back a truncated script.
+    AtomicFileWriter writer = null;
+    try {
+      writer = new AtomicFileWriter(cache);
+      writer.write(completor);
+      writer.commit();
+    } catch (IOException ignored) {
+      // The cache is an optimization; failing to write it only means the script is regenerated next time.
+    } finally {
+      if (writer != null) {
+        writer.close();
+      }
+    }
+
+    return completor;
+  }
+
   @Override
   public String getDescription() {
     return "A tool for configuring, installing, and updating Spinnaker.\n\n"
@@ -106,26 +148,34 @@ public class HalCommand extends NestableCommand {
         + "  $ hal deploy run\n";
   }
 
+  private static void printResult(Object result) {
+    if (StructuredOutput.isEnabled()) {
+      StructuredOutput.result(result);
+    } else {
+      System.out.println(result);
+    }
+  }
+
   @Override
   protected void executeThis() {
     if (tasks) {
-      System.out.println(Daemon.getTasks());
+      printResult(Daemon.getTasks());
     }
 
     if (docs) {
-      System.out.println(generateDocs());
+      printResult(generateDocs());
     }
 
     if (version) {
-      System.out.println(getVersion());
+      printResult(getVersion());
     }
 
     if (printBashCompletion) {
-      System.out.println(commandCompletor());
+      printResult(cachedCommandCompletor());
     }
 
     if (healthy) {
-      System.exit(Daemon.isHealthy() ? 0 : -1);
+      throw new CommandExitException(Daemon.isHealthy() ? 0 : -1);
     }
 
     if (!version && !printBashCompletion && !tasks && !docs) {
@@ -22,6 +22,7 @@ import com.beust.jcommander.Parameter;
 import com.beust.jcommander.ParameterDescription;
 import com.beust.jcommander.Parameters;
 import com.netflix.spinnaker.halyard.cli.command.v1.converter.LogLevelConverter;
+import com.netflix.spinnaker.halyard.cli.command.v1.converter.OutputFormatConverter;
 import com.netflix.spinnaker.halyard.cli.services.v1.ExpectedDaemonFailureException;
 import com.netflix.spinnaker.halyard.cli.ui.v1.*;
 import com.netflix.spinnaker.halyard.core.job.v1.JobExecutor;
@@ -34,6 +35,8 @@ import retrofit.RetrofitError;
 
 import java.net.ConnectException;
 import java.util.*;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 @Parameters(separators = "=")
 public abstract class NestableCommand {
@@ -58,11 +61,22 @@ public abstract class NestableCommand {
     GlobalOptions.getGlobalOptions().setLog(log);
   }
 
-  @Parameter(names = { "-c", "--color" }, description = "Enable terminal color output.", arity = 1)
+  @Parameter(names = { "-c", "--color" }, description = "Enable terminal color output. Defaults to true when attached to a terminal.", arity = 1)
   public void setColor(boolean color) {
     GlobalOptions.getGlobalOptions().setColor(color);
   }
 
+  @Parameter(
+      names = {"-o", "--output"},
+      converter = OutputFormatConverter.class,
+      description = "Format the CLI's output as \"text\", or as JSON records for scripts to parse: \"json\" writes a "
+          + "single array of records, \"ndjson\" writes one record per line. Records are written as they arrive. "
+          + "`hal shell` writes a single array for the whole session. Help text is written to stderr."
+  )
+  public void setOutput(OutputFormat output) {
+    GlobalOptions.getGlobalOptions().setOutput(output);
+  }
+
   private String fullCommandName = "";
 
   private static JobExecutor jobExecutor;
@@ -81,7 +95,7 @@ public abstract class NestableCommand {
         safeExecuteThis();
       }
     } else {
-      subcommands.get(subCommand).execute();
+      getSubcommand(subCommand).execute();
     }
   }
 
@@ -91,26 +105,28 @@ public abstract class NestableCommand {
   private void safeExecuteThis() {
     try {
       executeThis();
+    } catch (CommandExitException e) {
+      throw e;
     } catch (RetrofitError e) {
       if (e.getCause() instanceof ConnectException) {
         AnsiUi.error(e.getCause().getMessage());
         AnsiUi.remediation("Is your daemon running?");
-        System.exit(1);
+        throw new CommandExitException(1);
       }
 
       AnsiUi.error(e.getMessage());
       AnsiUi.remediation("Try the command again with the --debug flag.");
-      System.exit(1);
+      throw new CommandExitException(1);
     } catch (ExpectedDaemonFailureException e) {
       AnsiUi.failure(e.getMessage());
-      System.exit(1);
+      throw new CommandExitException(1);
     } catch (Exception e) {
       if (GlobalOptions.getGlobalOptions().isDebug()) {
         e.printStackTrace();
       } else {
         AnsiUi.error(e.getMessage());
       }
-      System.exit(1);
+      throw new CommandExitException(1);
     }
   }
 
@@ -132,7 +148,7 @@ public abstract class NestableCommand {
       usage += " [parameters]";
     }
 
-    if (!subcommands.isEmpty()) {
+    if (!subcommandFactories.isEmpty()) {
       usage += " [subcommands]";
     }
 
@@ -185,9 +201,9 @@ public abstract class NestableCommand {
       }
     }
 
-    if (!subcommands.isEmpty()) {
+    if (!subcommandFactories.isEmpty()) {
       int maxLen = -1;
-      for (String key : subcommands.keySet()) {
+      for (String key : subcommandFactories.keySet()) {
         if (key.length() > maxLen) {
           maxLen = key.length();
         }
@@ -197,7 +213,7 @@ public abstract class NestableCommand {
       paragraph.addSnippet("SUBCOMMANDS").addStyle(AnsiStyle.BOLD);
       story.addNewline();
 
-      List<String> keys = new ArrayList<>(subcommands.keySet());
+      List<String> keys = new ArrayList<>(subcommandFactories.keySet());
       keys.sort(String::compareTo);
 
       for (String key : keys) {
@@ -205,12 +221,17 @@ public abstract class NestableCommand {
         paragraph.addSnippet(key).addStyle(AnsiStyle.BOLD);
 
         paragraph = story.addParagraph().setIndentWidth(indentWidth * 2);
-        paragraph.addSnippet(subcommands.get(key).getDescription());
+        paragraph.addSnippet(getSubcommand(key).getDescription());
         story.addNewline();
       }
     }
 
-    AnsiPrinter.println(story.toString());
+    if (StructuredOutput.isEnabled()) {
+      // Help is for people, so keep it out of the records on stdout.
+      System.err.println(story.toString());
+    } else {
+      AnsiPrinter.println(story.toString());
+    }
   }
 
   private void parameterDoc(StringBuilder result, ParameterDescription parameterDescription) {
@@ -234,6 +255,8 @@ public abstract class NestableCommand {
   }
 
   public String generateDocs() {
+    configureSubcommands();
+
     StringBuilder toc = new StringBuilder();
     toc.append("# Table of Contents\n");
     StringBuilder body = new StringBuilder();
@@ -245,8 +268,11 @@ public abstract class NestableCommand {
     commandDocs(body);
     commandLink(toc);
 
-    for (NestableCommand command : subcommands.values()) {
-      command.nestedCommandDocs(toc, body);
+    List<String> keys = new ArrayList<>(subcommandFactories.keySet());
+    keys.sort(String::compareTo);
+
+    for (String key : keys) {
+      getSubcommand(key).nestedCommandDocs(toc, body);
     }
   }
 
@@ -292,7 +318,7 @@ public abstract class NestableCommand {
       result.append(" [parameters]");
     }
 
-    if (!subcommands.isEmpty()) {
+    if (!subcommandFactories.isEmpty()) {
       result.append(" [subcommands]");
     }
 
@@ -332,10 +358,10 @@ public abstract class NestableCommand {
       }
     }
 
-    if (!subcommands.isEmpty()) {
+    if (!subcommandFactories.isEmpty()) {
       result.append("#### Subcommands\n");
 
-      List<String> keys = new ArrayList<>(subcommands.keySet());
+      List<String> keys = new ArrayList<>(subcommandFactories.keySet());
       keys.sort(String::compareTo);
 
       for (String key : keys) {
@@ -344,7 +370,7 @@ public abstract class NestableCommand {
             .append(key)
             .append("`")
             .append(": ")
-            .append(subcommands.get(key).getDescription())
+            .append(getSubcommand(key).getDescription())
             .append("\n");
       }
     }
@@ -374,57 +400,73 @@ public abstract class NestableCommand {
     story.addNewline();
   }
 
+  /**
+   * @return a bash completion script for this command. The command tree is flattened into a table from each command
+   * path (e.g. "hal config provider") to its subcommands & flags, so completing a word is a single lookup.
+   */
   public String commandCompletor() {
-    JarResource completorBody = new JarResource("/hal-completor-body");
-    Map<String, String> bindings = new HashMap<>();
+    configureSubcommands();
+
+    StringBuilder table = new StringBuilder();
+    commandCompletorEntries(getCommandName(), table);
 
-    String body = commandCompletorCase(0);
-    bindings.put("body", body);
+    Map<String, String> bindings = new HashMap<>();
+    bindings.put("table", table.toString());
 
-    return completorBody.setBindings(bindings).toString();
+    return new JarResource("/hal-completor-body").setBindings(bindings).toString();
   }
 
-  private String commandCompletorCase(int depth) {
-    JarResource completorCase = new JarResource("/hal-completor-case");
-    Map<String, String> bindings = new HashMap<>();
-    String flagNames = commander.getParameters()
-        .stream()
-        .map(ParameterDescription::getLongestName)
-        .reduce("", (a, b) -> a + " " + b);
-
-    String subcommandNames = subcommands.entrySet()
-        .stream()
-        .map(Map.Entry::getKey)
-        .reduce("", (a, b) -> a + " " + b);
-
-    bindings.put("subcommands", subcommandNames);
-    bindings.put("flags", flagNames);
-    bindings.put("command", getCommandName());
-    bindings.put("depth", depth + "");
-    bindings.put("next", (depth + 1) + "");
-
-    String subCases = subcommands.entrySet()
-        .stream()
-        .map(c -> c.getValue().commandCompletorCase(depth + 1))
-        .reduce("", (a, b) -> a + b);
-
-    bindings.put("recurse", subCases.isEmpty() ? ":" : subCases);
-
-    return completorCase.setBindings(bindings).toString();
+  private void commandCompletorEntries(String path, StringBuilder table) {
+    Set<String> subcommandNames = new TreeSet<>(subcommandFactories.keySet());
+    Set<String> flagNames = new TreeSet<>();
+    for (ParameterDescription parameter : commander.getParameters()) {
+      flagNames.add(parameter.getLongestName());
+    }
+
+    table.append("    \"").append(path).append("\")\n")
+        .append("        subcommands=\"").append(String.join(" ", subcommandNames)).append("\"\n")
+        .append("        flags=\"").append(String.join(" ", flagNames)).append("\"\n")
+        .append("        ;;\n");
+
+    for (String subcommandName : subcommandNames) {
+      getSubcommand(subcommandName).commandCompletorEntries(path + " " + subcommandName, table);
+    }
   }
 
   abstract public String getDescription();
   abstract public String getCommandName();
   abstract protected void executeThis();
 
+  private Map<String, Supplier<NestableCommand>> subcommandFactories = new HashMap<>();
   private Map<String, NestableCommand> subcommands = new HashMap<>();
+  private Set<String> configuredSubcommands = new HashSet<>();
 
   protected void registerSubcommand(NestableCommand subcommand) {
-    String subcommandName = subcommand.getCommandName();
-    if (subcommands.containsKey(subcommandName)) {
+    registerSubcommand(subcommand.getCommandName(), () -> subcommand);
+  }
+
+  /**
+   * Register a subcommand that isn't constructed until it's needed, so invocations that never reach it don't pay for
+   * building it (and its own subcommands).
+   *
+   * @param subcommandName must match the subcommand's getCommandName().
+   * @param factory constructs the subcommand.
+   */
+  protected void registerSubcommand(String subcommandName, Supplier<NestableCommand> factory) {
+    if (subcommandFactories.containsKey(subcommandName)) {
       throw new RuntimeException("Unable to register duplicate subcommand " + subcommandName + " for command " + getCommandName());
     }
-    subcommands.put(subcommandName, subcommand);
+    subcommandFactories.put(subcommandName, factory);
+  }
+
+  private NestableCommand getSubcommand(String subcommandName) {
+    return subcommands.computeIfAbsent(subcommandName, n -> {
+      NestableCommand subcommand = subcommandFactories.get(n).get();
+      if (!subcommand.getCommandName().equals(n)) {
+        throw new RuntimeException("Subcommand " + subcommand.getCommandName() + " was registered as " + n + " for command " + getCommandName());
+      }
+      return subcommand;
+    });
   }
 
   /**
@@ -432,20 +474,44 @@ public abstract class NestableCommand {
    * command names along the way.
    */
   public void configureSubcommands() {
+    configureSubcommands(n -> true);
+  }
+
+  /**
+   * Like configureSubcommands(), but only constructs & registers the subcommands named somewhere in args. Since a
+   * command can only be reached through its parent's name, this covers the whole path args can select, and parses
+   * args exactly as the full tree would.
+   *
+   * @param args are the command-line arguments about to be parsed.
+   */
+  public void configureSubcommands(String[] args) {
+    Set<String> named = new HashSet<>(Arrays.asList(args));
+    configureSubcommands(named::contains);
+  }
+
+  private void configureSubcommands(Predicate<String> include) {
     if (fullCommandName.isEmpty()) {
       fullCommandName = getCommandName();
     }
 
-    for (NestableCommand subCommand: subcommands.values()) {
-      subCommand.fullCommandName = fullCommandName + " " + subCommand.getCommandName();
+    for (String subcommandName : subcommandFactories.keySet()) {
+      if (!include.test(subcommandName)) {
+        continue;
+      }
+
+      NestableCommand subCommand = getSubcommand(subcommandName);
+      if (configuredSubcommands.add(subcommandName)) {
+        subCommand.fullCommandName = fullCommandName + " " + subcommandName;
 
-      commander.addCommand(subCommand.getCommandName(), subCommand);
+        commander.addCommand(subcommandName, subCommand);
+
+        // We need to provide the subcommand with its own commander before recursively populating its subcommands, since
+        // they need to be registered with this subcommander we retrieve here.
+        JCommander subCommander = commander.getCommands().get(subcommandName);
+        subCommand.setCommander(subCommander);
+      }
 
-      // We need to provide the subcommand with its own commander before recursively populating its subcommands, since
-      // they need to be registered with this subcommander we retrieve here.
-      JCommander subCommander = commander.getCommands().get(subCommand.getCommandName());
-      subCommand.setCommander(subCommander);
-      subCommand.configureSubcommands();
+      subCommand.configureSubcommands(include);
     }
   }
 
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2017 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.halyard.cli.command.v1;
+
+import ch.qos.logback.classic.Level;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+import com.netflix.spinnaker.halyard.cli.Main;
+import com.netflix.spinnaker.halyard.cli.ui.v1.AnsiUi;
+import com.netflix.spinnaker.halyard.cli.ui.v1.OutputFormat;
+import com.netflix.spinnaker.halyard.cli.ui.v1.StructuredOutput;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs many hal commands in one CLI process, reading them one per line from stdin or a file.
+ *
+ * Usage is `$ hal shell`
+ */
+@Parameters(separators = "=")
+public class ShellCommand extends NestableCommand {
+  @Getter(AccessLevel.PUBLIC)
+  private String commandName = "shell";
+
+  @Getter(AccessLevel.PUBLIC)
+  private String description = "Run hal commands read one per line from stdin (or --file), in a single process. This "
+      + "saves the startup cost of running each as its own `hal` invocation, and reuses connections to the daemon. "
+      + "Lines may omit the leading `hal`, and may quote arguments as a shell would; blank lines and lines starting "
+      + "with `#` are skipped. When not run interactively, the shell exits with a non-zero code if any command failed. With "
+      + "`--output json`, the whole session is written as a single array, with a \"command\" record before each line's "
+      + "records.";
+
+  @Parameter(
+      names = "--file",
+      description = "Read commands from this file rather than stdin."
+  )
+  private String file;
+
+  @Parameter(
+      names = "--fail-fast",
+      description = "Stop at the first command that fails, and exit with its exit code."
+  )
+  private boolean failFast;
+
+  @Override
+  protected void executeThis() {
+    boolean interactive = file == null && System.console() != null;
+
+    // Flags given to a single command (e.g. --debug) only apply to that command.
+    GlobalOptions options = GlobalOptions.getGlobalOptions();
+    boolean debug = options.isDebug();
+    boolean color = options.isColor();
+    Level log = options.getLog();
+    OutputFormat output = options.getOutput();
+
+    int failures = 0;
+    try (BufferedReader reader = openInput()) {
+      int lineNumber = 0;
+      while (true) {
+        if (interactive) {
+          // Keep the prompt out of any records written to stdout.
+          PrintStream prompt = StructuredOutput.isEnabled() ? System.err : System.out;
+          prompt.print("hal> ");
+          prompt.flush();
+        }
+
+        String line = reader.readLine();
+        if (line == null) {
+          break;
+        }
+        lineNumber++;
+
+        List<String> args;
+        int exitCode;
+        try {
+          args = tokenize(line);
+        } catch (IllegalArgumentException e) {
+          AnsiUi.error("Line " + lineNumber + ": " + e.getMessage());
+          args = null;
+        }
+
+        if (args == null) {
+          exitCode = 1;
+        } else {
+          if (!args.isEmpty() && args.get(0).equals("hal")) {
+            args.remove(0);
+          }
+
+          if (args.isEmpty()) {
+            continue;
+          }
+
+          String command = args.get(0);
+          if (command.equals("exit") || command.equals("quit")) {
+            break;
+          }
+
+          if (command.equals(getCommandName())) {
+            AnsiUi.error("Line " + lineNumber + ": already running in a shell.");
+            exitCode = 1;
+          } else {
+            options.setDebug(debug);
+            options.setColor(color);
+            options.setLog(log);
+            options.setOutput(output);
+            if (StructuredOutput.isEnabled()) {
+              // Marks where each command's records begin, within the session's single array.
+              StructuredOutput.message("command", line.trim());
+            }
+            exitCode = Main.run(args.toArray(new String[0]));
+          }
+        }
+
+        if (exitCode != 0) {
+          failures++;
+          if (failFast && !interactive) {
+            AnsiUi.failure("Stopping at line " + lineNumber + ": " + line.trim());
+            throw new CommandExitException(exitCode);
+          }
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Unable to read commands: " + e.getMessage(), e);
+    }
+
+    if (failures > 0 && !interactive) {
+      AnsiUi.failure(failures + " command(s) failed.");
+      throw new CommandExitException(1);
+    }
+  }
+
+  private BufferedReader openInput() throws IOException {
+    if (file == null) {
+      return new BufferedReader(new InputStreamReader(System.in));
+    } else {
+      return new BufferedReader(new FileReader(file));
+    }
+  }
+
+  /**
+   * Splits a line into arguments the way a shell would: on unquoted whitespace, with single & double quotes grouping
+   * words, backslashes escaping the next character (outside of single quotes), and an unquoted `#` starting a comment.
+   */
+  static List<String> tokenize(String line) {
+    List<String> tokens = new ArrayList<>();
+    StringBuilder token = new StringBuilder();
+    boolean inToken = false;
+    char quote = 0;
+
+    for (int i = 0; i < line.length(); i++) {
+      char c = line.charAt(i);
+      if (quote != 0) {
+        if (c == quote) {
+          quote = 0;
+        } else if (c == '\\' && quote == '"' && i + 1 < line.length()) {
+          token.append(line.charAt(++i));
+        } else {
+          token.append(c);
+        }
+      } else if (c == '\'' || c == '"') {
+        quote = c;
+        inToken = true;
+      } else if (c == '\\' && i + 1 < line.length()) {
+        token.append(line.charAt(++i));
+        inToken = true;
+      } else if (Character.isWhitespace(c)) {
+        if (inToken) {
+          tokens.add(token.toString());
+          token.setLength(0);
+          inToken = false;
+        }
+      } else if (c == '#' && !inToken) {
+        break;
+      } else {
+        token.append(c);
+        inToken = true;
+      }
+    }
+
+    if (quote != 0) {
+      throw new IllegalArgumentException("Unterminated " + quote + " quote.");
+    }
+
+    if (inToken) {
+      tokens.add(token.toString());
+    }
+
+    return tokens;
+  }
+}
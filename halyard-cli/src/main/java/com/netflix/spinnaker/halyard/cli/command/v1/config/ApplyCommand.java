@@ -0,0 +1,83 @@
+/*
+ * Copyright 2017 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.halyard.cli.command.v1.config;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.netflix.spinnaker.halyard.cli.services.v1.Daemon;
+import com.netflix.spinnaker.halyard.cli.services.v1.OperationHandler;
+import com.netflix.spinnaker.halyard.config.model.v1.batch.ConfigOperation;
+import lombok.AccessLevel;
+import lombok.Getter;
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/**
+ * Applies a file of config operations as a single change: they are validated together and either all saved or none.
+ */
+@Parameters()
+public class ApplyCommand extends AbstractConfigCommand {
+  @Getter(AccessLevel.PUBLIC)
+  private String commandName = "apply";
+
+  @Getter(AccessLevel.PUBLIC)
+  private String description = "Apply a list of changes to your halconfig, read from a YAML or JSON file, all at once. "
+      + "The changes are made in order, validated once, and only saved if all of them succeed. Each entry has a \"method\" "
+      + "(POST, PUT or DELETE), a \"path\" relative to the deployment (e.g. \"providers/kubernetes/accounts\") and a \"body\" "
+      + "in the same shape the daemon's REST API accepts for that path.";
+
+  @Parameter(
+      names = { "-f", "--file" },
+      required = true,
+      description = "The YAML or JSON file listing the operations to apply."
+  )
+  private String file;
+
+  @Override
+  protected void executeThis() {
+    List<ConfigOperation> operations = readOperations();
+    String currentDeployment = getCurrentDeployment();
+    new OperationHandler<Void>()
+        .setOperation(Daemon.applyOperations(currentDeployment, !noValidate, operations))
+        .setSuccessMessage("Applied " + operations.size() + " change(s) to your halconfig.")
+        .setFailureMesssage("Failed to apply changes; your halconfig was left untouched.")
+        .get();
+  }
+
+  private List<ConfigOperation> readOperations() {
+    Object parsed;
+    // YAML is a superset of JSON, so this reads either.
+    try (Reader reader = new FileReader(file)) {
+      parsed = new Yaml().load(reader);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Unable to read operations from " + file + ": " + e.getMessage(), e);
+    }
+
+    if (!(parsed instanceof List)) {
+      throw new IllegalArgumentException("Expected " + file + " to contain a list of operations");
+    }
+
+    return new ObjectMapper().convertValue(parsed, new TypeReference<List<ConfigOperation>>() { });
+  }
+}
@@ -42,13 +42,13 @@ public class ProviderCommand extends NestableCommand {
   private String description = "Configure, validate, and view the specified provider.";
 
   public ProviderCommand() {
-    registerSubcommand(new AppengineCommand());
-    registerSubcommand(new AwsCommand());
-    registerSubcommand(new AzureCommand());
-    registerSubcommand(new DockerRegistryCommand());
-    registerSubcommand(new GoogleCommand());
-    registerSubcommand(new KubernetesCommand());
-    registerSubcommand(new OpenstackCommand());
+    registerSubcommand("appengine", AppengineCommand::new);
+    registerSubcommand("aws", AwsCommand::new);
+    registerSubcommand("azure", AzureCommand::new);
+    registerSubcommand("docker-registry", DockerRegistryCommand::new);
+    registerSubcommand("google", GoogleCommand::new);
+    registerSubcommand("kubernetes", KubernetesCommand::new);
+    registerSubcommand("openstack", OpenstackCommand::new);
   }
 
   @Override
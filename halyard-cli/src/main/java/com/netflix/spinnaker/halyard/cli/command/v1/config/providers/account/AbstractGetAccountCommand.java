@@ -21,6 +21,7 @@ import com.netflix.spinnaker.halyard.cli.services.v1.Daemon;
 import com.netflix.spinnaker.halyard.cli.services.v1.OperationHandler;
 import com.netflix.spinnaker.halyard.cli.ui.v1.AnsiFormatUtils;
 import com.netflix.spinnaker.halyard.cli.ui.v1.AnsiUi;
+import com.netflix.spinnaker.halyard.cli.ui.v1.StructuredOutput;
 import com.netflix.spinnaker.halyard.config.model.v1.node.Account;
 import lombok.Getter;
 
@@ -34,7 +35,12 @@ abstract class AbstractGetAccountCommand extends AbstractHasAccountCommand {
 
   @Override
   protected void executeThis() {
-    AnsiUi.success(AnsiFormatUtils.format(getAccount(getAccountName())));
+    Account account = getAccount(getAccountName());
+    if (StructuredOutput.isEnabled()) {
+      StructuredOutput.result(account);
+    } else {
+      AnsiUi.success(AnsiFormatUtils.format(account));
+    }
   }
 
   private Account getAccount(String accountName) {
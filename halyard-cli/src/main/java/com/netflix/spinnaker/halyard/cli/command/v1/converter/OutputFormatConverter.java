@@ -0,0 +1,32 @@
+/*
+ * Copyright 2017 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.netflix.spinnaker.halyard.cli.command.v1.converter;
+
+import com.beust.jcommander.IStringConverter;
+import com.netflix.spinnaker.halyard.cli.ui.v1.OutputFormat;
+
+public class OutputFormatConverter implements IStringConverter<OutputFormat> {
+  @Override
+  public OutputFormat convert(String value) {
+    try {
+      return OutputFormat.valueOf(value.toUpperCase());
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Output format " + value + " is not valid. The options are: text, json, or ndjson.");
+    }
+  }
+}
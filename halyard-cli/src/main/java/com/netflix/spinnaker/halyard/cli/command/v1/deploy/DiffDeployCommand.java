@@ -23,6 +23,7 @@ import com.netflix.spinnaker.halyard.cli.services.v1.Daemon;
 import com.netflix.spinnaker.halyard.cli.services.v1.OperationHandler;
 import com.netflix.spinnaker.halyard.cli.ui.v1.AnsiFormatUtils;
 import com.netflix.spinnaker.halyard.cli.ui.v1.AnsiUi;
+import com.netflix.spinnaker.halyard.cli.ui.v1.StructuredOutput;
 import com.netflix.spinnaker.halyard.config.model.v1.node.NodeDiff;
 import lombok.AccessLevel;
 import lombok.Getter;
@@ -46,6 +47,8 @@ public class DiffDeployCommand extends AbstractConfigCommand {
 
     if (result == null) {
       AnsiUi.raw("No changes have been made to your configuration.");
+    } else if (StructuredOutput.isEnabled()) {
+      StructuredOutput.result(result);
     } else {
       AnsiUi.raw(AnsiFormatUtils.format(result));
     }
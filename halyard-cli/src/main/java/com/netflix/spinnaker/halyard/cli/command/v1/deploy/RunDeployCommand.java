@@ -20,6 +20,7 @@ package com.netflix.spinnaker.halyard.cli.command.v1.deploy;
 import com.amazonaws.util.StringUtils;
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.Parameters;
+import com.netflix.spinnaker.halyard.cli.command.v1.CommandExitException;
 import com.netflix.spinnaker.halyard.cli.command.v1.config.AbstractConfigCommand;
 import com.netflix.spinnaker.halyard.cli.services.v1.Daemon;
 import com.netflix.spinnaker.halyard.cli.services.v1.OperationHandler;
@@ -77,7 +78,7 @@ public class RunDeployCommand extends AbstractConfigCommand {
 
         if (status.getResult() != JobStatus.Result.SUCCESS) {
           AnsiUi.error("Failed to install Spinnaker. See above output for details.");
-          System.exit(1);
+          throw new CommandExitException(1);
         }
       } else {
         paragraphBuilder.addSnippet("Your deployment is almost complete.");
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2016 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.halyard.cli.services.v1;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.netflix.spinnaker.halyard.config.config.v1.AtomicFileWriter;
+import com.netflix.spinnaker.halyard.core.tasks.v1.DaemonTask;
+import lombok.extern.slf4j.Slf4j;
+import retrofit.client.Client;
+import retrofit.client.Header;
+import retrofit.client.Request;
+import retrofit.client.Response;
+import retrofit.mime.TypedByteArray;
+import retrofit.mime.TypedInput;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches the results of reads the daemon tags with an ETag on disk, and revalidates them with conditional requests.
+ *
+ * A read submits a task, and its result is only known once that task completes. So the cache maps a read's url to the
+ * ETag it was submitted with & the completed task. When the daemon answers a revalidation with a 304, the submitted
+ * task is replaced by a placeholder whose completed state is read back from the cache rather than polled for.
+ */
+@Slf4j
+class CachingClient implements Client {
+  private static final String CACHED_TASK_PREFIX = "cached-";
+
+  private final Client delegate;
+  private final Path cacheDirectory;
+  private final ObjectMapper objectMapper;
+
+  // Submitted reads whose results will be cached once their tasks complete, by task uuid.
+  private final Map<String, CacheEntry> pending = new ConcurrentHashMap<>();
+  // Completed tasks read back from the cache, by placeholder task uuid.
+  private final Map<String, byte[]> hits = new ConcurrentHashMap<>();
+
+  CachingClient(Client delegate, Path cacheDirectory, ObjectMapper objectMapper) {
+    this.delegate = delegate;
+    this.cacheDirectory = cacheDirectory;
+    this.objectMapper = objectMapper;
+  }
+
+  @Override
+  public Response execute(Request request) throws IOException {
+    if (!request.getMethod().equals("GET") || request.getUrl().contains("/v1/tasks/")) {
+      return delegate.execute(request);
+    }
+
+    String key = key(request.getUrl());
+    CacheEntry cached = read(key);
+    List<Header> headers = new ArrayList<>(request.getHeaders());
+    if (cached != null) {
+      headers.add(new Header("If-None-Match", cached.etag));
+    }
+
+    Response response = delegate.execute(new Request(request.getMethod(), request.getUrl(), headers, request.getBody()));
+    if (response.getStatus() == 304 && cached != null) {
+      String uuid = CACHED_TASK_PREFIX + key;
+      hits.put(uuid, cached.task);
+      DaemonTask<Object, Object> placeholder = new DaemonTask<>();
+      placeholder.setUuid(uuid);
+      placeholder.setState(DaemonTask.State.SUCCESS);
+      return new Response(response.getUrl(), 200, "OK", response.getHeaders(),
+          new TypedByteArray("application/json", objectMapper.writeValueAsBytes(placeholder)));
+    }
+
+    String etag = header(response, "ETag");
+    if (response.getStatus() != 200 || etag == null || response.getBody() == null) {
+      return response;
+    }
+
+    byte[] body = readBytes(response.getBody());
+    DaemonTask submitted = objectMapper.readValue(body, DaemonTask.class);
+    if (submitted.getUuid() != null) {
+      pending.put(submitted.getUuid(), new CacheEntry(key, etag, null));
+    }
+
+    return new Response(response.getUrl(), response.getStatus(), response.getReason(), response.getHeaders(),
+        new TypedByteArray(response.getBody().mimeType(), body));
+  }
+
+  /**
+   * @return the completed task a 304 stood in for, or null if the task wasn't served from the cache.
+   */
+  byte[] getCachedTask(String uuid) {
+    return hits.remove(uuid);
+  }
+
+  /**
+   * Records a task's final state, caching it if the task was a tagged read.
+   */
+  void taskCompleted(String uuid, byte[] task) {
+    CacheEntry entry = pending.remove(uuid);
+    if (entry == null) {
+      return;
+    }
+
+    AtomicFileWriter writer = null;
+    try {
+      writer = new AtomicFileWriter(cacheDirectory.resolve(entry.key));
+      writer.write(entry.etag + "\n" + new String(task, StandardCharsets.UTF_8));
+      writer.commit();
+    } catch (IOException e) {
+      log.debug("Unable to cache response in " + cacheDirectory, e);
+    } finally {
+      if (writer != null) {
+        writer.close();
+      }
+    }
+  }
+
+  private CacheEntry read(String key) {
+    byte[] contents;
+    try {
+      contents = Files.readAllBytes(cacheDirectory.resolve(key));
+    } catch (IOException e) {
+      return null;
+    }
+
+    int newline = 0;
+    while (newline < contents.length && contents[newline] != '\n') {
+      newline++;
+    }
+
+    if (newline == contents.length) {
+      return null;
+    }
+
+    String etag = new String(contents, 0, newline, StandardCharsets.UTF_8);
+    return new CacheEntry(key, etag, Arrays.copyOfRange(contents, newline + 1, contents.length));
+  }
+
+  private static String header(Response response, String name) {
+    for (Header header : response.getHeaders()) {
+      if (name.equalsIgnoreCase(header.getName())) {
+        return header.getValue();
+      }
+    }
+
+    return null;
+  }
+
+  static byte[] readBytes(TypedInput body) throws IOException {
+    try (InputStream in = body.in()) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[8192];
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        out.write(buffer, 0, read);
+      }
+
+      return out.toByteArray();
+    }
+  }
+
+  private static String key(String url) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-256").digest(url.getBytes(StandardCharsets.UTF_8));
+      StringBuilder result = new StringBuilder();
+      for (byte b : digest) {
+        result.append(String.format("%02x", b));
+      }
+
+      return result.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static class CacheEntry {
+    final String key;
+    final String etag;
+    final byte[] task;
+
+    CacheEntry(String key, String etag, byte[] task) {
+      this.key = key;
+      this.etag = etag;
+      this.task = task;
+    }
+  }
+}
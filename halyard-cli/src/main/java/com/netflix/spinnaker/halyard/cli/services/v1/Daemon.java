@@ -16,8 +16,12 @@
 
 package com.netflix.spinnaker.halyard.cli.services.v1;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.netflix.spinnaker.halyard.cli.command.v1.GlobalOptions;
+import com.netflix.spinnaker.halyard.config.model.v1.batch.ConfigOperation;
 import com.netflix.spinnaker.halyard.config.model.v1.node.*;
 import com.netflix.spinnaker.halyard.config.model.v1.security.AuthnMethod;
 import com.netflix.spinnaker.halyard.config.model.v1.security.GroupMembership;
@@ -28,12 +32,18 @@ import com.netflix.spinnaker.halyard.core.registry.v1.BillOfMaterials;
 import com.netflix.spinnaker.halyard.core.registry.v1.Versions;
 import com.netflix.spinnaker.halyard.core.tasks.v1.DaemonTask;
 import com.netflix.spinnaker.halyard.deploy.spinnaker.v1.RunningServiceDetails;
+import com.squareup.okhttp.ConnectionPool;
+import com.squareup.okhttp.OkHttpClient;
 import lombok.extern.slf4j.Slf4j;
 import retrofit.RestAdapter;
 import retrofit.client.OkClient;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 
 @Slf4j
@@ -51,10 +61,7 @@ public class Daemon {
   }
 
   public static Supplier<DeploymentEnvironment> getDeploymentEnvironment(String deploymentName, boolean validate) {
-    return () -> {
-      Object rawDeploymentEnvironment = ResponseUnwrapper.get(getService().getDeploymentEnvironment(deploymentName, validate));
-      return getObjectMapper().convertValue(rawDeploymentEnvironment, DeploymentEnvironment.class);
-    };
+    return () -> ResponseUnwrapper.get(getService().getDeploymentEnvironment(deploymentName, validate), DeploymentEnvironment.class);
   }
 
   public static Supplier<Void> setDeploymentEnvironment(String deploymentName, boolean validate, DeploymentEnvironment deploymentEnvironment) {
@@ -65,10 +72,7 @@ public class Daemon {
   }
 
   public static Supplier<BakeryDefaults> getBakeryDefaults(String deploymentName, String providerName, boolean validate) {
-    return () -> {
-      Object rawBakeryDefaults = ResponseUnwrapper.get(getService().getBakeryDefaults(deploymentName, providerName, validate));
-      return getObjectMapper().convertValue(rawBakeryDefaults, Providers.translateBakeryDefaultsType(providerName));
-    };
+    return () -> ResponseUnwrapper.get(getService().getBakeryDefaults(deploymentName, providerName, validate), Providers.translateBakeryDefaultsType(providerName));
   }
 
   public static Supplier<Void> setBakeryDefaults(String deploymentName, String providerName, boolean validate, BakeryDefaults bakeryDefaults) {
@@ -79,10 +83,7 @@ public class Daemon {
   }
 
   public static Supplier<Features> getFeatures(String deploymentName, boolean validate) {
-    return () -> {
-      Object rawFeatures = ResponseUnwrapper.get(getService().getFeatures(deploymentName, validate));
-      return getObjectMapper().convertValue(rawFeatures, Features.class);
-    };
+    return () -> ResponseUnwrapper.get(getService().getFeatures(deploymentName, validate), Features.class);
   }
 
   public static Supplier<Void> setFeatures(String deploymentName, boolean validate, Features features) {
@@ -93,10 +94,7 @@ public class Daemon {
   }
 
   public static Supplier<PersistentStorage> getPersistentStorage(String deploymentName, boolean validate) {
-    return () -> {
-      Object rawStorage = ResponseUnwrapper.get(getService().getPersistentStorage(deploymentName, validate));
-      return getObjectMapper().convertValue(rawStorage, PersistentStorage.class);
-    };
+    return () -> ResponseUnwrapper.get(getService().getPersistentStorage(deploymentName, validate), PersistentStorage.class);
   }
 
   public static Supplier<Void> setPersistentStorage(String deploymentName, boolean validate, PersistentStorage persistentStorage) {
@@ -107,10 +105,7 @@ public class Daemon {
   }
 
   public static Supplier<BaseImage> getBaseImage(String deploymentName, String providerName, String baseImageId, boolean validate) {
-    return () -> {
-      Object rawBaseImage = ResponseUnwrapper.get(getService().getBaseImage(deploymentName, providerName, baseImageId, validate));
-      return getObjectMapper().convertValue(rawBaseImage, Providers.translateBaseImageType(providerName));
-    };
+    return () -> ResponseUnwrapper.get(getService().getBaseImage(deploymentName, providerName, baseImageId, validate), Providers.translateBaseImageType(providerName));
   }
 
   public static Supplier<Void> addBaseImage(String deploymentName, String providerName, boolean validate, BaseImage baseImage) {
@@ -135,10 +130,7 @@ public class Daemon {
   }
 
   public static Supplier<Account> getAccount(String deploymentName, String providerName, String accountName, boolean validate) {
-    return () -> {
-      Object rawAccount = ResponseUnwrapper.get(getService().getAccount(deploymentName, providerName, accountName, validate));
-      return getObjectMapper().convertValue(rawAccount, Providers.translateAccountType(providerName));
-    };
+    return () -> ResponseUnwrapper.get(getService().getAccount(deploymentName, providerName, accountName, validate), Providers.translateAccountType(providerName));
   }
 
   public static Supplier<Void> addAccount(String deploymentName, String providerName, boolean validate, Account account) {
@@ -163,10 +155,7 @@ public class Daemon {
   }
 
   public static Supplier<Provider> getProvider(String deploymentName, String providerName, boolean validate) {
-    return () -> {
-      Object provider = ResponseUnwrapper.get(getService().getProvider(deploymentName, providerName, validate));
-      return getObjectMapper().convertValue(provider, Providers.translateProviderType(providerName));
-    };
+    return () -> ResponseUnwrapper.get(getService().getProvider(deploymentName, providerName, validate), Providers.translateProviderType(providerName));
   }
 
   public static Supplier<Void> setProviderEnableDisable(String deploymentName, String providerName, boolean validate, boolean enable) {
@@ -177,10 +166,7 @@ public class Daemon {
   }
 
   public static Supplier<Master> getMaster(String deploymentName, String webhookName, String masterName, boolean validate) {
-    return () -> {
-      Object rawMaster = ResponseUnwrapper.get(getService().getMaster(deploymentName, webhookName, masterName, validate));
-      return getObjectMapper().convertValue(rawMaster, Webhooks.translateMasterType(webhookName));
-    };
+    return () -> ResponseUnwrapper.get(getService().getMaster(deploymentName, webhookName, masterName, validate), Webhooks.translateMasterType(webhookName));
   }
 
   public static Supplier<Void> addMaster(String deploymentName, String webhookName, boolean validate, Master master) {
@@ -205,10 +191,7 @@ public class Daemon {
   }
 
   public static Supplier<Webhook> getWebhook(String deploymentName, String webhookName, boolean validate) {
-    return () -> {
-      Object webhook = ResponseUnwrapper.get(getService().getWebhook(deploymentName, webhookName, validate));
-      return getObjectMapper().convertValue(webhook, Webhooks.translateWebhookType(webhookName));
-    };
+    return () -> ResponseUnwrapper.get(getService().getWebhook(deploymentName, webhookName, validate), Webhooks.translateWebhookType(webhookName));
   }
 
   public static Supplier<Void> setWebhookEnableDisable(String deploymentName, String webhookName, boolean validate, boolean enable) {
@@ -226,24 +209,15 @@ public class Daemon {
   }
 
   public static Supplier<RemoteAction> deployDeployment(String deploymentName, boolean validate, boolean installOnly) {
-    return () -> {
-      Object rawDeployResult = ResponseUnwrapper.get(getService().deployDeployment(deploymentName, validate, installOnly, ""));
-      return getObjectMapper().convertValue(rawDeployResult, RemoteAction.class);
-    };
+    return () -> ResponseUnwrapper.get(getService().deployDeployment(deploymentName, validate, installOnly, ""), RemoteAction.class);
   }
 
   public static Supplier<NodeDiff> configDiff(String deploymentName, boolean validate) {
-    return () -> {
-      Object rawDiff = ResponseUnwrapper.get(getService().configDiff(deploymentName, validate));
-      return getObjectMapper().convertValue(rawDiff, NodeDiff.class);
-    };
+    return () -> ResponseUnwrapper.get(getService().configDiff(deploymentName, validate), NodeDiff.class);
   }
 
   public static Supplier<MetricStores> getMetricStores(String deploymentName, boolean validate) {
-    return () -> {
-      Object rawMetricStores = ResponseUnwrapper.get(getService().getMetricStores(deploymentName, validate));
-      return getObjectMapper().convertValue(rawMetricStores, MetricStores.class);
-    };
+    return () -> ResponseUnwrapper.get(getService().getMetricStores(deploymentName, validate), MetricStores.class);
   }
 
   public static Supplier<Void> setMetricStores(String deploymentName, boolean validate, MetricStores metricStores) {
@@ -254,10 +228,7 @@ public class Daemon {
   }
 
   public static Supplier<MetricStore> getMetricStore(String deploymentName, String metricStoreType, boolean validate) {
-    return () -> {
-      Object rawMetricStore = ResponseUnwrapper.get(getService().getMetricStore(deploymentName, metricStoreType, validate));
-      return getObjectMapper().convertValue(rawMetricStore, MetricStores.translateMetricStoreType(metricStoreType));
-    };
+    return () -> ResponseUnwrapper.get(getService().getMetricStore(deploymentName, metricStoreType, validate), MetricStores.translateMetricStoreType(metricStoreType));
   }
 
   public static Supplier<Void> setMetricStore(String deploymentName, String metricStoreType, boolean validate, MetricStore metricStore) {
@@ -276,10 +247,7 @@ public class Daemon {
   }
 
   public static Supplier<Security> getSecurity(String deploymentName, boolean validate) {
-    return () -> {
-      Object rawSecurity = ResponseUnwrapper.get(getService().getSecurity(deploymentName, validate));
-      return getObjectMapper().convertValue(rawSecurity, Security.class);
-    };
+    return () -> ResponseUnwrapper.get(getService().getSecurity(deploymentName, validate), Security.class);
   }
 
   public static Supplier<Void> setSecurity(String deploymentName, boolean validate, Security security) {
@@ -290,10 +258,7 @@ public class Daemon {
   }
 
   public static Supplier<AuthnMethod> getAuthnMethod(String deploymentName, String methodName, boolean validate) {
-    return () -> {
-      Object rawOAuth2 = ResponseUnwrapper.get(getService().getAuthnMethod(deploymentName, methodName, validate));
-      return getObjectMapper().convertValue(rawOAuth2, AuthnMethod.translateAuthnMethodName(methodName));
-    };
+    return () -> ResponseUnwrapper.get(getService().getAuthnMethod(deploymentName, methodName, validate), AuthnMethod.translateAuthnMethodName(methodName));
   }
 
   public static Supplier<Void> setAuthnMethod(String deploymentName, String methodName, boolean validate, AuthnMethod authnMethod) {
@@ -311,17 +276,11 @@ public class Daemon {
   }
 
   public static Supplier<GroupMembership> getGroupMembership(String deploymentName, boolean validate) {
-    return () -> {
-      Object rawGroupMembership = ResponseUnwrapper.get(getService().getGroupMembership(deploymentName, validate));
-      return getObjectMapper().convertValue(rawGroupMembership, GroupMembership.class);
-    };
+    return () -> ResponseUnwrapper.get(getService().getGroupMembership(deploymentName, validate), GroupMembership.class);
   }
 
   public static Supplier<RoleProvider> getRoleProvider(String deploymentName, String roleProviderName, boolean validate) {
-    return () -> {
-      Object rawRoleProvider = ResponseUnwrapper.get(getService().getRoleProvider(deploymentName, roleProviderName, validate));
-      return getObjectMapper().convertValue(rawRoleProvider, GroupMembership.translateRoleProviderType(roleProviderName));
-    };
+    return () -> ResponseUnwrapper.get(getService().getRoleProvider(deploymentName, roleProviderName, validate), GroupMembership.translateRoleProviderType(roleProviderName));
   }
 
   public static Supplier<Void> setRoleProvider(String deploymentName, String roleProviderName, boolean validate, RoleProvider authnMethod) {
@@ -346,10 +305,7 @@ public class Daemon {
   }
 
   public static Supplier<Versions> getVersions() {
-    return () -> {
-      Object rawVersions = ResponseUnwrapper.get(getService().getVersions());
-      return getObjectMapper().convertValue(rawVersions, Versions.class);
-    };
+    return () -> ResponseUnwrapper.get(getService().getVersions(), Versions.class);
   }
 
   public static Supplier<String> getLatest() {
@@ -357,17 +313,11 @@ public class Daemon {
   }
 
   public static Supplier<RunningServiceDetails> getServiceDetails(String deploymentName, String serviceName, boolean validate) {
-    return () -> {
-      Object rawDetails = ResponseUnwrapper.get(getService().getServiceDetails(deploymentName, serviceName, validate));
-      return getObjectMapper().convertValue(rawDetails, RunningServiceDetails.class);
-    };
+    return () -> ResponseUnwrapper.get(getService().getServiceDetails(deploymentName, serviceName, validate), RunningServiceDetails.class);
   }
 
   public static Supplier<BillOfMaterials> getBillOfMaterials(String version) {
-    return () -> {
-      Object rawBillOfMaterials = ResponseUnwrapper.get(getService().getBillOfMaterials(version));
-      return getObjectMapper().convertValue(rawBillOfMaterials, BillOfMaterials.class);
-    };
+    return () -> ResponseUnwrapper.get(getService().getBillOfMaterials(version), BillOfMaterials.class);
   }
 
   public static Supplier<Void> publishProfile(String bomPath, String artifactName, String profilePath) {
@@ -396,41 +346,91 @@ public class Daemon {
     };
   }
 
-  static <C, T> DaemonTask<C, T> getTask(String uuid) {
-    return getService().getTask(uuid);
+  public static Supplier<Void> applyOperations(String deploymentName, boolean validate, List<ConfigOperation> operations) {
+    return () -> {
+      ResponseUnwrapper.get(getService().applyOperations(deploymentName, validate, operations));
+      return null;
+    };
   }
 
-
-  private static DaemonService getService() {
-    if (service == null) {
-      boolean debug =  GlobalOptions.getGlobalOptions().isDebug();
-      service = createService(debug);
+  /**
+   * @param responseType is the type the task's response body is read into.
+   */
+  static <T> DaemonTask<Object, T> getTask(String uuid, Class<T> responseType) {
+    ObjectMapper mapper = getObjectMapper();
+    JavaType taskType = mapper.getTypeFactory().constructParametricType(DaemonTask.class, Object.class, responseType);
+    try {
+      byte[] body = client.getCachedTask(uuid);
+      if (body != null) {
+        return mapper.readValue(body, taskType);
+      }
+
+      body = CachingClient.readBytes(getService().getTask(uuid).getBody());
+      DaemonTask<Object, T> task = mapper.readValue(body, taskType);
+      if (task.getState() == DaemonTask.State.SUCCESS) {
+        client.taskCompleted(uuid, body);
+      }
+
+      return task;
+    } catch (IOException e) {
+      throw new RuntimeException("Unable to read task " + uuid + " from the daemon: " + e.getMessage(), e);
     }
+  }
 
-    return service;
+  private static DaemonService getService() {
+    boolean debug = GlobalOptions.getGlobalOptions().isDebug();
+    return services.computeIfAbsent(debug, Daemon::createService);
   }
 
   private static ObjectMapper getObjectMapper() {
-    if (objectMapper == null) {
-      objectMapper = new ObjectMapper();
-    }
-
     return objectMapper;
   }
 
-  // TODO(lwander): setup config file for this
-  static final private String endpoint = "http://localhost:8064";
-
-  static private DaemonService service;
-  static private ObjectMapper objectMapper;
+  /*
+   * The connection to the daemon is configured with system properties, e.g. passed through JAVA_OPTS. The
+   * okHttpClient.* properties match the daemon's own http client settings.
+   */
+  static final private String endpoint = System.getProperty("daemon.endpoint", "http://localhost:8064");
+  static final private long connectTimeoutMs = Long.getLong("okHttpClient.connectTimeoutMs", 15000);
+  static final private long readTimeoutMs = Long.getLong("okHttpClient.readTimeoutMs", 20000);
+  static final private int maxIdleConnections = Integer.getInteger("okHttpClient.connectionPool.maxIdleConnections", 5);
+  static final private long keepAliveDurationMs = Long.getLong("okHttpClient.connectionPool.keepAliveDurationMs", 300000);
+  // okhttp asks for & transparently decompresses gzipped responses unless the request names its own encoding.
+  static final private boolean compression = Boolean.parseBoolean(System.getProperty("okHttpClient.compression", "true"));
+
+  // Keyed by whether requests are logged. Every command run in this JVM (e.g. by `hal shell`) shares these, along with
+  // the http client's pool of kept-alive connections to the daemon.
+  static final private Map<Boolean, DaemonService> services = new HashMap<>();
+  static final private OkHttpClient httpClient = createHttpClient();
+  static final private ObjectMapper objectMapper = new ObjectMapper()
+      .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+      .setSerializationInclusion(JsonInclude.Include.NON_NULL);
+  // Reads whose results haven't changed since they were last made are answered from here.
+  static final private CachingClient client = new CachingClient(new OkClient(httpClient),
+      Paths.get(System.getProperty("user.home"), ".hal", ".cache", "responses"),
+      objectMapper);
+
+  private static OkHttpClient createHttpClient() {
+    OkHttpClient client = new OkHttpClient();
+    client.setConnectTimeout(connectTimeoutMs, TimeUnit.MILLISECONDS);
+    client.setReadTimeout(readTimeoutMs, TimeUnit.MILLISECONDS);
+    client.setWriteTimeout(readTimeoutMs, TimeUnit.MILLISECONDS);
+    client.setConnectionPool(new ConnectionPool(maxIdleConnections, keepAliveDurationMs));
+    return client;
+  }
 
   private static DaemonService createService(boolean log) {
     return new RestAdapter.Builder()
         .setEndpoint(endpoint)
-        .setClient(new OkClient())
+        .setClient(client)
+        .setConverter(new JacksonConverter(objectMapper))
+        .setRequestInterceptor(request -> {
+          if (!compression) {
+            request.addHeader("Accept-Encoding", "identity");
+          }
+        })
         .setLogLevel(log ? RestAdapter.LogLevel.FULL : RestAdapter.LogLevel.NONE)
         .build()
         .create(DaemonService.class);
   }
 }
-
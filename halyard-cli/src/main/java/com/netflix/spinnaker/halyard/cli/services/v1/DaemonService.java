@@ -16,6 +16,7 @@
 
 package com.netflix.spinnaker.halyard.cli.services.v1;
 
+import com.netflix.spinnaker.halyard.config.model.v1.batch.ConfigOperation;
 import com.netflix.spinnaker.halyard.config.model.v1.node.*;
 import com.netflix.spinnaker.halyard.config.model.v1.security.AuthnMethod;
 import com.netflix.spinnaker.halyard.config.model.v1.security.GroupMembership;
@@ -25,6 +26,7 @@ import com.netflix.spinnaker.halyard.core.registry.v1.BillOfMaterials;
 import com.netflix.spinnaker.halyard.core.registry.v1.Versions;
 import com.netflix.spinnaker.halyard.core.tasks.v1.DaemonTask;
 import com.netflix.spinnaker.halyard.deploy.spinnaker.v1.RunningServiceDetails;
+import retrofit.client.Response;
 import retrofit.http.*;
 
 import java.util.List;
@@ -37,8 +39,9 @@ public interface DaemonService {
   @GET("/v1/tasks/")
   List<String> getTasks();
 
+  // The response body's type depends on the task, so the caller reads it from the raw response.
   @GET("/v1/tasks/{uuid}/")
-  <C, T> DaemonTask<C, T> getTask(@Path("uuid") String uuid);
+  Response getTask(@Path("uuid") String uuid);
 
   @GET("/v1/config/")
   DaemonTask<Halconfig, Halconfig> getHalconfig();
@@ -195,6 +198,12 @@ public interface DaemonService {
       @Query("validate") boolean validate,
       @Body Versions.Version version);
 
+  @POST("/v1/config/deployments/{deploymentName}/batch/")
+  DaemonTask<Halconfig, Void> applyOperations(
+      @Path("deploymentName") String deploymentName,
+      @Query("validate") boolean validate,
+      @Body List<ConfigOperation> operations);
+
   @GET("/v1/config/deployments/{deploymentName}/details/{serviceName}/")
   DaemonTask<Halconfig, RunningServiceDetails> getServiceDetails(
       @Path("deploymentName") String deploymentName,
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2016 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.halyard.cli.services.v1;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import retrofit.converter.ConversionException;
+import retrofit.converter.Converter;
+import retrofit.mime.TypedByteArray;
+import retrofit.mime.TypedInput;
+import retrofit.mime.TypedOutput;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+
+/**
+ * Reads responses from the daemon straight into the types declared by DaemonService, rather than into generic maps
+ * that then have to be converted again.
+ */
+class JacksonConverter implements Converter {
+  private static final String MIME_TYPE = "application/json; charset=UTF-8";
+
+  private final ObjectMapper objectMapper;
+
+  JacksonConverter(ObjectMapper objectMapper) {
+    this.objectMapper = objectMapper;
+  }
+
+  @Override
+  public Object fromBody(TypedInput body, Type type) throws ConversionException {
+    try (InputStream in = body.in()) {
+      return objectMapper.readValue(in, objectMapper.getTypeFactory().constructType(type));
+    } catch (IOException e) {
+      throw new ConversionException(e);
+    }
+  }
+
+  @Override
+  public TypedOutput toBody(Object object) {
+    try {
+      return new TypedByteArray(MIME_TYPE, objectMapper.writeValueAsBytes(object));
+    } catch (JsonProcessingException e) {
+      throw new IllegalArgumentException("Unable to serialize " + object.getClass().getSimpleName() + ": " + e.getMessage(), e);
+    }
+  }
+}
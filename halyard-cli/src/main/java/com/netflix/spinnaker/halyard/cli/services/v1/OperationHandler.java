@@ -21,6 +21,7 @@ import com.netflix.spinnaker.halyard.cli.ui.v1.AnsiFormatUtils;
 import com.netflix.spinnaker.halyard.cli.ui.v1.AnsiFormatUtils.Format;
 import com.netflix.spinnaker.halyard.cli.ui.v1.AnsiPrinter;
 import com.netflix.spinnaker.halyard.cli.ui.v1.AnsiUi;
+import com.netflix.spinnaker.halyard.cli.ui.v1.StructuredOutput;
 import lombok.Data;
 
 import java.util.function.Supplier;
@@ -43,6 +44,19 @@ public class OperationHandler<T> implements Supplier<T> {
       throw new ExpectedDaemonFailureException(failureMesssage, e.getCause());
     }
 
+    if (StructuredOutput.isEnabled()) {
+      if (successMessage != null) {
+        StructuredOutput.message("success", successMessage);
+      }
+
+      // Results fetched only for a command's own use (e.g. the current deployment's name) aren't output.
+      if (format != NONE && res != null) {
+        StructuredOutput.result(res);
+      }
+
+      return res;
+    }
+
     if (successMessage != null) {
       AnsiUi.success(successMessage);
     }
@@ -27,6 +27,7 @@ import com.netflix.spinnaker.halyard.core.tasks.v1.DaemonStage.State;
 import com.netflix.spinnaker.halyard.core.tasks.v1.DaemonTask;
 import lombok.Data;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -34,24 +35,40 @@ import java.util.Map.Entry;
 public class ResponseUnwrapper {
   private static final Long WAIT_MILLIS = 400L;
 
+  /**
+   * Waits for a task whose response is a plain value, e.g. a string, or nothing at all.
+   */
+  @SuppressWarnings("unchecked")
   public static <C, T> T get(DaemonTask<C, T> task) {
+    return (T) get(task.getUuid(), Object.class);
+  }
+
+  /**
+   * Waits for a task, reading its response body into the given type.
+   */
+  public static <T> T get(DaemonTask<?, ?> task, Class<? extends T> responseType) {
+    return get(task.getUuid(), responseType);
+  }
+
+  private static <T> T get(String uuid, Class<T> responseType) {
     PrintCoordinates coords = new PrintCoordinates();
+    AnsiFrameRenderer renderer = new AnsiFrameRenderer();
 
-    task = Daemon.getTask(task.getUuid());
+    DaemonTask<Object, T> task = Daemon.getTask(uuid, responseType);
     while (!task.getState().isTerminal()) {
-      coords = formatStages(task.getStages(), coords);
+      coords = formatStages(task.getStages(), coords, renderer);
+      renderer.render();
 
       try {
         Thread.sleep(WAIT_MILLIS);
       } catch (InterruptedException ignored) {
       }
 
-      task = Daemon.getTask(task.getUuid());
+      task = Daemon.getTask(uuid, responseType);
     }
 
-    formatStages(task.getStages(), coords);
-    AnsiSnippet clear = new AnsiSnippet("").setErase(AnsiErase.ERASE_START_LINE);
-    AnsiPrinter.print(clear.toString());
+    formatStages(task.getStages(), coords, renderer);
+    renderer.clear();
 
     DaemonResponse<T> response = task.getResponse();
     formatProblemSet(response.getProblemSet());
@@ -67,37 +84,62 @@ public class ResponseUnwrapper {
     return response.getResponseBody();
   }
 
-  private static PrintCoordinates formatStages(List<DaemonStage> stages, PrintCoordinates coords) {
-    for (DaemonStage stage : stages.subList(coords.getLastStage(), stages.size())) {
+  /**
+   * Prints whatever is new in the stages. Several stages can be active at once (e.g. services rolled out
+   * concurrently), so the events printed are tracked per stage, and events from one of several active stages are
+   * prefixed with the stage's name. Each stage's name is printed once, when it is first seen; the status line shows
+   * the most recently started stage.
+   */
+  static PrintCoordinates formatStages(List<DaemonStage> stages, PrintCoordinates coords, AnsiFrameRenderer renderer) {
+    long active = stages.subList(coords.getLastStage(), stages.size()).stream()
+        .filter(s -> s.getState() != State.INACTIVE)
+        .count();
+
+    int latest = stages.size() - 1;
+    for (int index = coords.getLastStage(); index < stages.size(); index++) {
+      DaemonStage stage = stages.get(index);
       String stageName = stage.getName();
-      AnsiSnippet snippet = new AnsiSnippet("~ " + stageName)
-          .addStyle(AnsiStyle.BOLD)
-          .setErase(AnsiErase.ERASE_START_LINE);
-      AnsiPrinter.print(snippet.toString());
+      boolean firstSeen = index >= coords.getAnnouncedStages();
+      if (StructuredOutput.isEnabled()) {
+        if (firstSeen) {
+          StructuredOutput.stage(stageName);
+        }
+      } else {
+        String header = new AnsiSnippet("~ " + stageName).addStyle(AnsiStyle.BOLD).toString();
+        if (index == latest) {
+          // Set once per poll, so a status line that can't be redrawn isn't repeated for every stage revisited.
+          renderer.setStatus(header);
+        } else if (firstSeen) {
+          renderer.addLine(header);
+        }
+      }
 
-      coords = formatEvents(stageName, stage.getEvents(), coords);
+      formatEvents(stageName, stage.getEvents(), index, active > 1, coords, renderer);
+    }
 
-      if (stage.getState() == State.INACTIVE) {
-        coords.setLastEvent(0);
-        coords.setLastStage(coords.getLastStage() + 1);
-      }
+    coords.setAnnouncedStages(Math.max(coords.getAnnouncedStages(), stages.size()));
+
+    // Stop revisiting stages once they, and every stage before them, are done.
+    while (coords.getLastStage() < stages.size() && stages.get(coords.getLastStage()).getState() == State.INACTIVE) {
+      coords.getPrintedEvents().remove(coords.getLastStage());
+      coords.setLastStage(coords.getLastStage() + 1);
     }
 
     return coords;
   }
 
-  private static PrintCoordinates formatEvents(String stageName, List<DaemonEvent> events, PrintCoordinates coords) {
-    for (DaemonEvent event : events.subList(coords.getLastEvent(), events.size())) {
-      AnsiSnippet snippet = new AnsiSnippet("- " + event.getMessage())
-          .setErase(AnsiErase.ERASE_START_LINE);
-      AnsiPrinter.println(snippet.toString());
-
-      snippet = new AnsiSnippet("~ " + stageName)
-          .addStyle(AnsiStyle.BOLD);
-      AnsiPrinter.print(snippet.toString());
+  private static void formatEvents(String stageName, List<DaemonEvent> events, int stageIndex, boolean prefix, PrintCoordinates coords, AnsiFrameRenderer renderer) {
+    int printed = coords.getPrintedEvents().getOrDefault(stageIndex, 0);
+    for (DaemonEvent event : events.subList(printed, events.size())) {
+      if (StructuredOutput.isEnabled()) {
+        StructuredOutput.event(stageName, event.getMessage());
+      } else {
+        String message = prefix ? stageName + ": " + event.getMessage() : event.getMessage();
+        renderer.addLine(new AnsiSnippet("- " + message).toString());
+      }
     }
-    coords.setLastEvent(events.size());
-    return coords;
+
+    coords.getPrintedEvents().put(stageIndex, events.size());
   }
 
   public static void formatProblemSet(ProblemSet problemSet) {
@@ -105,6 +147,11 @@ public class ResponseUnwrapper {
       return;
     }
 
+    if (StructuredOutput.isEnabled()) {
+      problemSet.getProblems().forEach(StructuredOutput::problem);
+      return;
+    }
+
     AnsiSnippet snippet = new AnsiSnippet("").setErase(AnsiErase.ERASE_START_LINE);
     AnsiPrinter.print(snippet.toString());
 
@@ -146,8 +193,12 @@ public class ResponseUnwrapper {
   }
 
   @Data
-  private static class PrintCoordinates {
+  static class PrintCoordinates {
+    // The first stage that may still change.
     int lastStage = 0;
-    int lastEvent = 0;
+    // Stage index -> number of its events already printed, for stages from lastStage on.
+    Map<Integer, Integer> printedEvents = new HashMap<>();
+    // Stages already announced; a stage's name is printed once, when it is first seen.
+    int announcedStages = 0;
   }
 }
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2017 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.halyard.cli.ui.v1;
+
+import com.netflix.spinnaker.halyard.cli.command.v1.GlobalOptions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Draws progress output as a series of frames: lines that scroll up & are never redrawn, followed by a single status
+ * line that is redrawn in place. Each frame is diffed against the last one drawn, so only new lines & a changed status
+ * are written, and the whole frame goes out in a single write.
+ *
+ * Without ANSI codes (e.g. when stdout isn't a terminal) the status line can't be redrawn, so each new status is
+ * written once as a regular line instead.
+ */
+public class AnsiFrameRenderer {
+  private final List<String> lines = new ArrayList<>();
+  private String status;
+  private String drawnStatus;
+
+  public AnsiFrameRenderer addLine(String line) {
+    lines.add(line);
+    return this;
+  }
+
+  public AnsiFrameRenderer setStatus(String status) {
+    if (!ansi() && !Objects.equals(status, this.status) && status != null) {
+      lines.add(status);
+    }
+
+    this.status = status;
+    return this;
+  }
+
+  /**
+   * Writes everything that changed since the last call.
+   */
+  public void render() {
+    boolean ansi = ansi();
+    boolean statusChanged = ansi && !Objects.equals(status, drawnStatus);
+    if (lines.isEmpty() && !statusChanged) {
+      return;
+    }
+
+    StringBuilder frame = new StringBuilder();
+    if (ansi && drawnStatus != null) {
+      frame.append(AnsiErase.ERASE_START_LINE.format());
+    }
+
+    for (String line : lines) {
+      frame.append(line).append('\n');
+    }
+
+    if (ansi && status != null) {
+      frame.append(status);
+    }
+
+    lines.clear();
+    drawnStatus = ansi ? status : null;
+    AnsiPrinter.write(frame.toString());
+  }
+
+  /**
+   * Writes any remaining lines & erases the status line, leaving the cursor at the start of an empty line.
+   */
+  public void clear() {
+    status = null;
+    render();
+  }
+
+  private static boolean ansi() {
+    return GlobalOptions.getGlobalOptions().isColor();
+  }
+}
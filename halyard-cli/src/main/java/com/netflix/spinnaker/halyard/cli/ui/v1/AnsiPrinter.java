@@ -18,18 +18,18 @@ package com.netflix.spinnaker.halyard.cli.ui.v1;
 
 public class AnsiPrinter {
   public static void println(String ansiText) {
-    try {
-      System.out.print(ansiText);
-    } finally {
-      System.out.println(AnsiSpecial.RESET.format());
-    }
+    write(ansiText + AnsiSpecial.RESET.format() + System.lineSeparator());
   }
 
   public static void print(String ansiText) {
-    try {
-      System.out.print(ansiText);
-    } finally {
-      System.out.print(AnsiSpecial.RESET.format());
-    }
+    write(ansiText + AnsiSpecial.RESET.format());
+  }
+
+  /**
+   * Writes already formatted text as-is, in a single write.
+   */
+  public static void write(String text) {
+    System.out.print(text);
+    System.out.flush();
   }
 }
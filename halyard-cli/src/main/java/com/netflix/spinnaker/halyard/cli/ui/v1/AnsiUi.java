@@ -21,10 +21,20 @@ package com.netflix.spinnaker.halyard.cli.ui.v1;
  */
 public class AnsiUi {
   public static void raw(String message) {
+    if (StructuredOutput.isEnabled()) {
+      StructuredOutput.message("text", message);
+      return;
+    }
+
     AnsiPrinter.println(new AnsiSnippet(message).toString());
   }
 
   public static void listItem(String message) {
+    if (StructuredOutput.isEnabled()) {
+      StructuredOutput.message("item", message);
+      return;
+    }
+
     AnsiParagraphBuilder builder = new AnsiParagraphBuilder()
         .setIndentFirstLine(false)
         .setIndentWidth(4);
@@ -38,6 +48,11 @@ public class AnsiUi {
   }
 
   public static void location(String message) {
+    if (StructuredOutput.isEnabled()) {
+      StructuredOutput.message("location", message);
+      return;
+    }
+
     AnsiParagraphBuilder builder = new AnsiParagraphBuilder()
         .setIndentFirstLine(false)
         .setIndentWidth(2);
@@ -53,6 +68,11 @@ public class AnsiUi {
   }
 
   public static void warning(String message) {
+    if (StructuredOutput.isEnabled()) {
+      StructuredOutput.message("warning", message);
+      return;
+    }
+
     AnsiParagraphBuilder builder = new AnsiParagraphBuilder()
         .setIndentFirstLine(false)
         .setIndentWidth(2);
@@ -67,6 +87,11 @@ public class AnsiUi {
   }
 
   public static void error(String message) {
+    if (StructuredOutput.isEnabled()) {
+      StructuredOutput.message("error", message);
+      return;
+    }
+
     AnsiParagraphBuilder builder = new AnsiParagraphBuilder()
         .setIndentFirstLine(false)
         .setIndentWidth(2);
@@ -81,6 +106,11 @@ public class AnsiUi {
   }
 
   public static void remediation(String message) {
+    if (StructuredOutput.isEnabled()) {
+      StructuredOutput.message("remediation", message);
+      return;
+    }
+
     AnsiParagraphBuilder builder = new AnsiParagraphBuilder()
         .setIndentFirstLine(false)
         .setIndentWidth(2);
@@ -95,6 +125,11 @@ public class AnsiUi {
   }
 
   public static void success(String message) {
+    if (StructuredOutput.isEnabled()) {
+      StructuredOutput.message("success", message);
+      return;
+    }
+
     AnsiParagraphBuilder builder = new AnsiParagraphBuilder()
         .setIndentFirstLine(false)
         .setIndentWidth(2);
@@ -109,6 +144,11 @@ public class AnsiUi {
   }
 
   public static void failure(String message) {
+    if (StructuredOutput.isEnabled()) {
+      StructuredOutput.message("failure", message);
+      return;
+    }
+
     AnsiParagraphBuilder builder = new AnsiParagraphBuilder()
         .setIndentFirstLine(false)
         .setIndentWidth(2);
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2017 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.netflix.spinnaker.halyard.cli.ui.v1;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.netflix.spinnaker.halyard.cli.command.v1.GlobalOptions;
+import com.netflix.spinnaker.halyard.core.problem.v1.Problem;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Writes the CLI's output as JSON records for other programs to consume, in place of the ANSI-decorated text. Each
+ * record is an object with a "type" (e.g. "stage", "event", "problem", "error", "item", "text" or "result"), and is written
+ * to stdout as soon as it is produced. Values are serialized straight to stdout rather than built up as a string.
+ *
+ * @see OutputFormat
+ */
+public class StructuredOutput {
+  private static final ObjectMapper objectMapper = new ObjectMapper();
+  private static boolean arrayStarted = false;
+  // How many commands are running, e.g. a `hal shell` and the command on its current line.
+  private static int running = 0;
+
+  static {
+    objectMapper.getFactory().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+  }
+
+  public static boolean isEnabled() {
+    return format() != OutputFormat.TEXT;
+  }
+
+  public static void stage(String name) {
+    Map<String, Object> record = record("stage");
+    record.put("name", name);
+    write(record);
+  }
+
+  public static void event(String stage, String message) {
+    Map<String, Object> record = record("event");
+    record.put("stage", stage);
+    record.put("message", message);
+    write(record);
+  }
+
+  public static void problem(Problem problem) {
+    Map<String, Object> record = record("problem");
+    record.put("severity", problem.getSeverity());
+    record.put("location", problem.getLocation());
+    record.put("message", problem.getMessage());
+    record.put("remediation", problem.getRemediation());
+    record.put("options", problem.getOptions());
+    write(record);
+  }
+
+  /**
+   * @param type is the kind of message, e.g. "success", "warning" or "error".
+   */
+  public static void message(String type, String message) {
+    Map<String, Object> record = record(type);
+    record.put("message", message);
+    write(record);
+  }
+
+  public static void result(Object body) {
+    Map<String, Object> record = record("result");
+    record.put("body", body);
+    write(record);
+  }
+
+  /**
+   * Begins the output of a command. Commands run within another (e.g. by `hal shell`) share its output, so a whole
+   * session is written as a single JSON array.
+   */
+  public static synchronized void start() {
+    running++;
+  }
+
+  /**
+   * Ends the output of the current command; in JSON this closes the array of records, unless the command was run
+   * within another.
+   */
+  public static synchronized void finish() {
+    if (running > 0) {
+      running--;
+    }
+
+    if (running > 0 || format() != OutputFormat.JSON) {
+      return;
+    }
+
+    PrintStream out = System.out;
+    out.print(arrayStarted ? "\n]\n" : "[]\n");
+    out.flush();
+    arrayStarted = false;
+  }
+
+  private static Map<String, Object> record(String type) {
+    Map<String, Object> record = new LinkedHashMap<>();
+    record.put("type", type);
+    return record;
+  }
+
+  private static synchronized void write(Map<String, Object> record) {
+    PrintStream out = System.out;
+    if (format() == OutputFormat.JSON) {
+      out.print(arrayStarted ? ",\n" : "[\n");
+      arrayStarted = true;
+    }
+
+    try {
+      objectMapper.writeValue(out, record);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+
+    if (format() == OutputFormat.NDJSON) {
+      out.print('\n');
+    }
+
+    out.flush();
+  }
+
+  private static OutputFormat format() {
+    return GlobalOptions.getGlobalOptions().getOutput();
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2017 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.halyard.cli.command.v1
+
+import com.beust.jcommander.JCommander
+import spock.lang.Specification
+
+class HalCommandStartupSpec extends Specification {
+  static final String[] ARGS = ["config", "provider", "kubernetes", "account", "list"]
+
+  static JCommander parse(String[] args) {
+    HalCommand hal = new HalCommand()
+    JCommander jc = new JCommander(hal)
+    hal.setCommander(jc).configureSubcommands(args)
+    jc.parse(args)
+    return jc
+  }
+
+  void "only registers the commands named on the command line"() {
+    when:
+    JCommander jc = parse(ARGS)
+
+    then:
+    jc.parsedCommand == "config"
+    jc.commands.keySet() == ["config"] as Set
+    jc.commands.config.commands.keySet() == ["provider"] as Set
+    jc.commands.config.commands.provider.commands.keySet() == ["kubernetes"] as Set
+    jc.commands.config.commands.provider.commands.kubernetes.commands.account.parsedCommand == "list"
+  }
+
+  void "documents the full command tree"() {
+    setup:
+    HalCommand hal = new HalCommand()
+    JCommander jc = new JCommander(hal)
+    hal.setCommander(jc).configureSubcommands(["--docs"] as String[])
+
+    when:
+    String docs = hal.generateDocs()
+
+    then:
+    docs.contains("hal config provider kubernetes account add")
+    docs.contains("hal deploy run")
+  }
+
+  void "flattens the command tree into a completion table"() {
+    setup:
+    HalCommand hal = new HalCommand()
+    JCommander jc = new JCommander(hal)
+    hal.setCommander(jc).configureSubcommands(["--print-bash-completion"] as String[])
+
+    when:
+    String completor = hal.commandCompletor()
+    String entry = completor.substring(completor.indexOf('"hal config provider kubernetes account")'))
+
+    then:
+    !completor.contains("{%")
+    entry.readLines()[1].split('"')[1].split(" ").contains("add")
+    completor.contains('"hal deploy run")')
+  }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2017 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.halyard.cli.command.v1
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class ShellCommandSpec extends Specification {
+  @Unroll
+  void "splits \"#line\" into #expected"() {
+    expect:
+    ShellCommand.tokenize(line) == expected
+
+    where:
+    line                                         | expected
+    "config provider kubernetes enable"          | ["config", "provider", "kubernetes", "enable"]
+    "  deploy   run  "                           | ["deploy", "run"]
+    "config storage edit --bucket 'my bucket'"   | ["config", "storage", "edit", "--bucket", "my bucket"]
+    'config version edit --version "1.0 \\"x\\""' | ["config", "version", "edit", "--version", '1.0 "x"']
+    "a\\ b c"                                    | ["a b", "c"]
+    "a '' b"                                     | ["a", "", "b"]
+    "deploy run # comment"                       | ["deploy", "run"]
+    "--tag=a#b"                                  | ["--tag=a#b"]
+    "# just a comment"                           | []
+    ""                                           | []
+  }
+
+  void "rejects unterminated quotes"() {
+    when:
+    ShellCommand.tokenize("config edit --name 'oops")
+
+    then:
+    thrown(IllegalArgumentException)
+  }
+}
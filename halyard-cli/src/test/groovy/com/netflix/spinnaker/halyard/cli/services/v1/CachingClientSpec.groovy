@@ -0,0 +1,82 @@
+/*
+ * Copyright 2017 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.halyard.cli.services.v1
+
+import com.fasterxml.jackson.databind.DeserializationFeature
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.netflix.spinnaker.halyard.core.tasks.v1.DaemonTask
+import retrofit.client.Client
+import retrofit.client.Header
+import retrofit.client.Request
+import retrofit.client.Response
+import retrofit.mime.TypedByteArray
+import spock.lang.Specification
+
+import java.nio.file.Files
+
+class CachingClientSpec extends Specification {
+  static final String URL = "http://localhost:8064/v1/config/deployments/default/features/?validate=false"
+
+  ObjectMapper objectMapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+  List<Request> requests = []
+
+  // A daemon whose only read is tagged "r1", submitting task "abc" whenever it isn't answered with a 304.
+  Client daemon = { Request request ->
+    requests.add(request)
+    if (request.headers.any { it.name == "If-None-Match" && it.value == '"r1"' }) {
+      return new Response(request.url, 304, "Not Modified", [new Header("ETag", '"r1"')], null)
+    }
+
+    return new Response(request.url, 200, "OK", [new Header("ETag", '"r1"')],
+        new TypedByteArray("application/json", '{"uuid": "abc", "state": "RUNNING"}'.bytes))
+  } as Client
+
+  DaemonTask submit(CachingClient client) {
+    Response response = client.execute(new Request("GET", URL, [], null))
+    return objectMapper.readValue(CachingClient.readBytes(response.body), DaemonTask)
+  }
+
+  void "answers a read from the cache once the daemon reports it unchanged"() {
+    setup:
+    CachingClient client = new CachingClient(daemon, Files.createTempDirectory("responses"), objectMapper)
+    byte[] completed = '{"uuid": "abc", "state": "SUCCESS", "response": {"responseBody": {"auth": true}}}'.bytes
+
+    when:
+    DaemonTask first = submit(client)
+    client.taskCompleted(first.uuid, completed)
+    DaemonTask second = submit(client)
+
+    then:
+    first.uuid == "abc"
+    !requests[0].headers.any { it.name == "If-None-Match" }
+    requests[1].headers.any { it.name == "If-None-Match" && it.value == '"r1"' }
+    second.state == DaemonTask.State.SUCCESS
+    client.getCachedTask(second.uuid) == completed
+  }
+
+  void "only caches tasks submitted by tagged reads"() {
+    setup:
+    CachingClient client = new CachingClient(daemon, Files.createTempDirectory("responses"), objectMapper)
+
+    when:
+    client.taskCompleted("unrelated", '{"state": "SUCCESS"}'.bytes)
+    submit(client)
+
+    then:
+    !requests[0].headers.any { it.name == "If-None-Match" }
+  }
+}
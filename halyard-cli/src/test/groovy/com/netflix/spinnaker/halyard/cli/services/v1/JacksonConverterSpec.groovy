@@ -0,0 +1,54 @@
+/*
+ * Copyright 2017 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.halyard.cli.services.v1
+
+import com.fasterxml.jackson.databind.DeserializationFeature
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.netflix.spinnaker.halyard.config.model.v1.node.Features
+import com.netflix.spinnaker.halyard.core.problem.v1.Problem
+import com.netflix.spinnaker.halyard.core.tasks.v1.DaemonTask
+import retrofit.mime.TypedByteArray
+import spock.lang.Specification
+
+class JacksonConverterSpec extends Specification {
+  JacksonConverter converter = new JacksonConverter(new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false))
+
+  void "reads a task's response body straight into its declared type"() {
+    setup:
+    String json = '''{
+      "uuid": "abc",
+      "state": "SUCCESS",
+      "stages": [{"name": "Get features", "state": "INACTIVE", "events": [{"message": "Reading", "timestamp": 1}]}],
+      "response": {
+        "responseBody": {"auth": true, "jobs": false, "nodeName": "features"},
+        "problemSet": {"problems": [{"message": "Careful", "severity": "WARNING", "location": "features"}]}
+      }
+    }'''
+    def type = DaemonService.getMethod("getFeatures", String, boolean).genericReturnType
+
+    when:
+    DaemonTask task = converter.fromBody(new TypedByteArray("application/json", json.bytes), type)
+
+    then:
+    task.state == DaemonTask.State.SUCCESS
+    task.stages[0].name == "Get features"
+    task.stages[0].events[0].message == "Reading"
+    task.response.responseBody instanceof Features
+    task.response.responseBody.auth
+    task.response.problemSet.problems[0].severity == Problem.Severity.WARNING
+  }
+}
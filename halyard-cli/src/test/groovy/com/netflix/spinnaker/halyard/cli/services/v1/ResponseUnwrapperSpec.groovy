@@ -0,0 +1,91 @@
+/*
+ * Copyright 2017 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.netflix.spinnaker.halyard.cli.services.v1
+
+import com.netflix.spinnaker.halyard.cli.command.v1.GlobalOptions
+import com.netflix.spinnaker.halyard.cli.ui.v1.AnsiFrameRenderer
+import com.netflix.spinnaker.halyard.core.tasks.v1.DaemonEvent
+import com.netflix.spinnaker.halyard.core.tasks.v1.DaemonStage
+import spock.lang.Specification
+
+class ResponseUnwrapperSpec extends Specification {
+  PrintStream stdout
+  ByteArrayOutputStream captured
+  boolean color
+
+  void setup() {
+    stdout = System.out
+    captured = new ByteArrayOutputStream()
+    System.setOut(new PrintStream(captured, true))
+    color = GlobalOptions.getGlobalOptions().isColor()
+    GlobalOptions.getGlobalOptions().setColor(false)
+  }
+
+  void cleanup() {
+    System.setOut(stdout)
+    GlobalOptions.getGlobalOptions().setColor(color)
+  }
+
+  static DaemonStage stage(String name) {
+    return new DaemonStage(name)
+  }
+
+  static void log(DaemonStage stage, String message) {
+    stage.events.add(new DaemonEvent(message: message))
+  }
+
+  void "prints each of several concurrent stages once, without ANSI codes"() {
+    setup:
+    AnsiFrameRenderer renderer = new AnsiFrameRenderer()
+    def coords = new ResponseUnwrapper.PrintCoordinates()
+    DaemonStage clouddriver = stage("Rolling out clouddriver")
+    DaemonStage orca = stage("Rolling out orca")
+    List<DaemonStage> stages = [clouddriver, orca]
+
+    when:
+    log(clouddriver, "one")
+    ResponseUnwrapper.formatStages(stages, coords, renderer)
+    renderer.render()
+    log(orca, "two")
+    ResponseUnwrapper.formatStages(stages, coords, renderer)
+    renderer.render()
+    log(clouddriver, "three")
+    ResponseUnwrapper.formatStages(stages, coords, renderer)
+    renderer.render()
+    clouddriver.state = DaemonStage.State.INACTIVE
+    log(orca, "four")
+    ResponseUnwrapper.formatStages(stages, coords, renderer)
+    renderer.render()
+    // Polls with nothing new print nothing, however many stages are revisited.
+    3.times {
+      ResponseUnwrapper.formatStages(stages, coords, renderer)
+      renderer.render()
+    }
+    renderer.clear()
+
+    then:
+    captured.toString().readLines() == [
+        "~ Rolling out clouddriver",
+        "- Rolling out clouddriver: one",
+        "~ Rolling out orca",
+        "- Rolling out orca: two",
+        "- Rolling out clouddriver: three",
+        "- four",
+    ]
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2017 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.halyard.cli.ui.v1
+
+import com.netflix.spinnaker.halyard.cli.command.v1.GlobalOptions
+import spock.lang.Specification
+
+class AnsiFrameRendererSpec extends Specification {
+  PrintStream stdout
+  ByteArrayOutputStream captured
+  boolean color
+
+  void setup() {
+    stdout = System.out
+    captured = new ByteArrayOutputStream()
+    System.setOut(new PrintStream(captured, true))
+    color = GlobalOptions.getGlobalOptions().isColor()
+  }
+
+  void cleanup() {
+    System.setOut(stdout)
+    GlobalOptions.getGlobalOptions().setColor(color)
+  }
+
+  String drain() {
+    String result = captured.toString()
+    captured.reset()
+    return result
+  }
+
+  void "only redraws what changed since the last frame"() {
+    setup:
+    GlobalOptions.getGlobalOptions().setColor(true)
+    AnsiFrameRenderer renderer = new AnsiFrameRenderer()
+    String erase = AnsiErase.ERASE_START_LINE.format()
+
+    when:
+    renderer.setStatus("~ stage").addLine("- one").render()
+
+    then:
+    drain() == "- one\n~ stage"
+
+    when:
+    renderer.setStatus("~ stage").render()
+
+    then:
+    drain() == ""
+
+    when:
+    renderer.addLine("- two").render()
+
+    then:
+    drain() == erase + "- two\n~ stage"
+
+    when:
+    renderer.clear()
+
+    then:
+    drain() == erase
+  }
+
+  void "writes plain lines without ANSI codes"() {
+    setup:
+    GlobalOptions.getGlobalOptions().setColor(false)
+    AnsiFrameRenderer renderer = new AnsiFrameRenderer()
+
+    when:
+    renderer.setStatus("~ first").addLine("- one").render()
+    renderer.setStatus("~ first").addLine("- two").render()
+    renderer.setStatus("~ second").render()
+    renderer.clear()
+
+    then:
+    drain() == "~ first\n- one\n- two\n~ second\n"
+  }
+}
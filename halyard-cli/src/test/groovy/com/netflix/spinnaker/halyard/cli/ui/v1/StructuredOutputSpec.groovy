@@ -0,0 +1,133 @@
+/*
+ * Copyright 2017 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.halyard.cli.ui.v1
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.netflix.spinnaker.halyard.cli.Main
+import com.netflix.spinnaker.halyard.cli.command.v1.GlobalOptions
+import com.netflix.spinnaker.halyard.core.problem.v1.Problem
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class StructuredOutputSpec extends Specification {
+  ObjectMapper objectMapper = new ObjectMapper()
+  PrintStream stdout
+  PrintStream stderr
+  ByteArrayOutputStream captured
+  ByteArrayOutputStream capturedErr
+
+  void setup() {
+    stdout = System.out
+    stderr = System.err
+    captured = new ByteArrayOutputStream()
+    capturedErr = new ByteArrayOutputStream()
+    System.setOut(new PrintStream(captured, true))
+    System.setErr(new PrintStream(capturedErr, true))
+  }
+
+  void cleanup() {
+    System.setOut(stdout)
+    System.setErr(stderr)
+    GlobalOptions.getGlobalOptions().setOutput(OutputFormat.TEXT)
+  }
+
+  void writeRecords() {
+    StructuredOutput.stage("Deploying")
+    StructuredOutput.event("Deploying", "Rolling out clouddriver")
+    StructuredOutput.problem(new Problem("bad", null, null, Problem.Severity.WARNING, "default.provider"))
+    AnsiUi.listItem("my-account")
+    StructuredOutput.result([name: "my-account"])
+    StructuredOutput.finish()
+  }
+
+  void "writes one record per line as ndjson"() {
+    setup:
+    GlobalOptions.getGlobalOptions().setOutput(OutputFormat.NDJSON)
+
+    when:
+    writeRecords()
+    List<Map> records = captured.toString().readLines().collect { objectMapper.readValue(it, Map) }
+
+    then:
+    records*.type == ["stage", "event", "problem", "item", "result"]
+    records[1].message == "Rolling out clouddriver"
+    records[2].severity == "WARNING"
+    records[3].message == "my-account"
+    records[4].body == [name: "my-account"]
+  }
+
+  void "writes a single array of records as json"() {
+    setup:
+    GlobalOptions.getGlobalOptions().setOutput(OutputFormat.JSON)
+
+    when:
+    writeRecords()
+    List<Map> records = objectMapper.readValue(captured.toString(), List)
+
+    then:
+    records*.type == ["stage", "event", "problem", "item", "result"]
+  }
+
+  void "writes an empty array as json when there was nothing to output"() {
+    setup:
+    GlobalOptions.getGlobalOptions().setOutput(OutputFormat.JSON)
+
+    when:
+    StructuredOutput.finish()
+
+    then:
+    objectMapper.readValue(captured.toString(), List) == []
+  }
+
+  void "writes commands run within another into the same array"() {
+    setup:
+    GlobalOptions.getGlobalOptions().setOutput(OutputFormat.JSON)
+
+    when:
+    StructuredOutput.start()
+    2.times {
+      StructuredOutput.start()
+      AnsiUi.listItem("item $it")
+      StructuredOutput.finish()
+    }
+    StructuredOutput.finish()
+    List<Map> records = objectMapper.readValue(captured.toString(), List)
+
+    then:
+    records*.message == ["item 0", "item 1"]
+  }
+
+  @Unroll
+  void "writes the output of \"hal #args\" as records"() {
+    setup:
+    GlobalOptions.getGlobalOptions().setOutput(OutputFormat.JSON)
+
+    when:
+    Main.run((["-o", "json"] + args) as String[])
+    List<Map> records = objectMapper.readValue(captured.toString(), List)
+
+    then:
+    records*.type == types
+    capturedErr.toString().isEmpty() == !help
+
+    where:
+    args                     | types      | help
+    ["--version"]            | ["result"] | false
+    ["config", "no-such"]    | ["error"]  | false
+    []                       | []         | true
+  }
+}
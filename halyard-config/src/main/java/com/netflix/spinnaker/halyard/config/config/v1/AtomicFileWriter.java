@@ -17,38 +17,51 @@
 package com.netflix.spinnaker.halyard.config.config.v1;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
 import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
-import static java.nio.file.StandardOpenOption.APPEND;
-import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.READ;
 import static java.nio.file.StandardOpenOption.WRITE;
 
 import java.io.IOException;
 import java.io.Writer;
-import java.nio.file.FileSystem;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.UUID;
 import lombok.extern.slf4j.Slf4j;
 
+/**
+ * Writes a file by staging its contents in a temporary sibling of the target, and renaming it over the target on
+ * commit.
+ *
+ * Keeping the temporary file in the target's directory keeps both on the same filesystem, so the final rename is
+ * atomic and never degrades into a copy. The contents are forced to disk before the rename, and the parent
+ * directory afterwards, so a crash leaves either the old or the new file in place.
+ */
 @Slf4j
 public class AtomicFileWriter {
   private final Path path;
   private final Path tmpPath;
+  private FileChannel channel;
   private Writer writer;
+  // Set once the temporary file has been renamed over the target, after which there's nothing left to clean up.
+  private boolean committed = false;
 
   public AtomicFileWriter(String path) throws IOException {
     this(FileSystems.getDefault().getPath(path));
   }
 
   public AtomicFileWriter(Path path) throws IOException {
-    FileSystem defaultFileSystem = FileSystems.getDefault();
     this.path = path;
-    path.getParent().toFile().mkdirs();
-    String tmpDir = System.getProperty("java.io.tmpdir");
-    this.tmpPath = defaultFileSystem.getPath(tmpDir, UUID.randomUUID().toString());
-    this.writer = Files.newBufferedWriter(this.tmpPath, UTF_8,
-            WRITE, APPEND, CREATE);
+    Path parent = path.toAbsolutePath().getParent();
+    parent.toFile().mkdirs();
+    this.tmpPath = parent.resolve("." + path.getFileName() + "." + UUID.randomUUID().toString() + ".tmp");
+    this.channel = FileChannel.open(this.tmpPath, WRITE, CREATE_NEW);
+    this.writer = Channels.newWriter(channel, UTF_8.newEncoder(), -1);
   }
 
   public void write(String contents) throws IOException {
@@ -56,9 +69,21 @@ public class AtomicFileWriter {
   }
 
   public void commit() throws IOException {
+    writer.flush();
+    channel.force(true);
     writer.close();
     writer = null;
-    Files.move(tmpPath, path, REPLACE_EXISTING);
+    channel = null;
+
+    try {
+      Files.move(tmpPath, path, ATOMIC_MOVE, REPLACE_EXISTING);
+    } catch (AtomicMoveNotSupportedException e) {
+      log.warn("Filesystem does not support atomic rename of " + tmpPath + " to " + path + ", falling back to a non-atomic replace");
+      Files.move(tmpPath, path, REPLACE_EXISTING);
+    }
+
+    committed = true;
+    syncDirectory(path.toAbsolutePath().getParent());
   }
 
   public void close() {
@@ -67,8 +92,29 @@ public class AtomicFileWriter {
         writer.close();
       } catch (IOException e) {
         log.error("Failed to close file writer responsible for " + path.toString(), e);
-        e.printStackTrace();
       }
+      writer = null;
+      channel = null;
+    }
+
+    if (!committed) {
+      try {
+        Files.deleteIfExists(tmpPath);
+      } catch (IOException e) {
+        log.warn("Failed to clean up temporary file " + tmpPath, e);
+      }
+    }
+  }
+
+  /**
+   * Persists the rename itself. Not every platform allows opening a directory for reading, which is fine to ignore
+   * since those platforms don't need this to make the rename durable.
+   */
+  private static void syncDirectory(Path directory) {
+    try (FileChannel dirChannel = FileChannel.open(directory, READ)) {
+      dirChannel.force(true);
+    } catch (IOException e) {
+      log.debug("Unable to sync directory " + directory + ": " + e.getMessage());
     }
   }
 }
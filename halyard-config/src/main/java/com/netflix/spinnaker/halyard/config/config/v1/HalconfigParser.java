@@ -16,9 +16,11 @@
 
 package com.netflix.spinnaker.halyard.config.config.v1;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.netflix.spinnaker.halyard.config.error.v1.ParseConfigException;
 import com.netflix.spinnaker.halyard.config.model.v1.node.Halconfig;
 import com.netflix.spinnaker.halyard.config.problem.v1.ConfigProblemBuilder;
+import com.netflix.spinnaker.halyard.core.error.v1.ConcurrentChangeException;
 import com.netflix.spinnaker.halyard.core.error.v1.HalException;
 import com.netflix.spinnaker.halyard.core.problem.v1.Problem.Severity;
 import com.netflix.spinnaker.halyard.core.tasks.v1.DaemonTaskHandler;
@@ -30,9 +32,13 @@ import org.yaml.snakeyaml.parser.ParserException;
 import org.yaml.snakeyaml.scanner.ScannerException;
 
 import java.io.*;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
 import java.util.Map;
+import java.util.Objects;
 
 /**
  * A parser for all Config read by Halyard at runtime.
@@ -63,6 +69,9 @@ public class HalconfigParser {
   private boolean useBackup = false;
   private String backupHalconfigPath;
 
+  private final Object commitLock = new Object();
+  private volatile Snapshot snapshot;
+
   /**
    * Parse Halyard's config.
    *
@@ -79,11 +88,6 @@ public class HalconfigParser {
     }
   }
 
-  private InputStream getHalconfigStream() throws FileNotFoundException {
-    String path = useBackup ? backupHalconfigPath : halconfigPath;
-    return new FileInputStream(new File(path));
-  }
-
   /**
    * Returns the current halconfig stored at the halconfigPath.
    *
@@ -92,20 +96,14 @@ public class HalconfigParser {
    */
   public Halconfig getHalconfig() {
     Halconfig local = (Halconfig) DaemonTaskHandler.getContext();
+    if (local != null && DaemonTaskHandler.isDetached()) {
+      // Shared by every thread working on behalf of the owning task, which already transformed it. Transforming it
+      // again would rewrite parent pointers while other threads traverse them.
+      return local;
+    }
 
     if (local == null) {
-      try {
-        InputStream is = getHalconfigStream();
-        local = parseHalconfig(is);
-      } catch (FileNotFoundException ignored) {
-        // leave res as `null`
-      } catch (ParserException e) {
-        throw new ParseConfigException(e);
-      } catch (ScannerException e) {
-        throw new ParseConfigException(e);
-      } catch (IllegalArgumentException e) {
-        throw new ParseConfigException(e);
-      }
+      local = useBackup ? readHalconfig(Paths.get(backupHalconfigPath)) : currentSnapshot().toHalconfig(objectMapper);
     }
 
     local = transformHalconfig(local);
@@ -114,6 +112,80 @@ public class HalconfigParser {
     return local;
   }
 
+  private Halconfig readHalconfig(Path path) {
+    try (InputStream is = new FileInputStream(path.toFile())) {
+      return parseHalconfig(is);
+    } catch (FileNotFoundException ignored) {
+      return null;
+    } catch (IOException e) {
+      throw new HalException(
+          new ConfigProblemBuilder(Severity.FATAL,
+              "Failure reading your halconfig from path \"" + path + "\": " + e.getMessage()).build()
+      );
+    } catch (ParserException e) {
+      throw new ParseConfigException(e);
+    } catch (ScannerException e) {
+      throw new ParseConfigException(e);
+    } catch (IllegalArgumentException e) {
+      throw new ParseConfigException(e);
+    }
+  }
+
+  /**
+   * @return the last committed halconfig, re-read from disk only if the file was changed by something other than
+   * this daemon. Readers never wait on a writer unless the file needs re-reading.
+   */
+  private Snapshot currentSnapshot() {
+    Path path = Paths.get(halconfigPath);
+    Snapshot current = snapshot;
+    Object stamp = stamp(path);
+    if (current != null && Objects.equals(current.stamp, stamp)) {
+      return current;
+    }
+
+    synchronized (commitLock) {
+      current = snapshot;
+      stamp = stamp(path);
+      if (current != null && Objects.equals(current.stamp, stamp)) {
+        return current;
+      }
+
+      Halconfig halconfig = readHalconfig(path);
+      long revision = halconfig == null ? 0 : halconfig.getRevision();
+      if (current != null) {
+        // The file was edited outside of Halyard; make sure changes that read the old contents can't overwrite it.
+        revision = Math.max(revision, current.revision + 1);
+      }
+
+      Map contents = halconfig == null ? null : objectMapper.convertValue(halconfig, Map.class);
+      snapshot = new Snapshot(revision, contents, stamp);
+      return snapshot;
+    }
+  }
+
+  /**
+   * @return a tag that changes whenever the halconfig returned by getHalconfig() may have changed, or null if a backup
+   * is in use. Checking it only stats the file, so it can be used to answer conditional requests cheaply.
+   */
+  public String getEntityTag() {
+    if (useBackup) {
+      return null;
+    }
+
+    Snapshot current = currentSnapshot();
+    // The stamp & version catch edits made while no daemon was running, and changes in how the file is interpreted.
+    return current.revision + "-" + Integer.toHexString(Objects.hash(current.stamp, halyardVersion));
+  }
+
+  private static Object stamp(Path path) {
+    try {
+      BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+      return Arrays.asList(attributes.fileKey(), attributes.lastModifiedTime(), attributes.size());
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
   private Halconfig transformHalconfig(Halconfig input) {
     if (input == null) {
       log.info("No halconfig found - generating a new one...");
@@ -165,21 +237,85 @@ public class HalconfigParser {
       );
     }
 
+    try {
+      if (path.equals(Paths.get(halconfigPath))) {
+        commit(local, path);
+      } else {
+        write(objectMapper.convertValue(local, Map.class), path);
+      }
+    } finally {
+      DaemonTaskHandler.setContext(null);
+    }
+  }
+
+  /**
+   * Writes the halconfig as the next revision, as long as it was read from the latest one.
+   */
+  private void commit(Halconfig local, Path path) {
+    synchronized (commitLock) {
+      Snapshot current = currentSnapshot();
+      if (local.getRevision() != current.revision) {
+        throw new ConcurrentChangeException(
+            new ConfigProblemBuilder(Severity.FATAL,
+                "Your halconfig was changed (revision " + current.revision + ") after this change read it (revision "
+                    + local.getRevision() + ")")
+                .setRemediation("Run the command again to apply it to the latest halconfig.")
+                .build()
+        );
+      }
+
+      long revision = current.revision + 1;
+      local.setRevision(revision);
+      Map contents = objectMapper.convertValue(local, Map.class);
+      write(contents, path);
+      snapshot = new Snapshot(revision, contents, stamp(path));
+    }
+  }
+
+  private void write(Map contents, Path path) {
     AtomicFileWriter writer = null;
     try {
       writer = new AtomicFileWriter(path);
-      writer.write(yamlParser.dump(objectMapper.convertValue(local, Map.class)));
+      writer.write(yamlParser.dump(contents));
       writer.commit();
     } catch (IOException e) {
       throw new HalException(
           new ConfigProblemBuilder(Severity.FATAL,
-              "Failure writing your halconfig to path \"" + halconfigPath + "\"").build()
+              "Failure writing your halconfig to path \"" + path + "\"").build()
       );
     } finally {
-      DaemonTaskHandler.setContext(null);
       if (writer != null) {
         writer.close();
       }
     }
   }
+
+  /**
+   * A committed revision of the halconfig. The contents are never modified; each task gets its own copy to change.
+   */
+  private static class Snapshot {
+    final long revision;
+    final Map contents;
+    // Identifies the version of the file these contents were read from or written to.
+    final Object stamp;
+
+    Snapshot(long revision, Map contents, Object stamp) {
+      this.revision = revision;
+      this.contents = contents;
+      this.stamp = stamp;
+    }
+
+    Halconfig toHalconfig(ObjectMapper objectMapper) {
+      Halconfig halconfig;
+      if (contents == null) {
+        log.info("No halconfig found - generating a new one...");
+        halconfig = new Halconfig();
+      } else {
+        halconfig = objectMapper.convertValue(contents, Halconfig.class);
+      }
+
+      halconfig.setRevision(revision);
+      return halconfig;
+    }
+  }
 }
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2017 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.netflix.spinnaker.halyard.config.model.v1.batch;
+
+import lombok.Data;
+
+/**
+ * A single change to a deployment's config, written the way it would be sent to the daemon's REST API on its own.
+ */
+@Data
+public class ConfigOperation {
+  // One of POST, PUT or DELETE.
+  String method;
+  // Relative to the deployment, e.g. "providers/kubernetes/accounts/my-account".
+  String path;
+  // The new value, as the matching endpoint would accept it. Unused by DELETE.
+  Object body;
+
+  @Override
+  public String toString() {
+    return method + " " + path;
+  }
+}
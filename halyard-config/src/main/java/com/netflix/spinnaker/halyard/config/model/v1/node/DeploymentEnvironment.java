@@ -22,6 +22,8 @@ import lombok.EqualsAndHashCode;
 import lombok.Getter;
 
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * A DeploymentEnvironment is a location where Spinnaker is installed.
@@ -92,6 +94,8 @@ public class DeploymentEnvironment extends Node {
   private String accountName;
   private Consul consul = new Consul();
   private Vault vault = new Vault();
+  // Map from service name (e.g. "clouddriver") -> resources & replica counts that override the defaults picked by `size`.
+  private Map<String, CustomSizing> customSizing = new HashMap<>();
 
   @Data
   public static class Consul {
@@ -104,4 +108,33 @@ public class DeploymentEnvironment extends Node {
     String address;
     boolean enabled;
   }
+
+  /**
+   * Resources for a single service, in the provider's notation (e.g. cpu "500m", memory "2Gi" on Kubernetes). Any
+   * unset entry falls back to the default for the deployment's size.
+   *
+   * The service runs `replicas` instances (1 when unset). When `autoscaling` is set, the provider scales the service
+   * between its bounds instead, starting from `replicas`.
+   */
+  @Data
+  public static class CustomSizing {
+    Resources requests = new Resources();
+    Resources limits = new Resources();
+    Integer replicas;
+    Autoscaling autoscaling;
+
+    @Data
+    public static class Resources {
+      String cpu;
+      String memory;
+    }
+
+    @Data
+    public static class Autoscaling {
+      Integer minReplicas;
+      Integer maxReplicas;
+      // Average CPU usage, as a percentage of the requested CPU, that the provider scales to keep the service under.
+      Integer targetCpuUtilization = 80;
+    }
+  }
 }
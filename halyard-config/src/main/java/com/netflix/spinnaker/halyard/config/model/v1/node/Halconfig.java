@@ -42,6 +42,12 @@ public class Halconfig extends Node {
    */
   private String halyardVersion;
 
+  /**
+   * Incremented each time Halyard saves this file. A change is only saved if no other change was saved since it read
+   * this revision.
+   */
+  private long revision;
+
   /**
    * Current deployment being managed.
    *
@@ -0,0 +1,333 @@
+/*
+ * Copyright 2017 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.netflix.spinnaker.halyard.config.services.v1;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.netflix.spinnaker.halyard.config.model.v1.batch.ConfigOperation;
+import com.netflix.spinnaker.halyard.config.model.v1.node.*;
+import com.netflix.spinnaker.halyard.config.model.v1.security.AuthnMethod;
+import com.netflix.spinnaker.halyard.config.model.v1.security.GroupMembership;
+import com.netflix.spinnaker.halyard.config.model.v1.security.Security;
+import com.netflix.spinnaker.halyard.config.problem.v1.ConfigProblemBuilder;
+import com.netflix.spinnaker.halyard.core.error.v1.HalException;
+import com.netflix.spinnaker.halyard.core.problem.v1.Problem.Severity;
+import com.netflix.spinnaker.halyard.core.problem.v1.ProblemSet;
+import com.netflix.spinnaker.halyard.core.registry.v1.Versions;
+import com.netflix.spinnaker.halyard.core.tasks.v1.DaemonTaskHandler;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Applies an ordered list of config operations to a single in-memory copy of the halconfig, so they can be validated
+ * together & saved (or reverted) as a unit rather than one request at a time.
+ */
+@Component
+public class BatchUpdateService {
+  @Autowired
+  private AccountService accountService;
+
+  @Autowired
+  private BakeryService bakeryService;
+
+  @Autowired
+  private DeploymentEnvironmentService deploymentEnvironmentService;
+
+  @Autowired
+  private DeploymentService deploymentService;
+
+  @Autowired
+  private FeaturesService featuresService;
+
+  @Autowired
+  private MasterService masterService;
+
+  @Autowired
+  private MetricStoresService metricStoresService;
+
+  @Autowired
+  private PersistentStorageService persistentStorageService;
+
+  @Autowired
+  private ProviderService providerService;
+
+  @Autowired
+  private SecurityService securityService;
+
+  @Autowired
+  private WebhookService webhookService;
+
+  @Autowired
+  private ValidateService validateService;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  /**
+   * Applies each operation in order. Nothing is written to disk; the caller saves or reverts the halconfig once all
+   * operations have run.
+   *
+   * @return a filter matching every node any of the operations touched.
+   */
+  public NodeFilter applyOperations(String deploymentName, List<ConfigOperation> operations) {
+    NodeFilter touched = new NodeFilter();
+    for (int i = 0; i < operations.size(); i++) {
+      ConfigOperation operation = operations.get(i);
+      DaemonTaskHandler.log("Applying operation " + (i + 1) + " of " + operations.size() + ": " + operation);
+      NodeFilter filter = applyOperation(deploymentName, i, operation);
+      if (filter != null) {
+        touched.getMatchers().addAll(filter.getMatchers());
+      }
+    }
+
+    return touched;
+  }
+
+  /**
+   * Validates the union of the nodes touched by a batch in a single pass.
+   */
+  public ProblemSet validateOperations(NodeFilter touched) {
+    if (touched.getMatchers().isEmpty()) {
+      return new ProblemSet();
+    }
+
+    return validateService.validateMatchingFilter(touched);
+  }
+
+  private NodeFilter applyOperation(String deploymentName, int index, ConfigOperation operation) {
+    String method = operation.getMethod() == null ? "" : operation.getMethod().toUpperCase();
+    List<String> path = splitPath(operation.getPath());
+    NodeFilter deployment = new NodeFilter().setDeployment(deploymentName);
+
+    switch (path.get(0)) {
+      case "providers":
+        return applyProviderOperation(deploymentName, index, operation, method, path);
+      case "webhooks":
+        return applyWebhookOperation(deploymentName, index, operation, method, path);
+      case "metricStores":
+        return applyMetricStoresOperation(deploymentName, index, operation, method, path);
+      case "security":
+        return applySecurityOperation(deploymentName, index, operation, method, path);
+      case "features":
+        expect(index, operation, method, path, "PUT", 1);
+        featuresService.setFeatures(deploymentName, objectMapper.convertValue(operation.getBody(), Features.class));
+        return null;
+      case "deploymentEnvironment":
+        expect(index, operation, method, path, "PUT", 1);
+        deploymentEnvironmentService.setDeploymentEnvironment(deploymentName, objectMapper.convertValue(operation.getBody(), DeploymentEnvironment.class));
+        return null;
+      case "persistentStorage":
+        expect(index, operation, method, path, "PUT", 1);
+        persistentStorageService.setPersistentStorage(deploymentName, objectMapper.convertValue(operation.getBody(), PersistentStorage.class));
+        return deployment.setPersistentStorage();
+      case "version":
+        expect(index, operation, method, path, "PUT", 1);
+        deploymentService.setVersion(deploymentName, objectMapper.convertValue(operation.getBody(), Versions.Version.class).getVersion());
+        return deployment;
+      default:
+        throw unsupported(index, operation);
+    }
+  }
+
+  private NodeFilter applyProviderOperation(String deploymentName, int index, ConfigOperation operation, String method, List<String> path) {
+    if (path.size() < 3) {
+      throw unsupported(index, operation);
+    }
+
+    String providerName = path.get(1);
+    NodeFilter provider = new NodeFilter().setDeployment(deploymentName).setProvider(providerName);
+    switch (path.get(2)) {
+      case "enabled":
+        expect(index, operation, method, path, "PUT", 3);
+        providerService.setEnabled(deploymentName, providerName, toBoolean(index, operation));
+        return provider;
+      case "accounts":
+        if (path.size() == 3 && method.equals("POST")) {
+          Account account = objectMapper.convertValue(operation.getBody(), Providers.translateAccountType(providerName));
+          accountService.addAccount(deploymentName, providerName, account);
+          return provider.setAccount(account.getName());
+        } else if (path.size() == 4 && method.equals("PUT")) {
+          Account account = objectMapper.convertValue(operation.getBody(), Providers.translateAccountType(providerName));
+          accountService.setAccount(deploymentName, providerName, path.get(3), account);
+          return provider.setAccount(account.getName());
+        } else if (path.size() == 4 && method.equals("DELETE")) {
+          accountService.deleteAccount(deploymentName, providerName, path.get(3));
+          return provider.withAnyAccount();
+        }
+
+        throw unsupported(index, operation);
+      case "bakery":
+        if (path.size() == 4 && path.get(3).equals("defaults") && method.equals("PUT")) {
+          BakeryDefaults bakeryDefaults = objectMapper.convertValue(operation.getBody(), Providers.translateBakeryDefaultsType(providerName));
+          bakeryService.setBakeryDefaults(deploymentName, providerName, bakeryDefaults);
+          return provider.setBakeryDefaults();
+        } else if (path.size() < 5 || !path.get(3).equals("defaults") || !path.get(4).equals("baseImage")) {
+          throw unsupported(index, operation);
+        } else if (path.size() == 5 && method.equals("POST")) {
+          BaseImage baseImage = objectMapper.convertValue(operation.getBody(), Providers.translateBaseImageType(providerName));
+          bakeryService.addBaseImage(deploymentName, providerName, baseImage);
+          return provider.setBaseImage(baseImage.getNodeName());
+        } else if (path.size() == 6 && method.equals("PUT")) {
+          BaseImage baseImage = objectMapper.convertValue(operation.getBody(), Providers.translateBaseImageType(providerName));
+          bakeryService.setBaseImage(deploymentName, providerName, path.get(5), baseImage);
+          return provider.setBaseImage(baseImage.getNodeName());
+        } else if (path.size() == 6 && method.equals("DELETE")) {
+          bakeryService.deleteBaseImage(deploymentName, providerName, path.get(5));
+          return provider.withAnyBaseImage();
+        }
+
+        throw unsupported(index, operation);
+      default:
+        throw unsupported(index, operation);
+    }
+  }
+
+  private NodeFilter applyWebhookOperation(String deploymentName, int index, ConfigOperation operation, String method, List<String> path) {
+    if (path.size() < 3) {
+      throw unsupported(index, operation);
+    }
+
+    String webhookName = path.get(1);
+    NodeFilter webhook = new NodeFilter().setDeployment(deploymentName).setWebhook(webhookName);
+    switch (path.get(2)) {
+      case "enabled":
+        expect(index, operation, method, path, "PUT", 3);
+        webhookService.setEnabled(deploymentName, webhookName, toBoolean(index, operation));
+        return webhook;
+      case "masters":
+        if (path.size() == 3 && method.equals("POST")) {
+          Master master = objectMapper.convertValue(operation.getBody(), Webhooks.translateMasterType(webhookName));
+          masterService.addMaster(deploymentName, webhookName, master);
+          return webhook.setMaster(master.getName());
+        } else if (path.size() == 4 && method.equals("PUT")) {
+          Master master = objectMapper.convertValue(operation.getBody(), Webhooks.translateMasterType(webhookName));
+          masterService.setMaster(deploymentName, webhookName, path.get(3), master);
+          return webhook.setMaster(master.getName());
+        } else if (path.size() == 4 && method.equals("DELETE")) {
+          masterService.deleteMaster(deploymentName, webhookName, path.get(3));
+          return webhook.withAnyMaster();
+        }
+
+        throw unsupported(index, operation);
+      default:
+        throw unsupported(index, operation);
+    }
+  }
+
+  private NodeFilter applyMetricStoresOperation(String deploymentName, int index, ConfigOperation operation, String method, List<String> path) {
+    NodeFilter metricStores = new NodeFilter().setDeployment(deploymentName).setMetricStores();
+    if (path.size() == 1) {
+      expect(index, operation, method, path, "PUT", 1);
+      metricStoresService.setMetricStores(deploymentName, objectMapper.convertValue(operation.getBody(), MetricStores.class));
+      return metricStores;
+    }
+
+    String metricStoreType = path.get(1);
+    if (path.size() == 2) {
+      expect(index, operation, method, path, "PUT", 2);
+      MetricStore metricStore = objectMapper.convertValue(operation.getBody(), MetricStores.translateMetricStoreType(metricStoreType));
+      metricStoresService.setMetricStore(deploymentName, metricStore);
+    } else if (path.get(2).equals("enabled")) {
+      expect(index, operation, method, path, "PUT", 3);
+      metricStoresService.setMetricStoreEnabled(deploymentName, metricStoreType, toBoolean(index, operation));
+    } else {
+      throw unsupported(index, operation);
+    }
+
+    return metricStores.setMetricStore(metricStoreType);
+  }
+
+  private NodeFilter applySecurityOperation(String deploymentName, int index, ConfigOperation operation, String method, List<String> path) {
+    NodeFilter security = new NodeFilter().setDeployment(deploymentName).setSecurity();
+    if (path.size() == 1) {
+      expect(index, operation, method, path, "PUT", 1);
+      securityService.setSecurity(deploymentName, objectMapper.convertValue(operation.getBody(), Security.class));
+      return security;
+    }
+
+    switch (path.get(1)) {
+      case "authn":
+        if (path.size() < 3) {
+          throw unsupported(index, operation);
+        }
+
+        String methodName = path.get(2);
+        if (path.size() == 3) {
+          expect(index, operation, method, path, "PUT", 3);
+          AuthnMethod authnMethod = objectMapper.convertValue(operation.getBody(), AuthnMethod.translateAuthnMethodName(methodName));
+          securityService.setAuthnMethod(deploymentName, authnMethod);
+        } else if (path.get(3).equals("enabled")) {
+          expect(index, operation, method, path, "PUT", 4);
+          securityService.setAuthnMethodEnabled(deploymentName, methodName, toBoolean(index, operation));
+        } else {
+          throw unsupported(index, operation);
+        }
+
+        return security.setAuthnMethod(methodName);
+      case "authz":
+        if (path.size() == 3 && path.get(2).equals("enabled")) {
+          expect(index, operation, method, path, "PUT", 3);
+          securityService.setAuthzEnabled(deploymentName, toBoolean(index, operation));
+          return security.withAnyRoleProvider();
+        } else if (path.size() == 3 && path.get(2).equals("groupMembership")) {
+          expect(index, operation, method, path, "PUT", 3);
+          securityService.setGroupMembership(deploymentName, objectMapper.convertValue(operation.getBody(), GroupMembership.class));
+          return security.withAnyRoleProvider();
+        } else if (path.size() == 4 && path.get(2).equals("groupMembership")) {
+          expect(index, operation, method, path, "PUT", 4);
+          String roleProviderName = path.get(3);
+          securityService.setRoleProvider(deploymentName,
+              objectMapper.convertValue(operation.getBody(), GroupMembership.translateRoleProviderType(roleProviderName)));
+          return security.setRoleProvider(roleProviderName);
+        }
+
+        throw unsupported(index, operation);
+      default:
+        throw unsupported(index, operation);
+    }
+  }
+
+  private static List<String> splitPath(String path) {
+    String trimmed = path == null ? "" : path.trim().replaceAll("^/+|/+$", "");
+    return Arrays.asList(trimmed.split("/+"));
+  }
+
+  private boolean toBoolean(int index, ConfigOperation operation) {
+    Boolean result = objectMapper.convertValue(operation.getBody(), Boolean.class);
+    if (result == null) {
+      throw new HalException(new ConfigProblemBuilder(Severity.FATAL,
+          "Operation " + (index + 1) + " (" + operation + ") needs a body of true or false").build());
+    }
+
+    return result;
+  }
+
+  private static void expect(int index, ConfigOperation operation, String method, List<String> path, String expectedMethod, int expectedLength) {
+    if (!method.equals(expectedMethod) || path.size() != expectedLength) {
+      throw unsupported(index, operation);
+    }
+  }
+
+  private static HalException unsupported(int index, ConfigOperation operation) {
+    return new HalException(new ConfigProblemBuilder(Severity.FATAL,
+        "Operation " + (index + 1) + " (" + operation + ") is not supported in a batch")
+        .setRemediation("Use POST, PUT or DELETE on one of the paths under /v1/config/deployments/{deployment}/ that change the config").build());
+  }
+}
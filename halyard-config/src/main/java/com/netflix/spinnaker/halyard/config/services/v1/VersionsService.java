@@ -23,16 +23,25 @@ import com.netflix.spinnaker.halyard.core.error.v1.HalException;
 import com.netflix.spinnaker.halyard.core.registry.v1.BillOfMaterials;
 import com.netflix.spinnaker.halyard.core.registry.v1.ProfileRegistry;
 import com.netflix.spinnaker.halyard.core.registry.v1.Versions;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.yaml.snakeyaml.Yaml;
 import retrofit.RetrofitError;
 
 import java.io.IOException;
+import java.util.Date;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
 
 import static com.netflix.spinnaker.halyard.core.problem.v1.Problem.Severity.FATAL;
 
 @Component
+@Slf4j
 public class VersionsService {
   @Autowired
   ProfileRegistry profileRegistry;
@@ -43,14 +52,96 @@ public class VersionsService {
   @Autowired
   StrictObjectMapper strictObjectMapper;
 
+  @Value("${spinnaker.config.input.versionsTtlSeconds:300}")
+  long versionsTtlSeconds = 300;
 
+  // After a failed refresh, wait this long before the next attempt, doubling with each further failure up to the TTL.
+  @Value("${spinnaker.config.input.versionsRetrySeconds:5}")
+  long versionsRetrySeconds = 5;
+
+  LongSupplier clock = System::currentTimeMillis;
+
+  private volatile CachedVersions cachedVersions;
+
+  private final AtomicBoolean refreshing = new AtomicBoolean(false);
+
+  private final ExecutorService refreshExecutor = Executors.newSingleThreadExecutor(r -> {
+    Thread t = new Thread(r, "versions-refresh");
+    t.setDaemon(true);
+    return t;
+  });
+
+  /**
+   * Returns the list of published versions, served from memory whenever a copy has been loaded before.
+   *
+   * Once the cached copy is older than the configured TTL it is still returned immediately, and a single background
+   * refresh is scheduled. If that refresh fails, the last-known-good copy keeps being served, and the next refresh is
+   * backed off. Only the very first load blocks on (and can fail because of) the config bucket.
+   *
+   * @return the most recently loaded versions.yml.
+   */
   public Versions getVersions() {
+    CachedVersions cached = cachedVersions;
+    if (cached == null) {
+      synchronized (this) {
+        cached = cachedVersions;
+        if (cached == null) {
+          cached = loaded(loadVersions());
+          cachedVersions = cached;
+        }
+      }
+    } else if (clock.getAsLong() >= cached.nextRefreshAt) {
+      scheduleRefresh(cached);
+    }
+
+    return cached.getVersions();
+  }
+
+  /**
+   * @return a tag that changes whenever the contents returned by getVersions() do.
+   */
+  public String getEntityTag() {
+    return Integer.toHexString(getVersions().hashCode());
+  }
+
+  private void scheduleRefresh(CachedVersions stale) {
+    if (!refreshing.compareAndSet(false, true)) {
+      return;
+    }
+
+    refreshExecutor.submit(() -> {
+      try {
+        cachedVersions = loaded(loadVersions());
+        log.info("Refreshed \"versions.yml\" from config bucket");
+      } catch (Exception e) {
+        // Record the attempt, so callers don't each queue another fetch while the bucket is unreachable.
+        cachedVersions = failed(stale);
+        log.warn("Unable to refresh \"versions.yml\", serving last-known-good copy until "
+            + new Date(cachedVersions.nextRefreshAt) + ": " + e.getMessage());
+      } finally {
+        refreshing.set(false);
+      }
+    });
+  }
+
+  private CachedVersions loaded(Versions versions) {
+    return new CachedVersions(versions, clock.getAsLong() + TimeUnit.SECONDS.toMillis(versionsTtlSeconds), 0);
+  }
+
+  private CachedVersions failed(CachedVersions stale) {
+    int failures = stale.failures + 1;
+    long ttlMillis = TimeUnit.SECONDS.toMillis(versionsTtlSeconds);
+    long retryMillis = TimeUnit.SECONDS.toMillis(versionsRetrySeconds) << Math.min(failures - 1, 16);
+    return new CachedVersions(stale.versions, clock.getAsLong() + Math.max(Math.min(retryMillis, ttlMillis), 0), failures);
+  }
+
+  private Versions loadVersions() {
     try {
       return strictObjectMapper.convertValue(
           yamlParser.load(profileRegistry.getObjectContents("versions.yml")),
           Versions.class
       );
-    } catch (IOException e) {
+    } catch (RetrofitError | IOException e) {
       throw new HalException(
           new ConfigProblemBuilder(FATAL, "Could not load \"versions.yml\" from config bucket: " + e.getMessage() + ".").build());
     }
@@ -86,4 +177,21 @@ public class VersionsService {
   public String getLatest() {
     return getVersions().getLatest();
   }
+
+  private static class CachedVersions {
+    private final Versions versions;
+    private final long nextRefreshAt;
+    // Refreshes that have failed in a row since these versions were loaded.
+    private final int failures;
+
+    CachedVersions(Versions versions, long nextRefreshAt, int failures) {
+      this.versions = versions;
+      this.nextRefreshAt = nextRefreshAt;
+      this.failures = failures;
+    }
+
+    Versions getVersions() {
+      return versions;
+    }
+  }
 }
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2017 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.halyard.config.config.v1
+
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.nio.file.Path
+
+class AtomicFileWriterSpec extends Specification {
+  Path directory
+
+  void setup() {
+    directory = Files.createTempDirectory("atomic-file-writer")
+  }
+
+  List<String> siblings() {
+    return directory.toFile().list().sort()
+  }
+
+  void "stages contents in a hidden sibling of the target until commit"() {
+    setup:
+    Path target = directory.resolve("config")
+    AtomicFileWriter writer = new AtomicFileWriter(target)
+
+    when:
+    writer.write("contents")
+
+    then:
+    !Files.exists(target)
+    siblings().size() == 1
+    siblings()[0].startsWith(".config.")
+    siblings()[0].endsWith(".tmp")
+
+    cleanup:
+    writer.close()
+  }
+
+  void "replaces the target on commit and leaves nothing else behind"() {
+    setup:
+    Path target = directory.resolve("config")
+    target.text = "old"
+    AtomicFileWriter writer = new AtomicFileWriter(target)
+
+    when:
+    writer.write("new")
+    writer.commit()
+    writer.close()
+
+    then:
+    target.text == "new"
+    siblings() == ["config"]
+  }
+
+  void "removes the temporary file when the commit fails"() {
+    setup:
+    // A non-empty directory can't be replaced by a file, so the rename fails.
+    Path target = directory.resolve("config")
+    Files.createDirectories(target.resolve("child"))
+    AtomicFileWriter writer = new AtomicFileWriter(target)
+
+    when:
+    writer.write("new")
+    writer.commit()
+
+    then:
+    thrown(IOException)
+
+    when:
+    writer.close()
+
+    then:
+    siblings() == ["config"]
+  }
+
+  void "removes the temporary file when closed without committing"() {
+    setup:
+    AtomicFileWriter writer = new AtomicFileWriter(directory.resolve("config"))
+
+    when:
+    writer.write("abandoned")
+    writer.close()
+
+    then:
+    siblings() == []
+  }
+}
@@ -17,10 +17,16 @@
 package com.netflix.spinnaker.halyard.config.config.v1
 
 import com.netflix.spinnaker.halyard.config.model.v1.node.Halconfig
+import com.netflix.spinnaker.halyard.core.DaemonResponse.UpdateRequestBuilder
+import com.netflix.spinnaker.halyard.core.error.v1.ConcurrentChangeException
+import com.netflix.spinnaker.halyard.core.problem.v1.ProblemSet
+import com.netflix.spinnaker.halyard.core.tasks.v1.DaemonTaskHandler
 import org.yaml.snakeyaml.Yaml
 import spock.lang.Specification
 
 import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.util.function.Supplier
 
 class HalconfigParserSpec extends Specification {
   String HALYARD_VERSION = "0.1.0"
@@ -71,4 +77,108 @@ balyardVersion: $HALYARD_VERSION
     IllegalArgumentException ex = thrown()
     ex.message.contains("balyardVersion")
   }
+
+  File writeConfig(String config) {
+    File file = Files.createTempDirectory("halconfig").resolve("config").toFile()
+    file.text = config
+    parser.halconfigPath = file.path
+    return file
+  }
+
+  // Runs work as though it were its own daemon task, starting from the given (possibly null) halconfig.
+  <T> T asTask(Halconfig context, Closure<T> work) {
+    return DaemonTaskHandler.runDetached(context, [], work as Supplier<T>)
+  }
+
+  void "Reject a change read from a revision that has since been saved over"() {
+    setup:
+    File file = writeConfig("""
+halyardVersion: $HALYARD_VERSION
+currentDeployment: $CURRENT_DEPLOYMENT
+""")
+    Halconfig first = asTask(null) { parser.getHalconfig() }
+    Halconfig second = asTask(null) { parser.getHalconfig() }
+
+    when:
+    first.currentDeployment = "first"
+    asTask(first) { parser.saveConfig() }
+    second.currentDeployment = "second"
+    asTask(second) { parser.saveConfig() }
+
+    then:
+    thrown(ConcurrentChangeException)
+    file.text.contains("currentDeployment: first")
+    asTask(null) { parser.getHalconfig() }.revision == 1
+  }
+
+  void "Give up the old revision when the file is edited by hand"() {
+    setup:
+    File file = writeConfig("""
+halyardVersion: $HALYARD_VERSION
+currentDeployment: $CURRENT_DEPLOYMENT
+""")
+    Halconfig stale = asTask(null) { parser.getHalconfig() }
+
+    when:
+    file.text = """
+halyardVersion: $HALYARD_VERSION
+currentDeployment: edited-by-hand
+"""
+    asTask(stale) { parser.saveConfig() }
+
+    then:
+    thrown(ConcurrentChangeException)
+    file.text.contains("edited-by-hand")
+  }
+
+  void "Reapply an update on top of a change saved while it ran"() {
+    setup:
+    File file = writeConfig("""
+halyardVersion: $HALYARD_VERSION
+currentDeployment: $CURRENT_DEPLOYMENT
+""")
+    int attempts = 0
+    UpdateRequestBuilder builder = new UpdateRequestBuilder()
+    builder.update = {
+      parser.getHalconfig().currentDeployment = "mine"
+      if (attempts++ == 0) {
+        asTask(null) {
+          parser.getHalconfig().halyardVersion = "theirs"
+          parser.saveConfig()
+        }
+      }
+    }
+    builder.validate = { new ProblemSet() } as Supplier<ProblemSet>
+    builder.revert = { parser.undoChanges() }
+    builder.save = { parser.saveConfig() }
+
+    when:
+    asTask(null) { builder.build() }
+    Halconfig saved = asTask(null) { parser.getHalconfig() }
+
+    then:
+    attempts == 2
+    saved.revision == 2
+    saved.currentDeployment == "mine"
+    saved.halyardVersion == "theirs"
+    file.text.contains("revision: 2")
+  }
+
+  void "Hand work detached from a task the task's halconfig as is"() {
+    setup:
+    writeConfig("""
+halyardVersion: $HALYARD_VERSION
+currentDeployment: $CURRENT_DEPLOYMENT
+""")
+    Halconfig shared = asTask(null) { parser.getHalconfig() }
+    // Would be reset if the halconfig were transformed again.
+    shared.path = "already-transformed"
+
+    when:
+    List<Halconfig> seen = (1..4).collect { asTask(shared) { parser.getHalconfig() } }
+
+    then:
+    seen.every { it.is(shared) }
+    shared.path == "already-transformed"
+  }
 }
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2017 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.halyard.config.services.v1
+
+import com.netflix.spinnaker.halyard.config.config.v1.StrictObjectMapper
+import com.netflix.spinnaker.halyard.config.model.v1.batch.ConfigOperation
+import com.netflix.spinnaker.halyard.config.model.v1.node.Account
+import com.netflix.spinnaker.halyard.core.error.v1.HalException
+import spock.lang.Specification
+
+class BatchUpdateServiceSpec extends Specification {
+  final String DEPLOYMENT = "default"
+  final String PROVIDER = "kubernetes"
+  final String ACCOUNT_NAME = "my-account"
+  final HalconfigParserMocker mocker = new HalconfigParserMocker()
+  final String CONFIG = """
+halyardVersion: 1
+currentDeployment: $DEPLOYMENT
+deploymentConfigurations:
+- name: $DEPLOYMENT
+  version: 1
+  providers:
+    $PROVIDER:
+      enabled: false
+      accounts:
+        - name: $ACCOUNT_NAME
+"""
+
+  AccountService accountService
+
+  BatchUpdateService makeBatchUpdateService(String config) {
+    def lookupService = new LookupService()
+    def providerService = new ProviderService()
+    def batchUpdateService = new BatchUpdateService()
+    accountService = new AccountService()
+
+    lookupService.parser = mocker.mockHalconfigParser(config)
+    providerService.lookupService = lookupService
+    accountService.lookupService = lookupService
+    accountService.providerService = providerService
+
+    batchUpdateService.accountService = accountService
+    batchUpdateService.providerService = providerService
+    batchUpdateService.objectMapper = new StrictObjectMapper()
+    return batchUpdateService
+  }
+
+  static ConfigOperation op(String method, String path, Object body = null) {
+    return new ConfigOperation().setMethod(method).setPath(path).setBody(body)
+  }
+
+  def "applies operations in order to the same config"() {
+    setup:
+    def batchUpdateService = makeBatchUpdateService(CONFIG)
+    def operations = [
+        op("POST", "providers/$PROVIDER/accounts", [name: "second"]),
+        op("PUT", "/providers/$PROVIDER/accounts/second/", [name: "third"]),
+        op("DELETE", "providers/$PROVIDER/accounts/$ACCOUNT_NAME"),
+        op("PUT", "providers/$PROVIDER/enabled", true)
+    ]
+
+    when:
+    batchUpdateService.applyOperations(DEPLOYMENT, operations)
+    def accounts = accountService.getAllAccounts(DEPLOYMENT, PROVIDER)
+
+    then:
+    accounts.collect { ((Account) it).name } == ["third"]
+  }
+
+  def "collects the nodes touched by every operation"() {
+    setup:
+    def batchUpdateService = makeBatchUpdateService(CONFIG)
+    def operations = [
+        op("POST", "providers/$PROVIDER/accounts", [name: "second"]),
+        op("PUT", "providers/$PROVIDER/enabled", true)
+    ]
+
+    when:
+    def touched = batchUpdateService.applyOperations(DEPLOYMENT, operations)
+
+    then:
+    touched.matches(accountService.getProviderAccount(DEPLOYMENT, PROVIDER, "second"))
+    !touched.matches(accountService.getProviderAccount(DEPLOYMENT, PROVIDER, ACCOUNT_NAME))
+  }
+
+  def "rejects an operation it can't route"() {
+    setup:
+    def batchUpdateService = makeBatchUpdateService(CONFIG)
+
+    when:
+    batchUpdateService.applyOperations(DEPLOYMENT, [op("PUT", "providers/$PROVIDER/enabled", true), op("PATCH", "features", [:])])
+
+    then:
+    HalException ex = thrown()
+    ex.problems.problems[0].message.contains("Operation 2")
+  }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2017 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.halyard.config.services.v1
+
+import com.netflix.spinnaker.halyard.config.config.v1.StrictObjectMapper
+import com.netflix.spinnaker.halyard.core.error.v1.HalException
+import com.netflix.spinnaker.halyard.core.registry.v1.ProfileRegistry
+import org.yaml.snakeyaml.Yaml
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.nio.charset.StandardCharsets
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.function.LongSupplier
+
+class VersionsServiceSpec extends Specification {
+  VersionsService versionsService
+  ProfileRegistry profileRegistry
+  long now = 0
+
+  void setup() {
+    profileRegistry = Mock(ProfileRegistry)
+    versionsService = new VersionsService()
+    versionsService.profileRegistry = profileRegistry
+    versionsService.yamlParser = new Yaml()
+    versionsService.strictObjectMapper = new StrictObjectMapper()
+    versionsService.clock = { now } as LongSupplier
+  }
+
+  InputStream versionsStream(String latest) {
+    String contents = """
+latest: $latest
+versions:
+- version: $latest
+  alias: Test
+  changelog: none
+"""
+    return new ByteArrayInputStream(contents.getBytes(StandardCharsets.UTF_8))
+  }
+
+  void "only loads versions.yml once while the cache is fresh"() {
+    when:
+    def first = versionsService.getLatest()
+    def second = versionsService.getLatest()
+
+    then:
+    1 * profileRegistry.getObjectContents("versions.yml") >> versionsStream("1.0.0")
+    first == "1.0.0"
+    second == "1.0.0"
+  }
+
+  // Waits for a background refresh to finish.
+  void awaitRefresh() {
+    new PollingConditions(timeout: 5).eventually {
+      assert !versionsService.refreshing.get()
+    }
+  }
+
+  void "backs off refreshing while the config bucket is unreachable, serving the last-known-good copy"() {
+    setup:
+    AtomicInteger loads = new AtomicInteger()
+    profileRegistry.getObjectContents("versions.yml") >> {
+      if (loads.getAndIncrement() == 0) {
+        return versionsStream("1.0.0")
+      }
+      throw new IOException("unreachable")
+    }
+    versionsService.getLatest()
+
+    when: "the TTL expires"
+    now += 301_000
+    def result = versionsService.getLatest()
+    awaitRefresh()
+
+    then:
+    result == "1.0.0"
+    loads.get() == 2
+
+    when: "the failed refresh was only just attempted"
+    3.times { versionsService.getLatest() }
+    awaitRefresh()
+
+    then:
+    loads.get() == 2
+
+    when: "the retry delay passes"
+    now += 5_000
+    versionsService.getLatest()
+    awaitRefresh()
+
+    then:
+    loads.get() == 3
+
+    when: "the first retry delay passes again, but the delay has doubled"
+    now += 5_000
+    versionsService.getLatest()
+    awaitRefresh()
+
+    then:
+    loads.get() == 3
+    versionsService.getLatest() == "1.0.0"
+  }
+
+  void "replaces the cached copy once a refresh succeeds"() {
+    setup:
+    AtomicInteger loads = new AtomicInteger()
+    profileRegistry.getObjectContents("versions.yml") >> {
+      versionsStream(loads.getAndIncrement() == 0 ? "1.0.0" : "2.0.0")
+    }
+
+    when:
+    def first = versionsService.getLatest()
+    now += 301_000
+    def stale = versionsService.getLatest()
+    awaitRefresh()
+
+    then:
+    first == "1.0.0"
+    stale == "1.0.0"
+    versionsService.getLatest() == "2.0.0"
+    loads.get() == 2
+  }
+
+  void "fails when versions.yml has never been loaded"() {
+    setup:
+    profileRegistry.getObjectContents("versions.yml") >> { throw new IOException("unreachable") }
+
+    when:
+    versionsService.getVersions()
+
+    then:
+    thrown(HalException)
+  }
+}
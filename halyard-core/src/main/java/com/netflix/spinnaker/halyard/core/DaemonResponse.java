@@ -16,6 +16,9 @@
 
 package com.netflix.spinnaker.halyard.core;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.netflix.spinnaker.halyard.core.error.v1.ConcurrentChangeException;
 import com.netflix.spinnaker.halyard.core.error.v1.HalException;
 import com.netflix.spinnaker.halyard.core.problem.v1.Problem.Severity;
 import com.netflix.spinnaker.halyard.core.problem.v1.ProblemSet;
@@ -40,7 +43,8 @@ public class DaemonResponse<T> {
   @Getter
   private String jobUuid;
 
-  public DaemonResponse(T responseBody, ProblemSet problemSet) {
+  @JsonCreator
+  public DaemonResponse(@JsonProperty("responseBody") T responseBody, @JsonProperty("problemSet") ProblemSet problemSet) {
     this.responseBody = responseBody;
     this.problemSet = problemSet;
   }
@@ -85,25 +89,41 @@ public class DaemonResponse<T> {
     private Runnable update;
     private Supplier<ProblemSet> validate;
     private Severity severity = Severity.WARNING;
+    // How many times to apply the update when other updates keep being saved first.
+    private int maxAttempts = 5;
 
     public DaemonResponse<Void> build() {
-      ProblemSet result;
-      try {
-        update.run();
-        result = validate.get();
-      } catch (HalException e) {
-        revert.run();
-        throw e;
-      } catch (Exception e) {
-        revert.run();
-        log.error("Unknown exception encountered: ", e);
-        throw e;
-      }
+      for (int attempt = 1; ; attempt++) {
+        ProblemSet result;
+        try {
+          update.run();
+          result = validate.get();
+        } catch (HalException e) {
+          revert.run();
+          throw e;
+        } catch (Exception e) {
+          revert.run();
+          log.error("Unknown exception encountered: ", e);
+          throw e;
+        }
+
+        result.throwifSeverityExceeds(severity);
 
-      result.throwifSeverityExceeds(severity);
-      save.run();
+        try {
+          save.run();
+        } catch (ConcurrentChangeException e) {
+          // Nothing was written, so rebase by re-applying the update on top of the latest config.
+          revert.run();
+          if (attempt >= maxAttempts) {
+            throw e;
+          }
 
-      return new DaemonResponse<>(null, result);
+          log.info("Config changed while applying an update, retrying (attempt " + (attempt + 1) + " of " + maxAttempts + ")");
+          continue;
+        }
+
+        return new DaemonResponse<>(null, result);
+      }
     }
   }
 }
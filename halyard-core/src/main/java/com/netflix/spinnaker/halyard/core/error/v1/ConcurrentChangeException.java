@@ -0,0 +1,29 @@
+/*
+ * Copyright 2017 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.halyard.core.error.v1;
+
+import com.netflix.spinnaker.halyard.core.problem.v1.Problem;
+
+/**
+ * Thrown when a change is saved on top of a config that something else has changed since the change first read it.
+ * Nothing has been written when this is thrown, so the change can be safely re-applied to the latest config.
+ */
+public class ConcurrentChangeException extends HalException {
+  public ConcurrentChangeException(Problem problem) {
+    super(problem);
+  }
+}
@@ -17,6 +17,8 @@
 
 package com.netflix.spinnaker.halyard.core.tasks.v1;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -48,7 +50,8 @@ public class DaemonStage {
     INACTIVE
   }
 
-  DaemonStage(String name) {
+  @JsonCreator
+  DaemonStage(@JsonProperty("name") String name) {
     this.name = name;
   }
 }
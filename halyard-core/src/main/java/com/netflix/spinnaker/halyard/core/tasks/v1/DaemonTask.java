@@ -20,33 +20,36 @@ public class DaemonTask<C, T> {
   Exception fatalError;
   @JsonIgnore C context;
 
+  // The stage events are written to. Concurrent stages are added after it without replacing it.
+  @JsonIgnore DaemonStage currentStage;
+
   void finishStage() {
-    DaemonStage lastStage = getLastStage();
-    if (lastStage != null) {
-      lastStage.setState(DaemonStage.State.INACTIVE);
+    if (currentStage != null) {
+      currentStage.setState(DaemonStage.State.INACTIVE);
     }
   }
 
   void newStage(String name) {
     finishStage();
-    stages.add(new DaemonStage(name));
+    currentStage = new DaemonStage(name);
+    stages.add(currentStage);
+  }
+
+  /**
+   * Adds a stage that is logged to directly, alongside the current stage, rather than through writeEvent.
+   */
+  DaemonStage addConcurrentStage(String name) {
+    DaemonStage stage = new DaemonStage(name);
+    stages.add(stage);
+    return stage;
   }
 
   void writeEvent(String message) {
-    DaemonStage lastStage = getLastStage();
-    if (lastStage == null) {
+    if (currentStage == null) {
       throw new RuntimeException("Illegal attempt to write an event when no stage has started");
     }
 
-    stages.get(stages.size() - 1).writeEvent(message);
-  }
-
-  private DaemonStage getLastStage() {
-    if (stages.isEmpty()) {
-      return null;
-    } else {
-      return stages.get(stages.size() - 1);
-    }
+    currentStage.writeEvent(message);
   }
 
   public enum State {
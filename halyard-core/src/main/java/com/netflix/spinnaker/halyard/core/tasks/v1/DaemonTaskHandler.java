@@ -1,5 +1,9 @@
 package com.netflix.spinnaker.halyard.core.tasks.v1;
 
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
 /**
  * Holds a thread-local task that can be logged to.
  */
@@ -22,15 +26,164 @@ public class DaemonTaskHandler {
     localTask.get().setContext(context);
   }
 
+  /**
+   * @return true iff the current thread is running work on behalf of another thread's task (see runDetached), in which
+   * case its context may be shared with other threads doing the same.
+   */
+  public static boolean isDetached() {
+    return getTask() instanceof DetachedTask;
+  }
+
   public static void newStage(String name) {
-    if (getTask() != null) {
-      getTask().newStage(name);
+    DaemonTask task = getTask();
+    if (task != null) {
+      synchronized (task) {
+        task.newStage(name);
+      }
     }
   }
 
   public static void log(String message) {
-    if (getTask() != null) {
-      getTask().writeEvent(message);
+    DaemonTask task = getTask();
+    if (task != null) {
+      synchronized (task) {
+        task.writeEvent(message);
+      }
+    }
+  }
+
+  /**
+   * @return a sink that logs to the current thread's task, and can be handed to other threads that report progress
+   * on its behalf. Messages are discarded if there is no current task.
+   */
+  public static Consumer<String> eventSink() {
+    DaemonTask task = getTask();
+    if (task == null) {
+      return m -> { };
+    }
+
+    return m -> {
+      synchronized (task) {
+        task.writeEvent(m);
+      }
+    };
+  }
+
+  /**
+   * Runs work on the calling thread on behalf of a task owned by some other thread.
+   *
+   * The work sees the supplied context rather than the owning task's, and anything it logs is collected into
+   * events instead of being written to the owning task, where concurrent writers would interleave. Pass the
+   * collected events to replay() from the owning thread to record them in a deterministic order.
+   *
+   * @param context is the context visible to the work, typically a private copy of the owning task's.
+   * @param events collects the messages logged by the work, even if it fails.
+   * @param work is what to run.
+   * @return the result of the work.
+   */
+  public static <T> T runDetached(Object context, List<String> events, Supplier<T> work) {
+    DaemonTask<Object, T> detached = new DetachedTask<>();
+    detached.setContext(context);
+    detached.newStage("detached");
+
+    try {
+      return runAs(detached, work);
+    } finally {
+      detached.getStages().forEach(s -> s.getEvents().forEach(e -> events.add(e.getMessage())));
+    }
+  }
+
+  /**
+   * Like runDetached, but hands each message the work logs to sink as soon as it's logged, rather than collecting it.
+   * The names of stages the work starts are passed on as messages too, since the sink typically writes to a single
+   * stage (see newConcurrentStage).
+   */
+  public static <T> T runDetached(Object context, Consumer<String> sink, Supplier<T> work) {
+    DaemonTask<Object, T> detached = new ForwardingTask<>(sink);
+    detached.setContext(context);
+    return runAs(detached, work);
+  }
+
+  private static <T> T runAs(DaemonTask task, Supplier<T> work) {
+    DaemonTask prior = getTask();
+    setTask(task);
+    try {
+      return work.get();
+    } finally {
+      setTask(prior);
+    }
+  }
+
+  /**
+   * Starts a stage for work that runs alongside the rest of the task, e.g. one of several services being rolled out
+   * at once. Unlike newStage, the current stage stays open and keeps receiving log(); the new stage is only written to
+   * through the returned sink, which can be used from any thread.
+   *
+   * @param name is the new stage's name.
+   * @return a sink that logs to the new stage, and finishes it once closed. Messages are discarded if there is no
+   * current task.
+   */
+  public static StageSink newConcurrentStage(String name) {
+    DaemonTask task = getTask();
+    if (task == null) {
+      return new StageSink(null, null);
+    }
+
+    synchronized (task) {
+      return new StageSink(task, task.addConcurrentStage(name));
+    }
+  }
+
+  public static void replay(List<String> events) {
+    events.forEach(DaemonTaskHandler::log);
+  }
+
+  public static class StageSink implements Consumer<String>, AutoCloseable {
+    private final DaemonTask task;
+    private final DaemonStage stage;
+
+    private StageSink(DaemonTask task, DaemonStage stage) {
+      this.task = task;
+      this.stage = stage;
+    }
+
+    @Override
+    public void accept(String message) {
+      if (task != null) {
+        synchronized (task) {
+          stage.writeEvent(message);
+        }
+      }
+    }
+
+    @Override
+    public void close() {
+      if (task != null) {
+        synchronized (task) {
+          stage.setState(DaemonStage.State.INACTIVE);
+        }
+      }
+    }
+  }
+
+  private static class DetachedTask<C, T> extends DaemonTask<C, T> {
+  }
+
+  private static class ForwardingTask<C, T> extends DetachedTask<C, T> {
+    private final Consumer<String> sink;
+
+    ForwardingTask(Consumer<String> sink) {
+      this.sink = sink;
+    }
+
+    @Override
+    void newStage(String name) {
+      sink.accept(name);
+    }
+
+    @Override
+    void writeEvent(String message) {
+      sink.accept(message);
     }
   }
 }
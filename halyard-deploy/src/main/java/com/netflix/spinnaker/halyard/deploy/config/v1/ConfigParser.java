@@ -22,6 +22,7 @@ import com.netflix.spinnaker.halyard.config.config.v1.AtomicFileWriter;
 import com.netflix.spinnaker.halyard.core.error.v1.HalException;
 import com.netflix.spinnaker.halyard.core.problem.v1.Problem;
 import com.netflix.spinnaker.halyard.core.problem.v1.ProblemBuilder;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.yaml.snakeyaml.Yaml;
@@ -30,10 +31,16 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
 import java.util.Map;
 
 @Component
+@Slf4j
 public class ConfigParser {
   @Autowired
   private Yaml yamlParser;
@@ -65,6 +72,83 @@ public class ConfigParser {
     }
   }
 
+  /**
+   * Like atomicWrite, but leaves the file (and its mtime) untouched when it already holds exactly these contents.
+   *
+   * The existing file's size is compared first, so only files that could plausibly be identical are hashed.
+   *
+   * @param path is the file to write.
+   * @param contents is what the file should contain.
+   * @return true iff the file was (re)written.
+   */
+  public boolean atomicWriteIfChanged(Path path, String contents) {
+    byte[] bytes = contents.getBytes(StandardCharsets.UTF_8);
+    if (contentsMatch(path, bytes)) {
+      return false;
+    }
+
+    atomicWrite(path, contents);
+    return true;
+  }
+
+  private boolean contentsMatch(Path path, byte[] bytes) {
+    try {
+      if (!Files.isRegularFile(path) || Files.size(path) != bytes.length) {
+        return false;
+      }
+
+      try (InputStream is = Files.newInputStream(path)) {
+        return Arrays.equals(digest(is), digest(bytes));
+      }
+    } catch (IOException e) {
+      log.warn("Unable to compare contents of " + path + ", rewriting it: " + e.getMessage());
+      return false;
+    }
+  }
+
+  public byte[] digest(byte[] bytes) {
+    MessageDigest digest = newDigest();
+    return digest.digest(bytes);
+  }
+
+  public byte[] digest(InputStream is) throws IOException {
+    MessageDigest digest = newDigest();
+    byte[] buffer = new byte[8192];
+    int read;
+    while ((read = is.read(buffer)) != -1) {
+      digest.update(buffer, 0, read);
+    }
+
+    return digest.digest();
+  }
+
+  public String hexDigest(String contents) {
+    return toHex(digest(contents.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  public String hexDigest(Path path) throws IOException {
+    try (InputStream is = Files.newInputStream(path)) {
+      return toHex(digest(is));
+    }
+  }
+
+  private static String toHex(byte[] bytes) {
+    StringBuilder result = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      result.append(String.format("%02x", b));
+    }
+
+    return result.toString();
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException("SHA-256 is not supported by this JVM", e);
+    }
+  }
+
   public <T> T read(Path path, Class<T> tClass) {
     try {
       InputStream is = new FileInputStream(path.toFile());
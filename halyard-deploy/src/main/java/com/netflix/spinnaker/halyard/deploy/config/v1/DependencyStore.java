@@ -0,0 +1,184 @@
+/*
+ * Copyright 2017 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.halyard.deploy.config.v1;
+
+import com.netflix.spinnaker.halyard.config.model.v1.node.Node;
+import com.netflix.spinnaker.halyard.core.error.v1.HalException;
+import com.netflix.spinnaker.halyard.core.problem.v1.ProblemBuilder;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static com.netflix.spinnaker.halyard.core.problem.v1.Problem.Severity.FATAL;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Stages the local files referenced by the halconfig (kubeconfigs, json keys, etc...) into the dependency directory
+ * shipped alongside the generated profiles.
+ *
+ * Staged files are named by the SHA-256 of their contents, so a file is only ever written once no matter how many
+ * times it's referenced or generated, and distinct files can't collide. A manifest keyed by the original path
+ * remembers each file's size and modification time, so unchanged files aren't even re-read on the next run.
+ *
+ * Staged files are always copies. A hard link would be cheaper, but an in-place edit of the original would then
+ * change a staged file's contents without changing its name.
+ */
+@Component
+@Slf4j
+public class DependencyStore {
+  private static final String MANIFEST_NAME = ".staging-manifest.yml";
+
+  @Autowired
+  String spinnakerOutputDependencyPath;
+
+  @Autowired
+  ConfigParser configParser;
+
+  /**
+   * Stages every local file referenced by the node and its children. The node itself is left untouched.
+   *
+   * @param node is the node to find required files in.
+   * @return a mapping from each file's path on this machine to its staged path.
+   */
+  public Map<String, String> stage(Node node) {
+    Map<String, String> result = new LinkedHashMap<>();
+    node.recursiveConsume(n -> n.localFiles().forEach(f -> {
+      try {
+        f.setAccessible(true);
+        String fPath = (String) f.get(n);
+        if (fPath != null) {
+          result.put(fPath, null);
+        }
+      } catch (IllegalAccessException e) {
+        throw new RuntimeException("Failed to get local files for node " + n.getNodeName(), e);
+      } finally {
+        f.setAccessible(false);
+      }
+    }));
+
+    if (result.isEmpty()) {
+      return result;
+    }
+
+    synchronized (this) {
+      Path manifestPath = Paths.get(spinnakerOutputDependencyPath, MANIFEST_NAME);
+      StagingManifest manifest = loadManifest(manifestPath);
+      boolean changed = false;
+      for (Map.Entry<String, String> entry : result.entrySet()) {
+        String original = entry.getKey();
+        StagedFile prior = manifest.getFiles().get(original);
+        StagedFile staged = stageFile(original, prior);
+        if (!staged.equals(prior)) {
+          manifest.getFiles().put(original, staged);
+          changed = true;
+        }
+
+        entry.setValue(staged.getStagedPath());
+      }
+
+      if (changed) {
+        configParser.atomicWrite(manifestPath, configParser.yamlToString(manifest));
+      }
+    }
+
+    return result;
+  }
+
+  private StagedFile stageFile(String original, StagedFile prior) {
+    File source = new File(original);
+    Path dependencyPath = Paths.get(spinnakerOutputDependencyPath);
+    if (dependencyPath.equals(source.toPath().toAbsolutePath().getParent())) {
+      // Don't stage paths that are already in the right folder
+      return new StagedFile().setStagedPath(original).setSize(source.length()).setLastModified(source.lastModified());
+    }
+
+    long size = source.length();
+    long lastModified = source.lastModified();
+    if (prior != null
+        && prior.getSize() == size
+        && prior.getLastModified() == lastModified
+        && new File(prior.getStagedPath()).length() == size) {
+      return prior;
+    }
+
+    try {
+      String digest = configParser.hexDigest(source.toPath());
+      Path target = dependencyPath.resolve(digest);
+      if (!target.toFile().isFile() || target.toFile().length() != size) {
+        writeStagedFile(source.toPath(), target);
+      }
+
+      return new StagedFile().setStagedPath(target.toString()).setSize(size).setLastModified(lastModified);
+    } catch (IOException e) {
+      throw new HalException(new ProblemBuilder(FATAL, "Failed to backup user file: " + e.getMessage()).build());
+    }
+  }
+
+  private void writeStagedFile(Path source, Path target) throws IOException {
+    Files.createDirectories(target.getParent());
+    Path tmp = target.resolveSibling("." + target.getFileName() + "." + UUID.randomUUID().toString() + ".tmp");
+    try {
+      Files.copy(source, tmp);
+      try {
+        Files.move(tmp, target, ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException | FileAlreadyExistsException e) {
+        Files.move(tmp, target, REPLACE_EXISTING);
+      }
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+
+  private StagingManifest loadManifest(Path manifestPath) {
+    if (!manifestPath.toFile().isFile()) {
+      return new StagingManifest();
+    }
+
+    try {
+      return configParser.read(manifestPath, StagingManifest.class);
+    } catch (HalException e) {
+      log.warn("Ignoring unreadable staging manifest " + manifestPath);
+      return new StagingManifest();
+    }
+  }
+
+  @Data
+  public static class StagingManifest {
+    private Map<String, StagedFile> files = new HashMap<>();
+  }
+
+  @Data
+  public static class StagedFile {
+    private String stagedPath;
+    private long size;
+    private long lastModified;
+  }
+}
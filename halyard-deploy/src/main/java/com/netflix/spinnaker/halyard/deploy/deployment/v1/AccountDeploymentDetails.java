@@ -20,11 +20,17 @@ import com.netflix.spinnaker.halyard.config.model.v1.node.Account;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
 @Data
-@EqualsAndHashCode(callSuper = true)
+@EqualsAndHashCode(callSuper = true, exclude = "preparedNamespaces")
 public class AccountDeploymentDetails<T extends Account> extends DeploymentDetails {
   T account;
 
+  // Namespaces already created or verified during this deployment, so they are only checked once.
+  final Set<String> preparedNamespaces = ConcurrentHashMap.newKeySet();
+
   public AccountDeploymentDetails(DeploymentDetails details) {
     super();
     setDeploymentConfiguration(details.getDeploymentConfiguration());
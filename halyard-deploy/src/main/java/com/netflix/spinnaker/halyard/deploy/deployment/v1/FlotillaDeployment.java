@@ -29,7 +29,7 @@ import com.netflix.spinnaker.halyard.deploy.spinnaker.v1.SpinnakerEndpoints;
 import com.netflix.spinnaker.halyard.deploy.spinnaker.v1.service.OrcaService;
 import com.netflix.spinnaker.halyard.deploy.spinnaker.v1.service.SpinnakerService;
 
-import java.util.concurrent.TimeUnit;
+import java.util.Arrays;
 
 abstract public class FlotillaDeployment<T extends Account> extends Deployment {
   public FlotillaDeployment(AccountDeploymentDetails<T> deploymentDetails, ProviderInterface<T> providerInterface) {
@@ -50,18 +50,6 @@ abstract public class FlotillaDeployment<T extends Account> extends Deployment {
   private ProviderInterface<T> providerInterface;
   private AccountDeploymentDetails<T> deploymentDetails;
 
-  private void waitForServiceUp(SpinnakerService service) {
-    DaemonTaskHandler.log("Waiting for " + service.getArtifact().getName() + " to appear healthy");
-    RunningServiceDetails details = getServiceDetails(service);
-    while (details.getHealthy() == 0) {
-      try {
-        Thread.sleep(TimeUnit.SECONDS.toMillis(10));
-      } catch (InterruptedException ignored) {
-      }
-      details = getServiceDetails(service);
-    }
-  }
-
   @Override
   public RemoteAction deploy(String spinnakerOutputPath) {
     SpinnakerEndpoints endpoints = getEndpoints();
@@ -69,24 +57,16 @@ abstract public class FlotillaDeployment<T extends Account> extends Deployment {
     DaemonTaskHandler.newStage("Deploying minimal Spinnaker installation for bootstrapping");
     providerInterface.bootstrapSpinnaker(deploymentDetails, services);
 
-    waitForServiceUp(services.getRedisBootstrap());
-    waitForServiceUp(services.getOrcaBootstrap());
-    waitForServiceUp(services.getClouddriverBootstrap());
+    providerInterface.waitForServicesHealthy(deploymentDetails, Arrays.asList(
+        services.getRedisBootstrap(),
+        services.getOrcaBootstrap(),
+        services.getClouddriverBootstrap()
+    ));
 
     DaemonTaskHandler.newStage("Deploying remainder of Spinnaker services");
     OrcaService.Orca orca = providerInterface.connectTo(deploymentDetails, services.getOrcaBootstrap());
     providerInterface.ensureServiceIsRunning(deploymentDetails, services.getRedis());
-    providerInterface.deployService(deploymentDetails, orca, endpoints, "clouddriver");
-    providerInterface.deployService(deploymentDetails, orca, endpoints, "deck");
-    providerInterface.deployService(deploymentDetails, orca, endpoints, "echo");
-    providerInterface.deployService(deploymentDetails, orca, endpoints, "front50");
-    providerInterface.deployService(deploymentDetails, orca, endpoints, "gate");
-    providerInterface.deployService(deploymentDetails, orca, endpoints, "igor");
-    providerInterface.deployService(deploymentDetails, orca, endpoints, "orca");
-    providerInterface.deployService(deploymentDetails, orca, endpoints, "rosco");
-    if (deploymentDetails.getDeploymentConfiguration().getSecurity().getAuthz().isEnabled()) {
-      providerInterface.deployService(deploymentDetails, orca, endpoints, "fiat");
-    }
+    providerInterface.deployServices(deploymentDetails, orca, endpoints, serviceDependencies());
 
     providerInterface.reapOrcaServerGroups(deploymentDetails, services.getOrca());
 
@@ -99,6 +79,29 @@ abstract public class FlotillaDeployment<T extends Account> extends Deployment {
     return result;
   }
 
+  /**
+   * @return which services need to be up before each service is deployed. Each deploy pipeline only succeeds once
+   * its server group is healthy, so a service's dependencies are serving by the time it starts.
+   */
+  private ServiceDependencyGraph serviceDependencies() {
+    ServiceDependencyGraph graph = new ServiceDependencyGraph()
+        .add("clouddriver")
+        .add("front50")
+        .add("rosco")
+        .add("echo", "front50")
+        .add("igor", "clouddriver", "echo")
+        .add("orca", "clouddriver", "front50", "echo")
+        .add("gate", "clouddriver", "front50", "orca")
+        .add("deck", "gate");
+
+    if (deploymentDetails.getDeploymentConfiguration().getSecurity().getAuthz().isEnabled()) {
+      graph.add("fiat", "clouddriver", "front50")
+          .add("gate", "fiat");
+    }
+
+    return graph;
+  }
+
   @Override
   public RunningServiceDetails getServiceDetails(SpinnakerService service) {
     RunningServiceDetails details = providerInterface.getRunningServiceDetails(deploymentDetails, service);
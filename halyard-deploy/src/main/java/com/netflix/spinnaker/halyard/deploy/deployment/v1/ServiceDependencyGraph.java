@@ -0,0 +1,190 @@
+/*
+ * Copyright 2017 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.halyard.deploy.deployment.v1;
+
+import com.netflix.spinnaker.halyard.core.error.v1.HalException;
+import com.netflix.spinnaker.halyard.core.problem.v1.Problem;
+import com.netflix.spinnaker.halyard.core.problem.v1.ProblemBuilder;
+import com.netflix.spinnaker.halyard.core.tasks.v1.DaemonTaskHandler;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Describes which Spinnaker services must be running before another can be rolled out, and rolls them out with as
+ * much concurrency as those dependencies (and a parallelism limit) allow.
+ *
+ * Each service is rolled out on a worker thread, detached from the current task. Everything it logs goes straight to
+ * a stage of the current task set aside for that service, so concurrent rollouts report progress as it happens without
+ * interleaving. Once a rollout fails no further services are started; those already running are allowed to finish,
+ * and the first failure is rethrown.
+ */
+@Slf4j
+public class ServiceDependencyGraph {
+  // service name -> names of the services it depends on, in the order services were added.
+  private final Map<String, Set<String>> dependencies = new LinkedHashMap<>();
+
+  /**
+   * Adds a service to the graph, or more dependencies to a service already in it. Dependencies on services that are
+   * never added to the graph (e.g. a disabled service) are ignored.
+   * @param name is the service's name.
+   * @param dependsOn are the services that must be rolled out first.
+   * @return this graph.
+   */
+  public ServiceDependencyGraph add(String name, String... dependsOn) {
+    dependencies.computeIfAbsent(name, n -> new LinkedHashSet<>()).addAll(Arrays.asList(dependsOn));
+    return this;
+  }
+
+  /**
+   * @return the services in an order that respects all dependencies.
+   */
+  public List<String> topologicalOrder() {
+    List<String> order = new ArrayList<>();
+    Set<String> remaining = new LinkedHashSet<>(dependencies.keySet());
+    while (!remaining.isEmpty()) {
+      List<String> ready = remaining.stream()
+          .filter(s -> order.containsAll(dependenciesOf(s)))
+          .collect(Collectors.toList());
+
+      if (ready.isEmpty()) {
+        throw new HalException(new ProblemBuilder(Problem.Severity.FATAL,
+            "Services " + remaining + " have cyclic dependencies on each other").build());
+      }
+
+      order.addAll(ready);
+      remaining.removeAll(ready);
+    }
+
+    return order;
+  }
+
+  /**
+   * Rolls out every service in the graph, starting each as soon as its dependencies are done.
+   * @param parallelism is the maximum number of services to roll out at once.
+   * @param context is the task context (i.e. the halconfig) the rollouts see. They only read it, so it is shared.
+   * @param rollout rolls out a single service by name, throwing if it fails.
+   */
+  public void run(int parallelism, Object context, Consumer<String> rollout) {
+    List<String> order = topologicalOrder();
+    if (order.isEmpty()) {
+      return;
+    }
+
+    parallelism = Math.max(1, Math.min(parallelism, order.size()));
+    ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+    BlockingQueue<Completion> completions = new LinkedBlockingQueue<>();
+    Set<String> done = new HashSet<>();
+    Set<String> running = new HashSet<>();
+    List<String> pending = new ArrayList<>(order);
+    RuntimeException failure = null;
+
+    try {
+      while (true) {
+        if (failure == null) {
+          Iterator<String> candidates = pending.iterator();
+          while (running.size() < parallelism && candidates.hasNext()) {
+            String service = candidates.next();
+            if (done.containsAll(dependenciesOf(service))) {
+              candidates.remove();
+              running.add(service);
+              DaemonTaskHandler.StageSink stage = DaemonTaskHandler.newConcurrentStage("Rolling out " + service);
+              executor.submit(() -> completions.add(rolloutDetached(service, context, stage, rollout)));
+            }
+          }
+        }
+
+        if (running.isEmpty()) {
+          break;
+        }
+
+        Completion completion = completions.take();
+        running.remove(completion.service);
+
+        if (completion.error != null) {
+          log.warn("Rollout of " + completion.service + " failed", completion.error);
+          if (failure == null) {
+            failure = completion.error;
+          }
+        } else {
+          done.add(completion.service);
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new HalException(new ProblemBuilder(Problem.Severity.FATAL, "Interrupted while rolling out services " + running).build());
+    } finally {
+      executor.shutdownNow();
+    }
+
+    if (failure != null) {
+      if (!pending.isEmpty()) {
+        DaemonTaskHandler.log("Skipped rolling out " + pending + " after an earlier failure");
+      }
+
+      throw failure;
+    }
+  }
+
+  private Set<String> dependenciesOf(String service) {
+    return dependencies.get(service)
+        .stream()
+        .filter(dependencies::containsKey)
+        .collect(Collectors.toSet());
+  }
+
+  private static Completion rolloutDetached(String service, Object context, DaemonTaskHandler.StageSink stage, Consumer<String> rollout) {
+    Completion completion = new Completion(service);
+    long start = System.currentTimeMillis();
+    try {
+      DaemonTaskHandler.runDetached(context, stage, () -> {
+        rollout.accept(service);
+        return null;
+      });
+    } catch (RuntimeException e) {
+      completion.error = e;
+    } catch (Throwable t) {
+      // Anything escaping here would leave run() waiting forever on this service.
+      completion.error = new RuntimeException(t);
+    }
+
+    long elapsedSeconds = (System.currentTimeMillis() - start) / 1000;
+    if (completion.error == null) {
+      stage.accept("Rolled out " + service + " in " + elapsedSeconds + "s");
+    } else {
+      stage.accept("Failed to roll out " + service + " after " + elapsedSeconds + "s");
+    }
+
+    stage.close();
+    return completion;
+  }
+
+  private static class Completion {
+    final String service;
+    RuntimeException error;
+
+    Completion(String service) {
+      this.service = service;
+    }
+  }
+}
@@ -18,7 +18,7 @@
 package com.netflix.spinnaker.halyard.deploy.provider.v1;
 
 import com.netflix.spinnaker.clouddriver.orchestration.AtomicOperations;
-import com.netflix.spinnaker.halyard.config.model.v1.node.DeploymentEnvironment.Size;
+import com.netflix.spinnaker.halyard.config.model.v1.node.DeploymentEnvironment;
 import com.netflix.spinnaker.halyard.config.model.v1.node.Provider;
 import com.netflix.spinnaker.halyard.deploy.spinnaker.v1.service.SpinnakerMonitoringDaemonService;
 import com.netflix.spinnaker.halyard.deploy.spinnaker.v1.service.SpinnakerService;
@@ -43,13 +43,13 @@ abstract public class OperationFactory {
       String monitoringArtifact,
       List<ConfigSource> configSources,
       boolean update,
-      Size size);
+      DeploymentEnvironment deploymentEnvironment);
   abstract public Map<String, Object> createDeployPipeline(String accountName,
       SpinnakerService service,
       String artifact,
       List<ConfigSource> configSources,
       boolean update,
-      Size size);
+      DeploymentEnvironment deploymentEnvironment);
   abstract public Map<String, Object> createUpsertPipeline(String accountName, SpinnakerService service);
 
   abstract protected Provider.ProviderType getProviderType();
@@ -17,6 +17,7 @@
 
 package com.netflix.spinnaker.halyard.deploy.provider.v1;
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.netflix.spinnaker.halyard.core.error.v1.HalException;
 import com.netflix.spinnaker.halyard.core.problem.v1.Problem;
@@ -26,11 +27,25 @@ import com.netflix.spinnaker.halyard.deploy.spinnaker.v1.service.OrcaService.Orc
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import retrofit.RetrofitError;
+import retrofit.client.Response;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
 
 @Component
@@ -38,24 +53,131 @@ class OrcaRunner {
   @Autowired
   private ObjectMapper objectMapper;
 
-  void monitorTask(Supplier<String> submitTask, Orca orca) {
-    final String id = getTaskEndpoint(submitTask);
+  @Value("${deploy.orca.minPollMillis:500}")
+  long minPollMillis = 500;
+
+  @Value("${deploy.orca.maxPollMillis:8000}")
+  long maxPollMillis = 8000;
+
+  @Value("${deploy.orca.pollThreads:4}")
+  int pollThreads = 4;
 
-    Supplier<Pipeline> getPipeline = () -> {
-      Map<String, Object> execution = orca.getRef(id);
-      return objectMapper.convertValue(execution, Task.class).getExecution();
-    };
-    monitor(getPipeline, orca);
+  // One thread decides which executions are due, and hands their polls to a small pool, so monitoring many
+  // executions at once costs a bounded number of threads, and one slow orca doesn't hold up the rest.
+  private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+    Thread thread = new Thread(r, "orca-monitor");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private final List<MonitoredExecution> executions = new CopyOnWriteArrayList<>();
+  private ScheduledFuture<?> ticker;
+  private ExecutorService pollers;
+
+  void monitorTask(Supplier<String> submitTask, Orca orca) {
+    await(watchTask(submitTask, orca));
   }
 
   void monitorPipeline(Supplier<String> submitPipeline, Orca orca) {
+    await(watchPipeline(submitPipeline, orca));
+  }
+
+  /**
+   * Submits a task, and monitors it in the background. Progress is logged to the calling thread's task.
+   * @return a future completed once the task succeeds, or completed exceptionally with a HalException if it fails.
+   */
+  CompletableFuture<Void> watchTask(Supplier<String> submitTask, Orca orca) {
+    final String id = getTaskEndpoint(submitTask);
+    return watch(() -> readExecution(orca, id, Task.class).getExecution());
+  }
+
+  /**
+   * Submits a pipeline, and monitors it in the background. Progress is logged to the calling thread's task.
+   * @return a future completed once the pipeline succeeds, or completed exceptionally with a HalException if it fails.
+   */
+  CompletableFuture<Void> watchPipeline(Supplier<String> submitPipeline, Orca orca) {
     final String id = getTaskEndpoint(submitPipeline);
+    return watch(() -> readExecution(orca, id, Pipeline.class));
+  }
+
+  private CompletableFuture<Void> watch(Supplier<Pipeline> getPipeline) {
+    MonitoredExecution execution = new MonitoredExecution(getPipeline, DaemonTaskHandler.eventSink());
+    executions.add(execution);
+    execution.result.whenComplete((r, e) -> {
+      executions.remove(execution);
+      stopPollingIfIdle();
+    });
+    startPolling();
+    return execution.result;
+  }
+
+  private synchronized void startPolling() {
+    if (pollers == null) {
+      ThreadPoolExecutor pool = new ThreadPoolExecutor(pollThreads, pollThreads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+        Thread thread = new Thread(r, "orca-poll");
+        thread.setDaemon(true);
+        return thread;
+      });
+      pool.allowCoreThreadTimeOut(true);
+      pollers = pool;
+    }
+
+    if (ticker == null) {
+      ticker = scheduler.scheduleWithFixedDelay(this::pollDueExecutions, 0, minPollMillis, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Stops ticking once nothing is left to monitor. A later watch starts it again.
+   */
+  private synchronized void stopPollingIfIdle() {
+    if (ticker != null && executions.isEmpty()) {
+      ticker.cancel(false);
+      ticker = null;
+    }
+  }
+
+  /**
+   * Hands every monitored execution whose backoff has elapsed, and that isn't already being polled, to the pollers.
+   */
+  private void pollDueExecutions() {
+    long now = System.currentTimeMillis();
+    for (MonitoredExecution execution : executions) {
+      if (!execution.result.isDone() && execution.nextPoll <= now && execution.polling.compareAndSet(false, true)) {
+        pollers.execute(() -> {
+          try {
+            execution.poll();
+          } finally {
+            execution.polling.set(false);
+          }
+        });
+      }
+    }
+  }
+
+  private static void await(CompletableFuture<Void> result) {
+    try {
+      result.get();
+    } catch (java.util.concurrent.ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
 
-    Supplier<Pipeline> getPipeline = () -> {
-      Map<String, Object> execution = orca.getRef(id);
-      return objectMapper.convertValue(execution, Pipeline.class);
-    };
-    monitor(getPipeline, orca);
+      throw new HalException(new ProblemBuilder(Problem.Severity.FATAL, "Failed to monitor task: " + e.getCause()).build());
+    } catch (InterruptedException e) {
+      result.cancel(true);
+      Thread.currentThread().interrupt();
+      throw new HalException(new ProblemBuilder(Problem.Severity.FATAL, "Interrupted while monitoring task").build());
+    }
+  }
+
+  private <T> T readExecution(Orca orca, String id, Class<T> type) {
+    Response response = orca.getRef(id);
+    try (InputStream body = response.getBody().in()) {
+      return objectMapper.readValue(body, type);
+    } catch (IOException e) {
+      throw new HalException(new ProblemBuilder(Problem.Severity.FATAL, "Failed to read execution " + id + ": " + e.getMessage()).build());
+    }
   }
 
   private String getTaskEndpoint(Supplier<String> submitter) {
@@ -115,49 +237,106 @@ class OrcaRunner {
     return new ProblemBuilder(Problem.Severity.FATAL, message.toString()).build();
   }
 
-  private void monitor(Supplier<Pipeline> getPipeline, Orca orca) {
-    String status;
-    Pipeline pipeline;
-    Set<String> loggedTasks = new HashSet<>();
-    try {
-      pipeline = getPipeline.get();
-      status = pipeline.getStatus();
-
-      while (status.equalsIgnoreCase("running") || status.equalsIgnoreCase("not_started")) {
-        logPipelineOutput(pipeline, loggedTasks);
-        try {
-          Thread.sleep(TimeUnit.SECONDS.toMillis(5));
-        } catch (InterruptedException ignored) {
-        }
-        pipeline = getPipeline.get();
-        status = pipeline.getStatus();
-      }
-    } catch (RetrofitError e) {
-      throw new HalException(new ProblemBuilder(Problem.Severity.FATAL, "Failed to monitor task: " + e.getMessage()).build());
+  /**
+   * An execution being monitored. Polls start out fast and back off (up to maxPollMillis) while nothing changes, e.g.
+   * during a long-running stage, and drop back to minPollMillis as soon as something does.
+   */
+  private class MonitoredExecution {
+    final Supplier<Pipeline> getPipeline;
+    final ExecutionLog executionLog;
+    final CompletableFuture<Void> result = new CompletableFuture<>();
+    final AtomicBoolean polling = new AtomicBoolean();
+    long pollMillis = minPollMillis;
+    volatile long nextPoll = 0;
+
+    MonitoredExecution(Supplier<Pipeline> getPipeline, Consumer<String> events) {
+      this.getPipeline = getPipeline;
+      this.executionLog = new ExecutionLog(events);
     }
 
-    logPipelineOutput(pipeline, loggedTasks);
+    void poll() {
+      Pipeline pipeline;
+      try {
+        pipeline = getPipeline.get();
+      } catch (RetrofitError e) {
+        result.completeExceptionally(new HalException(new ProblemBuilder(Problem.Severity.FATAL, "Failed to monitor task: " + e.getMessage()).build()));
+        return;
+      } catch (RuntimeException e) {
+        result.completeExceptionally(e);
+        return;
+      }
 
-    if (status.equalsIgnoreCase("terminal")) {
-      Problem problem = findExecutionError(pipeline);
-      throw new HalException(problem);
+      String status = pipeline.getStatus();
+      boolean changed = executionLog.update(pipeline);
+      if (status.equalsIgnoreCase("running") || status.equalsIgnoreCase("not_started")) {
+        pollMillis = changed ? minPollMillis : Math.min(pollMillis * 2, maxPollMillis);
+        nextPoll = System.currentTimeMillis() + pollMillis;
+      } else if (status.equalsIgnoreCase("terminal")) {
+        result.completeExceptionally(new HalException(findExecutionError(pipeline)));
+      } else {
+        result.complete(null);
+      }
     }
   }
 
-  private static void logPipelineOutput(Pipeline pipeline, Set<String> loggedTasks) {
-    List<Pipeline.Stage> stages = pipeline.getStages();
-    for (Pipeline.Stage stage : stages) {
-      String stageName = formatId(stage.type != null ? stage.type : stage.id);
-      for (Pipeline.Stage.Task task : stage.getTasks()) {
-        String taskName = formatId(task.name != null ? task.name : task.id);
-        String fullTaskId = stageName + ": " + taskName;
-        String taskStatus = task.getStatus();
-        if (!loggedTasks.contains(fullTaskId) &&
-            (taskStatus.equalsIgnoreCase("running") || taskStatus.equalsIgnoreCase("succeeded"))) {
-          DaemonTaskHandler.log(taskName);
-          loggedTasks.add(fullTaskId);
+  /**
+   * Logs each task of an execution once it is running or has succeeded. Tasks within a stage run in order, so all
+   * that's tracked per stage is how many of its tasks have been seen so far.
+   */
+  static class ExecutionLog {
+    // stage id -> number of leading tasks in that stage already seen.
+    private final Map<String, Integer> loggedTasks = new HashMap<>();
+    private final Consumer<String> events;
+    private String lastStatus;
+
+    ExecutionLog(Consumer<String> events) {
+      this.events = events;
+    }
+
+    /**
+     * @return true iff the execution progressed since the last update, i.e. its status changed or a task started.
+     */
+    boolean update(Pipeline pipeline) {
+      boolean changed = !pipeline.getStatus().equalsIgnoreCase(lastStatus == null ? "" : lastStatus);
+      lastStatus = pipeline.getStatus();
+
+      List<Pipeline.Stage> stages = pipeline.getStages() == null ? Collections.emptyList() : pipeline.getStages();
+      for (int i = 0; i < stages.size(); i++) {
+        Pipeline.Stage stage = stages.get(i);
+        List<Pipeline.Stage.Task> tasks = stage.getTasks() == null ? Collections.emptyList() : stage.getTasks();
+        String stageKey = stage.id != null ? stage.id : String.valueOf(i);
+        int logged = loggedTasks.getOrDefault(stageKey, 0);
+        if (logged == tasks.size()) {
+          continue;
+        }
+
+        while (logged < tasks.size() && hasStarted(tasks.get(logged))) {
+          Pipeline.Stage.Task task = tasks.get(logged);
+          if (isLogged(task)) {
+            events.accept(formatId(task.name != null ? task.name : task.id));
+          }
+          logged++;
+          changed = true;
         }
+
+        loggedTasks.put(stageKey, logged);
       }
+
+      return changed;
+    }
+
+    private static boolean hasStarted(Pipeline.Stage.Task task) {
+      String status = task.getStatus();
+      return status != null && !status.equalsIgnoreCase("not_started");
+    }
+
+    /**
+     * Only tasks that ran, or are running, are worth logging. Skipped, stopped or failed tasks are stepped over
+     * silently (a failure is reported by the execution's error instead), so they don't hold back the tasks after them.
+     */
+    private static boolean isLogged(Pipeline.Stage.Task task) {
+      String status = task.getStatus();
+      return status.equalsIgnoreCase("running") || status.equalsIgnoreCase("succeeded");
     }
   }
 
@@ -217,6 +396,7 @@ class OrcaRunner {
   }
 
   @Data
+  @JsonIgnoreProperties(ignoreUnknown = true)
   static class HasContext {
     Context context;
   }
@@ -266,16 +446,19 @@ class OrcaRunner {
   }
 
   @Data
+  @JsonIgnoreProperties(ignoreUnknown = true)
   static class Context {
     ExecutionException exception;
   }
 
   @Data
+  @JsonIgnoreProperties(ignoreUnknown = true)
   static class ExecutionException {
     String operation;
     Details details;
 
     @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
     static class Details {
       String error;
       List<String> errors;
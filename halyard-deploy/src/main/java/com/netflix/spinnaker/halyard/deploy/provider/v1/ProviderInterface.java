@@ -16,11 +16,16 @@
 
 package com.netflix.spinnaker.halyard.deploy.provider.v1;
 
+import com.netflix.spinnaker.halyard.config.config.v1.HalconfigParser;
 import com.netflix.spinnaker.halyard.config.model.v1.node.Account;
 import com.netflix.spinnaker.halyard.config.model.v1.node.Provider.ProviderType;
+import com.netflix.spinnaker.halyard.core.error.v1.HalException;
 import com.netflix.spinnaker.halyard.core.job.v1.JobExecutor;
+import com.netflix.spinnaker.halyard.core.problem.v1.Problem;
+import com.netflix.spinnaker.halyard.core.problem.v1.ProblemBuilder;
 import com.netflix.spinnaker.halyard.core.tasks.v1.DaemonTaskHandler;
 import com.netflix.spinnaker.halyard.deploy.deployment.v1.AccountDeploymentDetails;
+import com.netflix.spinnaker.halyard.deploy.deployment.v1.ServiceDependencyGraph;
 import com.netflix.spinnaker.halyard.deploy.spinnaker.v1.RunningServiceDetails;
 import com.netflix.spinnaker.halyard.deploy.spinnaker.v1.SpinnakerArtifact;
 import com.netflix.spinnaker.halyard.deploy.spinnaker.v1.SpinnakerEndpoints;
@@ -35,8 +40,16 @@ import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Supplier;
 
 /**
@@ -48,9 +61,27 @@ public abstract class ProviderInterface<T extends Account> {
   @Value("${deploy.maxRemainingServerGroups:2}")
   protected Integer MAX_REMAINING_SERVER_GROUPS;
 
+  @Value("${deploy.serviceParallelism:4}")
+  protected Integer SERVICE_PARALLELISM;
+
+  @Value("${deploy.serviceHealthyTimeoutMinutes:10}")
+  protected Integer SERVICE_HEALTHY_TIMEOUT_MINUTES;
+
+  @Value("${deploy.serviceHealthyPollSeconds:10}")
+  protected Integer SERVICE_HEALTHY_POLL_SECONDS;
+
+  private static final ScheduledExecutorService healthPoller = Executors.newSingleThreadScheduledExecutor(r -> {
+    Thread thread = new Thread(r, "service-health-poller");
+    thread.setDaemon(true);
+    return thread;
+  });
+
   @Autowired
   protected JobExecutor jobExecutor;
 
+  @Autowired
+  protected HalconfigParser halconfigParser;
+
   @Autowired
   protected ServiceInterfaceFactory serviceInterfaceFactory;
 
@@ -98,6 +129,74 @@ public abstract class ProviderInterface<T extends Account> {
 
   abstract protected String getServerGroupFromInstanceId(AccountDeploymentDetails<T> details, SpinnakerService service, String instanceId);
 
+  /**
+   * @param details are the deployment details for the current deployment.
+   * @param service is the service to watch.
+   * @return a future completed as soon as at least one instance of the service is healthy. Cancelling it stops
+   * watching the service. By default this polls getRunningServiceDetails, providers that can be notified of changes
+   * should override it.
+   */
+  public CompletableFuture<Void> serviceHealthy(AccountDeploymentDetails<T> details, SpinnakerService service) {
+    CompletableFuture<Void> result = new CompletableFuture<>();
+    ScheduledFuture<?> poll = healthPoller.scheduleWithFixedDelay(() -> {
+      try {
+        if (getRunningServiceDetails(details, service).getHealthy() > 0) {
+          result.complete(null);
+        }
+      } catch (Exception e) {
+        result.completeExceptionally(e);
+      }
+    }, 0, SERVICE_HEALTHY_POLL_SECONDS, TimeUnit.SECONDS);
+
+    result.whenComplete((r, e) -> poll.cancel(false));
+    return result;
+  }
+
+  /**
+   * Blocks until every one of the given services has a healthy instance. All services are watched at once, and share
+   * a single deadline of deploy.serviceHealthyTimeoutMinutes.
+   * @param details are the deployment details for the current deployment.
+   * @param services are the services to wait on.
+   */
+  public void waitForServicesHealthy(AccountDeploymentDetails<T> details, List<SpinnakerService> services) {
+    long deadline = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(SERVICE_HEALTHY_TIMEOUT_MINUTES);
+    Map<SpinnakerService, CompletableFuture<Void>> healthy = new LinkedHashMap<>();
+    try {
+      services.forEach(s -> healthy.put(s, serviceHealthy(details, s)));
+      for (Map.Entry<SpinnakerService, CompletableFuture<Void>> entry : healthy.entrySet()) {
+        String artifactName = entry.getKey().getArtifact().getName();
+        DaemonTaskHandler.log("Waiting for " + artifactName + " to appear healthy");
+        awaitDeadline(entry.getValue(), deadline, artifactName + " to appear healthy");
+      }
+    } finally {
+      healthy.values().forEach(f -> f.cancel(true));
+    }
+  }
+
+  /**
+   * @param future is the future to wait on.
+   * @param deadline is the wall-clock time (in millis) after which to give up.
+   * @param description describes what is being waited on, e.g. "redis to appear healthy".
+   * @return the future's value.
+   */
+  protected static <R> R awaitDeadline(CompletableFuture<R> future, long deadline, String description) {
+    try {
+      return future.get(Math.max(deadline - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      throw new HalException(new ProblemBuilder(Problem.Severity.FATAL, "Timed out waiting for " + description).build());
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof HalException) {
+        throw (HalException) e.getCause();
+      }
+
+      throw new HalException(new ProblemBuilder(Problem.Severity.FATAL,
+          "Failed waiting for " + description + ": " + e.getCause().getMessage()).build());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new HalException(new ProblemBuilder(Problem.Severity.FATAL, "Interrupted waiting for " + description).build());
+    }
+  }
+
   /**
    * Deploy a service using Orca's orchestration engine.
    * @param details are the deployment details for the current deployment.
@@ -126,6 +225,18 @@ public abstract class ProviderInterface<T extends Account> {
     orcaRunner.monitorPipeline(idSupplier, orca);
   }
 
+  /**
+   * Deploy every service in a dependency graph, rolling out services that don't depend on each other concurrently.
+   * At most deploy.serviceParallelism services are deployed at once.
+   * @param details are the deployment details for the current deployment.
+   * @param orca is the instance of orca used to orchestrate the deployment.
+   * @param endpoints are the endpoints spinnaker is conforming to.
+   * @param services are the services being deployed, and the order they need to come up in.
+   */
+  public void deployServices(AccountDeploymentDetails<T> details, Orca orca, SpinnakerEndpoints endpoints, ServiceDependencyGraph services) {
+    services.run(SERVICE_PARALLELISM, halconfigParser.getHalconfig(), name -> deployService(details, orca, endpoints, name));
+  }
+
   public void reapOrcaServerGroups(AccountDeploymentDetails<T> details, OrcaService orcaService) {
     Orca orca = connectTo(details, orcaService);
     Map<String, Orca.ActiveExecutions> executions = orca.getActiveExecutions();
@@ -17,18 +17,236 @@
 
 package com.netflix.spinnaker.halyard.deploy.provider.v1;
 
+import com.netflix.spinnaker.halyard.config.model.v1.node.DeploymentEnvironment;
+import com.netflix.spinnaker.halyard.config.model.v1.node.DeploymentEnvironment.CustomSizing;
 import com.netflix.spinnaker.halyard.config.model.v1.node.DeploymentEnvironment.Size;
+import com.netflix.spinnaker.halyard.core.error.v1.HalException;
+import com.netflix.spinnaker.halyard.core.problem.v1.Problem;
+import com.netflix.spinnaker.halyard.core.problem.v1.ProblemBuilder;
+import com.netflix.spinnaker.halyard.deploy.spinnaker.v1.SpinnakerArtifact;
 import com.netflix.spinnaker.halyard.deploy.spinnaker.v1.service.SpinnakerService;
 import lombok.Data;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
 public abstract class SizingTranslation {
-  public abstract ServiceSize getServiceSize(Size size, SpinnakerService service);
+  // Share of a JVM service's memory limit given to the heap. The rest is left for metaspace, threads & direct buffers.
+  private static final double HEAP_FRACTION = 0.75;
+
+  private static final Pattern QUANTITY = Pattern.compile("^([0-9]+(?:\\.[0-9]+)?)([KMGT]i?)?$");
+  private static final Pattern CPU_QUANTITY = Pattern.compile("^([0-9]+(?:\\.[0-9]+)?)(m)?$");
+
+  /**
+   * @return the provider's default resources for a service in a deployment of the given size.
+   */
+  protected abstract ServiceSize getDefaultServiceSize(Size size, SpinnakerService service);
+
+  /**
+   * @return the resources to deploy a service with: the defaults for the deployment's size, with any of the service's
+   * custom sizing applied on top.
+   */
+  public ServiceSize getServiceSize(DeploymentEnvironment deploymentEnvironment, SpinnakerService service) {
+    ServiceSize size = getDefaultServiceSize(deploymentEnvironment.getSize(), service);
+    CustomSizing custom = deploymentEnvironment.getCustomSizing().get(service.getArtifact().getName());
+    if (custom == null) {
+      return size;
+    }
+
+    CustomSizing.Resources requests = custom.getRequests();
+    if (requests != null) {
+      size.setCpu(orDefault(requests.getCpu(), size.getCpu()));
+      size.setRam(orDefault(requests.getMemory(), size.getRam()));
+    }
+
+    CustomSizing.Resources limits = custom.getLimits();
+    if (limits != null) {
+      size.setCpuLimit(orDefault(limits.getCpu(), size.getCpuLimit()));
+      size.setRamLimit(orDefault(limits.getMemory(), size.getRamLimit()));
+    }
+
+    String name = service.getArtifact().getName();
+    validateRequestsWithinLimits(name, size);
+
+    CustomSizing.Autoscaling autoscaling = custom.getAutoscaling();
+    Integer replicas = custom.getReplicas();
+    if (autoscaling != null) {
+      validateAutoscaling(name, autoscaling);
+      if (replicas == null) {
+        replicas = autoscaling.getMinReplicas();
+      }
+
+      replicas = Math.max(autoscaling.getMinReplicas(), Math.min(autoscaling.getMaxReplicas(), replicas));
+    }
+
+    if (replicas == null) {
+      replicas = size.getReplicas();
+    } else if (replicas < 1) {
+      throw new HalException(new ProblemBuilder(Problem.Severity.FATAL,
+          "Service \"" + name + "\" must run at least one replica, not " + replicas + ".").build());
+    }
+
+    boolean scaled = replicas > 1 || (autoscaling != null && autoscaling.getMaxReplicas() > 1);
+    if (scaled && !isReplicable(service.getArtifact())) {
+      throw new HalException(new ProblemBuilder(Problem.Severity.FATAL,
+          "Service \"" + name + "\" can only run a single replica.").build());
+    }
+
+    size.setReplicas(replicas);
+    size.setAutoscaling(autoscaling);
+    return size;
+  }
+
+  // A pod requesting more than its limit is rejected by the provider, so catch it before anything is deployed.
+  private static void validateRequestsWithinLimits(String name, ServiceSize size) {
+    if (size.getCpu() != null && size.getCpuLimit() != null && toMillicores(size.getCpu()) > toMillicores(size.getCpuLimit())) {
+      throw new HalException(new ProblemBuilder(Problem.Severity.FATAL,
+          "Service \"" + name + "\" requests " + size.getCpu() + " cpu, more than its limit of " + size.getCpuLimit() + ".")
+          .setRemediation("Raise the service's cpu limit along with its request.").build());
+    }
+
+    if (size.getRam() != null && size.getRamLimit() != null && toMebibytes(size.getRam()) > toMebibytes(size.getRamLimit())) {
+      throw new HalException(new ProblemBuilder(Problem.Severity.FATAL,
+          "Service \"" + name + "\" requests " + size.getRam() + " of memory, more than its limit of " + size.getRamLimit() + ".")
+          .setRemediation("Raise the service's memory limit along with its request.").build());
+    }
+  }
+
+  private static void validateAutoscaling(String name, CustomSizing.Autoscaling autoscaling) {
+    Integer min = autoscaling.getMinReplicas();
+    Integer max = autoscaling.getMaxReplicas();
+    if (min == null || max == null || min < 1 || max < min) {
+      throw new HalException(new ProblemBuilder(Problem.Severity.FATAL,
+          "Autoscaling for service \"" + name + "\" needs 1 <= minReplicas <= maxReplicas, not " + min + " & " + max + ".").build());
+    }
+
+    Integer target = autoscaling.getTargetCpuUtilization();
+    if (target == null || target < 1 || target > 100) {
+      throw new HalException(new ProblemBuilder(Problem.Severity.FATAL,
+          "Autoscaling for service \"" + name + "\" needs a targetCpuUtilization between 1 and 100, not " + target + ".").build());
+    }
+  }
+
+  // Redis runs as a single unclustered instance, so extra replicas would each hold their own copy of the cache.
+  private static boolean isReplicable(SpinnakerArtifact artifact) {
+    return artifact != SpinnakerArtifact.REDIS;
+  }
+
+  /**
+   * @return the JVM flags to run a service of this size with, sizing the heap to fit within its memory limit. Empty
+   * for services that don't run on the JVM.
+   */
+  public List<String> getJvmOptions(SpinnakerService service, ServiceSize size) {
+    List<String> result = new ArrayList<>();
+    if (!runsOnJvm(service.getArtifact()) || size.getRamLimit() == null) {
+      return result;
+    }
+
+    long heapMi = (long) (toMebibytes(size.getRamLimit()) * HEAP_FRACTION);
+    result.add("-Xms" + heapMi + "m");
+    result.add("-Xmx" + heapMi + "m");
+    result.add("-XX:+UseG1GC");
+    return result;
+  }
+
+  private static boolean runsOnJvm(SpinnakerArtifact artifact) {
+    switch (artifact) {
+      case CLOUDDRIVER:
+      case ECHO:
+      case FIAT:
+      case FRONT50:
+      case GATE:
+      case IGOR:
+      case ORCA:
+      case ROSCO:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * @param quantity is a memory quantity, either in bytes or with a decimal (K, M, ...) or binary (Ki, Mi, ...) suffix.
+   * @return the quantity in mebibytes.
+   */
+  static long toMebibytes(String quantity) {
+    Matcher matcher = QUANTITY.matcher(quantity.trim());
+    if (!matcher.matches()) {
+      throw new HalException(new ProblemBuilder(Problem.Severity.FATAL,
+          "Memory quantity \"" + quantity + "\" is not in a recognized format, e.g. \"2Gi\" or \"512Mi\"").build());
+    }
+
+    double value = Double.parseDouble(matcher.group(1));
+    String suffix = matcher.group(2) == null ? "" : matcher.group(2);
+    double bytes;
+    switch (suffix) {
+      case "":
+        bytes = value;
+        break;
+      case "K":
+        bytes = value * 1e3;
+        break;
+      case "M":
+        bytes = value * 1e6;
+        break;
+      case "G":
+        bytes = value * 1e9;
+        break;
+      case "T":
+        bytes = value * 1e12;
+        break;
+      case "Ki":
+        bytes = value * (1L << 10);
+        break;
+      case "Mi":
+        bytes = value * (1L << 20);
+        break;
+      case "Gi":
+        bytes = value * (1L << 30);
+        break;
+      case "Ti":
+        bytes = value * (1L << 40);
+        break;
+      default:
+        throw new IllegalStateException("Unhandled quantity suffix " + suffix);
+    }
+
+    return (long) (bytes / (1L << 20));
+  }
+
+  /**
+   * @param quantity is a cpu quantity, either in cores or with an "m" (millicore) suffix.
+   * @return the quantity in millicores.
+   */
+  static long toMillicores(String quantity) {
+    Matcher matcher = CPU_QUANTITY.matcher(quantity.trim());
+    if (!matcher.matches()) {
+      throw new HalException(new ProblemBuilder(Problem.Severity.FATAL,
+          "Cpu quantity \"" + quantity + "\" is not in a recognized format, e.g. \"2\" or \"500m\"").build());
+    }
+
+    double value = Double.parseDouble(matcher.group(1));
+    return matcher.group(2) == null ? (long) (value * 1000) : (long) value;
+  }
+
+  private static String orDefault(String value, String defaultValue) {
+    return value == null || value.isEmpty() ? defaultValue : value;
+  }
 
   @Data
   public static class ServiceSize {
+    // Requested resources.
     String cpu;
     String ram;
+    // Resource limits.
+    String cpuLimit;
+    String ramLimit;
     // A cloud-provider specific sizing ID;
     String id;
+    // How many instances to run. When autoscaling is set, this is the initial count.
+    int replicas = 1;
+    CustomSizing.Autoscaling autoscaling;
   }
 }
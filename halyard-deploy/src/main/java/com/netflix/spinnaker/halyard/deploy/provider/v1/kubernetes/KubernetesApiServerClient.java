@@ -0,0 +1,127 @@
+/*
+ * Copyright 2017 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.netflix.spinnaker.halyard.deploy.provider.v1.kubernetes;
+
+import okhttp3.Headers;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import okio.BufferedSink;
+import retrofit.client.Client;
+import retrofit.client.Header;
+import retrofit.client.Request;
+import retrofit.client.Response;
+import retrofit.mime.TypedInput;
+import retrofit.mime.TypedOutput;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A retrofit client that sends requests through the http client of a (pooled) kubernetes client, so requests to a
+ * service behind the apiserver's service proxy carry the same credentials, TLS configuration & connection pool as
+ * the rest of the calls made against that cluster.
+ */
+class KubernetesApiServerClient implements Client {
+  private final OkHttpClient httpClient;
+
+  KubernetesApiServerClient(OkHttpClient httpClient) {
+    this.httpClient = httpClient;
+  }
+
+  @Override
+  public Response execute(Request request) throws IOException {
+    okhttp3.Request.Builder builder = new okhttp3.Request.Builder()
+        .url(request.getUrl())
+        .method(request.getMethod(), requestBody(request.getMethod(), request.getBody()));
+
+    for (Header header : request.getHeaders()) {
+      builder.addHeader(header.getName(), header.getValue() == null ? "" : header.getValue());
+    }
+
+    okhttp3.Response response = httpClient.newCall(builder.build()).execute();
+    return new Response(response.request().url().toString(),
+        response.code(),
+        response.message(),
+        headers(response.headers()),
+        responseBody(response.body()));
+  }
+
+  private static RequestBody requestBody(String method, TypedOutput body) {
+    if (body == null) {
+      // okhttp requires a body on these methods, even an empty one.
+      boolean requiresBody = method.equals("POST") || method.equals("PUT") || method.equals("PATCH");
+      return requiresBody ? RequestBody.create(null, new byte[0]) : null;
+    }
+
+    MediaType mediaType = MediaType.parse(body.mimeType());
+    return new RequestBody() {
+      @Override
+      public MediaType contentType() {
+        return mediaType;
+      }
+
+      @Override
+      public long contentLength() {
+        return body.length();
+      }
+
+      @Override
+      public void writeTo(BufferedSink sink) throws IOException {
+        body.writeTo(sink.outputStream());
+      }
+    };
+  }
+
+  private static List<Header> headers(Headers headers) {
+    List<Header> result = new ArrayList<>(headers.size());
+    for (int i = 0; i < headers.size(); i++) {
+      result.add(new Header(headers.name(i), headers.value(i)));
+    }
+
+    return result;
+  }
+
+  private static TypedInput responseBody(ResponseBody body) {
+    if (body.contentLength() == 0) {
+      body.close();
+      return null;
+    }
+
+    return new TypedInput() {
+      @Override
+      public String mimeType() {
+        MediaType mediaType = body.contentType();
+        return mediaType == null ? null : mediaType.toString();
+      }
+
+      @Override
+      public long length() {
+        return body.contentLength();
+      }
+
+      @Override
+      public InputStream in() throws IOException {
+        return body.byteStream();
+      }
+    };
+  }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2017 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.netflix.spinnaker.halyard.deploy.provider.v1.kubernetes;
+
+import com.netflix.spinnaker.clouddriver.kubernetes.security.KubernetesConfigParser;
+import com.netflix.spinnaker.halyard.config.model.v1.providers.kubernetes.KubernetesAccount;
+import io.fabric8.kubernetes.client.Config;
+import io.fabric8.kubernetes.client.DefaultKubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hands out one kubernetes client per distinct account configuration, rather than building a new client (and with it
+ * a new http connection pool) for every call against the cluster.
+ *
+ * Clients are keyed by the kubeconfig file's path and modification time along with the context, cluster & user the
+ * account selects, so editing the kubeconfig (e.g. refreshing credentials) transparently produces a fresh client.
+ * Clients that are replaced this way, or that fall out of the pool because too many accounts are in use, are closed
+ * once they've been out of the pool long enough that no caller can still be using them, since callers don't return
+ * clients and may hold one for the length of a deploy (e.g. while watching pods become ready).
+ */
+@Component
+@Slf4j
+public class KubernetesClientPool implements DisposableBean {
+  @Value("${deploy.kubernetes.maxCachedClients:8}")
+  int maxCachedClients = 8;
+
+  // Outlasts the longest a deploy waits on the cluster (deploy.serviceHealthyTimeoutMinutes).
+  @Value("${deploy.kubernetes.evictedClientCloseDelaySeconds:900}")
+  long evictedClientCloseDelaySeconds = 900;
+
+  // Access-ordered, so iteration starts at the least recently used client.
+  private final Map<ClientKey, KubernetesClient> clients = new LinkedHashMap<>(16, 0.75f, true);
+
+  // Evicted clients that haven't been closed yet, so they can be closed right away on shutdown.
+  private final Set<KubernetesClient> closing = new HashSet<>();
+
+  private final ScheduledExecutorService closer = Executors.newSingleThreadScheduledExecutor(r -> {
+    Thread thread = new Thread(r, "kubernetes-client-closer");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  public KubernetesClient getClient(KubernetesAccount account) {
+    ClientKey key = ClientKey.forAccount(account);
+    synchronized (clients) {
+      KubernetesClient client = clients.get(key);
+      if (client != null) {
+        return client;
+      }
+    }
+
+    // Parsing the kubeconfig and setting up the client can be slow, so other accounts aren't blocked on it.
+    KubernetesClient built = buildClient(account);
+    List<KubernetesClient> evicted = new ArrayList<>();
+    KubernetesClient client;
+
+    synchronized (clients) {
+      client = clients.get(key);
+      if (client == null) {
+        Iterator<Map.Entry<ClientKey, KubernetesClient>> entries = clients.entrySet().iterator();
+        while (entries.hasNext()) {
+          Map.Entry<ClientKey, KubernetesClient> entry = entries.next();
+          if (entry.getKey().isSupersededBy(key)) {
+            log.info("Kubeconfig " + key.getKubeconfigPath() + " changed, discarding its cached client");
+            evicted.add(entry.getValue());
+            entries.remove();
+          }
+        }
+
+        client = built;
+        clients.put(key, client);
+
+        entries = clients.entrySet().iterator();
+        while (clients.size() > Math.max(maxCachedClients, 1) && entries.hasNext()) {
+          evicted.add(entries.next().getValue());
+          entries.remove();
+        }
+      }
+    }
+
+    if (client != built) {
+      // Another caller built a client for the same account first; ours was never handed out.
+      closeClient(built);
+    }
+
+    evicted.forEach(this::closeLater);
+    return client;
+  }
+
+  protected KubernetesClient buildClient(KubernetesAccount account) {
+    Config config = KubernetesConfigParser.parse(account.getKubeconfigFile(),
+        account.getContext(),
+        account.getCluster(),
+        account.getUser(),
+        account.getNamespaces(),
+        false);
+
+    return new DefaultKubernetesClient(config);
+  }
+
+  int size() {
+    synchronized (clients) {
+      return clients.size();
+    }
+  }
+
+  @Override
+  public void destroy() {
+    closer.shutdownNow();
+
+    List<KubernetesClient> all;
+    synchronized (clients) {
+      all = new ArrayList<>(clients.values());
+      all.addAll(closing);
+      clients.clear();
+      closing.clear();
+    }
+
+    all.forEach(this::closeClient);
+  }
+
+  private void closeLater(KubernetesClient client) {
+    if (evictedClientCloseDelaySeconds <= 0) {
+      closeClient(client);
+      return;
+    }
+
+    synchronized (clients) {
+      closing.add(client);
+    }
+
+    try {
+      closer.schedule(() -> {
+        boolean pending;
+        synchronized (clients) {
+          pending = closing.remove(client);
+        }
+
+        if (pending) {
+          closeClient(client);
+        }
+      }, evictedClientCloseDelaySeconds, TimeUnit.SECONDS);
+    } catch (RejectedExecutionException e) {
+      // Already shut down, so nothing will be using the client.
+      synchronized (clients) {
+        closing.remove(client);
+      }
+
+      closeClient(client);
+    }
+  }
+
+  private void closeClient(KubernetesClient client) {
+    try {
+      client.close();
+    } catch (Exception e) {
+      log.warn("Failed to close kubernetes client", e);
+    }
+  }
+
+  @Data
+  static class ClientKey {
+    final String kubeconfigPath;
+    final long kubeconfigModified;
+    final String context;
+    final String cluster;
+    final String user;
+    final List<String> namespaces;
+
+    static ClientKey forAccount(KubernetesAccount account) {
+      File kubeconfig = new File(account.getKubeconfigFile()).getAbsoluteFile();
+      return new ClientKey(kubeconfig.getPath(),
+          kubeconfig.lastModified(),
+          account.getContext(),
+          account.getCluster(),
+          account.getUser(),
+          account.getNamespaces() == null ? new ArrayList<>() : new ArrayList<>(account.getNamespaces()));
+    }
+
+    /**
+     * @return true iff this key describes the same account configuration as other, but an older kubeconfig.
+     */
+    boolean isSupersededBy(ClientKey other) {
+      return kubeconfigPath.equals(other.kubeconfigPath)
+          && kubeconfigModified != other.kubeconfigModified
+          && Objects.equals(context, other.context)
+          && Objects.equals(cluster, other.cluster)
+          && Objects.equals(user, other.user)
+          && namespaces.equals(other.namespaces);
+    }
+  }
+}
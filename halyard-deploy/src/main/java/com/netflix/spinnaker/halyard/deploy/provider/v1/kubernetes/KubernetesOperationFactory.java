@@ -24,12 +24,13 @@ import com.netflix.spinnaker.clouddriver.kubernetes.deploy.KubernetesUtil;
 import com.netflix.spinnaker.clouddriver.kubernetes.deploy.description.loadbalancer.KubernetesLoadBalancerDescription;
 import com.netflix.spinnaker.clouddriver.kubernetes.deploy.description.loadbalancer.KubernetesNamedServicePort;
 import com.netflix.spinnaker.clouddriver.kubernetes.deploy.description.servergroup.*;
-import com.netflix.spinnaker.halyard.config.model.v1.node.DeploymentEnvironment.Size;
+import com.netflix.spinnaker.halyard.config.model.v1.node.DeploymentEnvironment;
 import com.netflix.spinnaker.halyard.config.model.v1.node.Provider;
 import com.netflix.spinnaker.halyard.core.error.v1.HalException;
 import com.netflix.spinnaker.halyard.core.problem.v1.Problem;
 import com.netflix.spinnaker.halyard.core.problem.v1.ProblemBuilder;
 import com.netflix.spinnaker.halyard.deploy.provider.v1.OperationFactory;
+import com.netflix.spinnaker.halyard.deploy.provider.v1.SizingTranslation;
 import com.netflix.spinnaker.halyard.deploy.spinnaker.v1.SpinnakerArtifact;
 import com.netflix.spinnaker.halyard.deploy.spinnaker.v1.service.SpinnakerMonitoringDaemonService;
 import com.netflix.spinnaker.halyard.deploy.spinnaker.v1.service.SpinnakerPublicService;
@@ -99,7 +100,7 @@ public class KubernetesOperationFactory extends OperationFactory {
     return description;
   }
 
-  private DeployKubernetesAtomicOperationDescription baseDeployDescription(String accountName, SpinnakerService service, String artifact, List<ConfigSource> configSources, Size size) {
+  private DeployKubernetesAtomicOperationDescription baseDeployDescription(String accountName, SpinnakerService service, String artifact, List<ConfigSource> configSources, DeploymentEnvironment deploymentEnvironment) {
     String address = service.getAddress();
     DeployKubernetesAtomicOperationDescription description = new DeployKubernetesAtomicOperationDescription();
 
@@ -113,7 +114,23 @@ public class KubernetesOperationFactory extends OperationFactory {
     description.setApplication(parsedName.getApp());
     description.setStack(parsedName.getStack());
     description.setFreeFormDetails(parsedName.getDetail());
-    description.setTargetSize(1);
+
+    SizingTranslation.ServiceSize serviceSize = sizingTranslation.getServiceSize(deploymentEnvironment, service);
+    description.setTargetSize(serviceSize.getReplicas());
+    DeploymentEnvironment.CustomSizing.Autoscaling autoscaling = serviceSize.getAutoscaling();
+    if (autoscaling != null) {
+      Capacity capacity = new Capacity();
+      capacity.setMin(autoscaling.getMinReplicas());
+      capacity.setMax(autoscaling.getMaxReplicas());
+      capacity.setDesired(serviceSize.getReplicas());
+      description.setCapacity(capacity);
+
+      KubernetesCpuUtilization cpuUtilization = new KubernetesCpuUtilization();
+      cpuUtilization.setTarget(autoscaling.getTargetCpuUtilization());
+      KubernetesScalingPolicy scalingPolicy = new KubernetesScalingPolicy();
+      scalingPolicy.setCpuUtilization(cpuUtilization);
+      description.setScalingPolicy(scalingPolicy);
+    }
 
     List<KubernetesVolumeSource> volumeSources = new ArrayList<>();
     for (ConfigSource configSource : configSources) {
@@ -132,7 +149,7 @@ public class KubernetesOperationFactory extends OperationFactory {
     loadBalancers.add(name);
     description.setLoadBalancers(loadBalancers);
 
-    KubernetesContainerDescription container = buildContainer(service, artifact, configSources, size);
+    KubernetesContainerDescription container = buildContainer(service, artifact, configSources, deploymentEnvironment);
     List<KubernetesContainerDescription> containers = new ArrayList<>();
     containers.add(container);
     description.setContainers(containers);
@@ -140,7 +157,7 @@ public class KubernetesOperationFactory extends OperationFactory {
     return description;
   }
 
-  private KubernetesContainerDescription buildContainer(SpinnakerService service, String artifactVersion, List<ConfigSource> configSources, Size size) {
+  private KubernetesContainerDescription buildContainer(SpinnakerService service, String artifactVersion, List<ConfigSource> configSources, DeploymentEnvironment deploymentEnvironment) {
     KubernetesContainerDescription container = new KubernetesContainerDescription();
     KubernetesProbe readinessProbe = new KubernetesProbe();
     KubernetesHandler handler = new KubernetesHandler();
@@ -163,14 +180,16 @@ public class KubernetesOperationFactory extends OperationFactory {
     readinessProbe.setHandler(handler);
     container.setReadinessProbe(readinessProbe);
 
-    /* TODO(lwander) this needs work
-    SizingTranslation.ServiceSize serviceSize = sizingTranslation.getServiceSize(size, service);
-    KubernetesResourceDescription resources = new KubernetesResourceDescription();
-    resources.setCpu(serviceSize.getCpu());
-    resources.setMemory(serviceSize.getRam());
-    container.setRequests(resources);
-    container.setLimits(resources);
-    */
+    SizingTranslation.ServiceSize serviceSize = sizingTranslation.getServiceSize(deploymentEnvironment, service);
+    KubernetesResourceDescription requests = new KubernetesResourceDescription();
+    requests.setCpu(serviceSize.getCpu());
+    requests.setMemory(serviceSize.getRam());
+    container.setRequests(requests);
+
+    KubernetesResourceDescription limits = new KubernetesResourceDescription();
+    limits.setCpu(serviceSize.getCpuLimit());
+    limits.setMemory(serviceSize.getRamLimit());
+    container.setLimits(limits);
 
     KubernetesImageDescription imageDescription = KubernetesUtil.buildImageDescription(artifactVersion);
     container.setImageDescription(imageDescription);
@@ -193,10 +212,15 @@ public class KubernetesOperationFactory extends OperationFactory {
     container.setVolumeMounts(volumeMounts);
 
     List<KubernetesEnvVar> envVars = new ArrayList<>();
+    List<String> opts = sizingTranslation.getJvmOptions(service, serviceSize);
     if (!service.getProfiles().isEmpty()) {
+      opts.add("-Dspring.profiles.active=" + service.getProfiles().stream().reduce((a, b) -> a + "," + b).get());
+    }
+
+    if (!opts.isEmpty()) {
       KubernetesEnvVar envVar = new KubernetesEnvVar();
       envVar.setName(service.getArtifact().getName().toUpperCase() + "_OPTS");
-      envVar.setValue("-Dspring.profiles.active=" + service.getProfiles().stream().reduce((a, b) -> a + "," + b).get());
+      envVar.setValue(String.join(" ", opts));
 
       envVars.add(envVar);
     }
@@ -239,11 +263,11 @@ public class KubernetesOperationFactory extends OperationFactory {
   }
 
   @Override
-  public Map<String, Object> createDeployPipeline(String accountName, SpinnakerService service, String artifact, SpinnakerMonitoringDaemonService monitoringService, String monitoringArtifact, List<ConfigSource> configSources, boolean update, Size size) {
+  public Map<String, Object> createDeployPipeline(String accountName, SpinnakerService service, String artifact, SpinnakerMonitoringDaemonService monitoringService, String monitoringArtifact, List<ConfigSource> configSources, boolean update, DeploymentEnvironment deploymentEnvironment) {
     List<Map<String, Object>> stages = new ArrayList<>();
-    DeployKubernetesAtomicOperationDescription description = baseDeployDescription(accountName, service, artifact, configSources, size);
+    DeployKubernetesAtomicOperationDescription description = baseDeployDescription(accountName, service, artifact, configSources, deploymentEnvironment);
     if (monitoringArtifact != null) {
-      description.getContainers().add(buildContainer(monitoringService, monitoringArtifact, configSources, size));
+      description.getContainers().add(buildContainer(monitoringService, monitoringArtifact, configSources, deploymentEnvironment));
     }
     Map<String, Object> deploy = objectMapper.convertValue(description, Map.class);
     String namespace = KubernetesProviderInterface.getNamespaceFromAddress(service.getAddress());
@@ -262,8 +286,8 @@ public class KubernetesOperationFactory extends OperationFactory {
   }
 
   @Override
-  public Map<String, Object> createDeployPipeline(String accountName, SpinnakerService service, String artifact, List<ConfigSource> configSources, boolean update, Size size) {
-    return createDeployPipeline(accountName, service, artifact, null, null, configSources, update, size);
+  public Map<String, Object> createDeployPipeline(String accountName, SpinnakerService service, String artifact, List<ConfigSource> configSources, boolean update, DeploymentEnvironment deploymentEnvironment) {
+    return createDeployPipeline(accountName, service, artifact, null, null, configSources, update, deploymentEnvironment);
   }
 
 
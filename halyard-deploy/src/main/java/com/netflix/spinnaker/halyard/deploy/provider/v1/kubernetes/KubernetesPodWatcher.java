@@ -0,0 +1,192 @@
+/*
+ * Copyright 2017 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.netflix.spinnaker.halyard.deploy.provider.v1.kubernetes;
+
+import io.fabric8.kubernetes.api.model.ContainerStatus;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodList;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.kubernetes.client.Watch;
+import io.fabric8.kubernetes.client.Watcher;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Tracks the set of pods carrying a label through a kubernetes watch, and completes a future with those pods as soon
+ * as they satisfy a condition (e.g. "one of them is ready"). This replaces listing the pods on a fixed interval.
+ *
+ * The pods are listed once, and the watch is opened at the list's resource version so no change between the two is
+ * missed. If the apiserver drops the watch (it times them out periodically) the list & watch are reopened from a
+ * separate thread, backing off while the watch keeps being dropped without delivering anything. Cancelling the
+ * returned future closes the watch.
+ */
+@Slf4j
+class KubernetesPodWatcher implements Watcher<Pod> {
+  private static final long MIN_REOPEN_DELAY_MILLIS = 250;
+  private static final long MAX_REOPEN_DELAY_MILLIS = 16000;
+
+  private static final ScheduledExecutorService reopener = Executors.newSingleThreadScheduledExecutor(r -> {
+    Thread thread = new Thread(r, "kubernetes-pod-watch-reopen");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private final KubernetesClient client;
+  private final String namespace;
+  private final String label;
+  private final Predicate<List<Pod>> condition;
+
+  private final Map<String, Pod> pods = new ConcurrentHashMap<>();
+  private final CompletableFuture<List<Pod>> result = new CompletableFuture<>();
+  private Watch watch;
+  private long reopenDelayMillis = 0;
+
+  private KubernetesPodWatcher(KubernetesClient client, String namespace, String label, Predicate<List<Pod>> condition) {
+    this.client = client;
+    this.namespace = namespace;
+    this.label = label;
+    this.condition = condition;
+  }
+
+  static CompletableFuture<List<Pod>> await(KubernetesClient client, String namespace, String label, Predicate<List<Pod>> condition) {
+    KubernetesPodWatcher watcher = new KubernetesPodWatcher(client, namespace, label, condition);
+    watcher.result.whenComplete((p, e) -> watcher.closeWatch());
+    watcher.start();
+    return watcher.result;
+  }
+
+  /**
+   * @return true iff the pod is ready to serve traffic. Pods being deleted never are, even if their containers are
+   * still running.
+   */
+  static boolean isReady(Pod pod) {
+    if (pod.getStatus() == null || pod.getMetadata().getDeletionTimestamp() != null) {
+      return false;
+    }
+
+    List<ContainerStatus> statuses = pod.getStatus().getContainerStatuses();
+    return statuses != null && !statuses.isEmpty() && statuses.stream()
+        .allMatch(c -> Boolean.TRUE.equals(c.getReady()) && c.getState().getRunning() != null && c.getState().getTerminated() == null);
+  }
+
+  /**
+   * @return true iff any of the pod's containers is still running, including while the pod is being deleted.
+   */
+  static boolean isRunning(Pod pod) {
+    if (pod.getStatus() == null) {
+      return false;
+    }
+
+    List<ContainerStatus> statuses = pod.getStatus().getContainerStatuses();
+    return statuses != null && statuses.stream()
+        .anyMatch(c -> c.getState() != null && c.getState().getRunning() != null);
+  }
+
+  private void start() {
+    if (result.isDone()) {
+      return;
+    }
+
+    try {
+      PodList list = client.pods().inNamespace(namespace).withLabel(label, "true").list();
+      pods.clear();
+      list.getItems().forEach(p -> pods.put(p.getMetadata().getName(), p));
+      if (check()) {
+        return;
+      }
+
+      Watch opened = client.pods()
+          .inNamespace(namespace)
+          .withLabel(label, "true")
+          .watch(list.getMetadata().getResourceVersion(), this);
+
+      synchronized (this) {
+        watch = opened;
+      }
+
+      // The future may have completed between opening the watch and recording it.
+      if (result.isDone()) {
+        closeWatch();
+      }
+    } catch (KubernetesClientException e) {
+      result.completeExceptionally(e);
+    }
+  }
+
+  private boolean check() {
+    List<Pod> current = new ArrayList<>(pods.values());
+    if (condition.test(current)) {
+      result.complete(current);
+    }
+
+    return result.isDone();
+  }
+
+  private synchronized void closeWatch() {
+    if (watch != null) {
+      watch.close();
+      watch = null;
+    }
+  }
+
+  @Override
+  public void eventReceived(Action action, Pod pod) {
+    synchronized (this) {
+      reopenDelayMillis = 0;
+    }
+
+    switch (action) {
+      case ADDED:
+      case MODIFIED:
+        pods.put(pod.getMetadata().getName(), pod);
+        break;
+      case DELETED:
+        pods.remove(pod.getMetadata().getName());
+        break;
+      default:
+        return;
+    }
+
+    check();
+  }
+
+  @Override
+  public void onClose(KubernetesClientException cause) {
+    if (cause != null && !result.isDone()) {
+      long delay;
+      synchronized (this) {
+        watch = null;
+        delay = reopenDelayMillis;
+        reopenDelayMillis = Math.min(Math.max(reopenDelayMillis * 2, MIN_REOPEN_DELAY_MILLIS), MAX_REOPEN_DELAY_MILLIS);
+      }
+
+      log.info("Watch on pods labeled " + label + " in " + namespace + " closed (" + cause.getMessage() + "), reopening in " + delay + "ms");
+      reopener.schedule(this::start, delay, TimeUnit.MILLISECONDS);
+    }
+  }
+}
@@ -17,25 +17,22 @@
 
 package com.netflix.spinnaker.halyard.deploy.provider.v1.kubernetes;
 
-import com.amazonaws.util.IOUtils;
 import com.netflix.spinnaker.clouddriver.kubernetes.deploy.KubernetesUtil;
 import com.netflix.spinnaker.clouddriver.kubernetes.deploy.description.servergroup.KubernetesImageDescription;
-import com.netflix.spinnaker.clouddriver.kubernetes.security.KubernetesConfigParser;
 import com.netflix.spinnaker.halyard.config.model.v1.node.DeploymentEnvironment;
 import com.netflix.spinnaker.halyard.config.model.v1.node.Provider;
 import com.netflix.spinnaker.halyard.config.model.v1.providers.kubernetes.KubernetesAccount;
 import com.netflix.spinnaker.halyard.config.problem.v1.ConfigProblemBuilder;
 import com.netflix.spinnaker.halyard.config.services.v1.LookupService;
 import com.netflix.spinnaker.halyard.core.error.v1.HalException;
-import com.netflix.spinnaker.halyard.core.job.v1.JobRequest;
-import com.netflix.spinnaker.halyard.core.job.v1.JobStatus;
-import com.netflix.spinnaker.halyard.core.job.v1.JobStatus.State;
 import com.netflix.spinnaker.halyard.core.problem.v1.Problem.Severity;
 import com.netflix.spinnaker.halyard.core.problem.v1.ProblemBuilder;
 import com.netflix.spinnaker.halyard.core.tasks.v1.DaemonTaskHandler;
+import com.netflix.spinnaker.halyard.deploy.config.v1.ConfigParser;
 import com.netflix.spinnaker.halyard.deploy.deployment.v1.AccountDeploymentDetails;
 import com.netflix.spinnaker.halyard.deploy.provider.v1.OperationFactory.ConfigSource;
 import com.netflix.spinnaker.halyard.deploy.provider.v1.ProviderInterface;
+import com.netflix.spinnaker.halyard.deploy.provider.v1.SizingTranslation;
 import com.netflix.spinnaker.halyard.deploy.spinnaker.v1.RunningServiceDetails;
 import com.netflix.spinnaker.halyard.deploy.spinnaker.v1.SpinnakerArtifact;
 import com.netflix.spinnaker.halyard.deploy.spinnaker.v1.SpinnakerEndpoints;
@@ -43,11 +40,11 @@ import com.netflix.spinnaker.halyard.deploy.spinnaker.v1.service.SpinnakerMonito
 import com.netflix.spinnaker.halyard.deploy.spinnaker.v1.service.SpinnakerPublicService;
 import com.netflix.spinnaker.halyard.deploy.spinnaker.v1.service.SpinnakerService;
 import io.fabric8.kubernetes.api.model.*;
+import io.fabric8.kubernetes.api.model.extensions.HorizontalPodAutoscaler;
+import io.fabric8.kubernetes.api.model.extensions.HorizontalPodAutoscalerBuilder;
 import io.fabric8.kubernetes.api.model.extensions.ReplicaSetBuilder;
-import io.fabric8.kubernetes.client.Config;
-import io.fabric8.kubernetes.client.DefaultKubernetesClient;
+import io.fabric8.kubernetes.client.HttpClientAware;
 import io.fabric8.kubernetes.client.KubernetesClient;
-import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
@@ -56,14 +53,13 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 import static com.netflix.spinnaker.halyard.config.model.v1.node.Provider.ProviderType.KUBERNETES;
@@ -101,14 +97,13 @@ public class KubernetesProviderInterface extends ProviderInterface<KubernetesAcc
   @Autowired
   KubernetesSizingTranslation sizingTranslation;
 
-  // Map from deployment name -> the port & job managing the connection.
-  private ConcurrentHashMap<String, Proxy> proxyMap = new ConcurrentHashMap<>();
+  @Autowired
+  KubernetesClientPool clientPool;
 
-  @Data
-  private static class Proxy {
-    String jobId;
-    Integer port;
-  }
+  @Autowired
+  ConfigParser configParser;
+
+  private static final String SECRET_DIGEST_ANNOTATION = "halyard.spinnaker.io/content-digest";
 
   @Override
   public Provider.ProviderType getProviderType() {
@@ -132,50 +127,23 @@ public class KubernetesProviderInterface extends ProviderInterface<KubernetesAcc
   public <T> T connectTo(AccountDeploymentDetails<KubernetesAccount> details, SpinnakerService<T> service) {
     KubernetesAccount account = details.getAccount();
     DaemonTaskHandler.newStage("Connecting to the Kubernetes cluster in account \"" + account.getName() + "\"");
-    Proxy proxy = proxyMap.getOrDefault(details.getDeploymentName(), new Proxy());
-    if (proxy.jobId == null || proxy.jobId.isEmpty()) {
-      List<String> command = kubectlAccountCommand(account);
-      command.add("proxy");
-      command.add("--port=0"); // select a random port
-      JobRequest request = new JobRequest().setTokenizedCommand(command);
-
-      proxy.jobId = jobExecutor.startJob(request);
-
-      // Wait for the proxy to spin up.
-      try {
-        Thread.sleep(TimeUnit.SECONDS.toMillis(5));
-      } catch (InterruptedException ignored) {
-      }
-
-      JobStatus status = jobExecutor.updateJob(proxy.jobId);
-
-      // This should be a long-running job.
-      if (status.getState() == State.COMPLETED) {
-        throw new HalException(new ConfigProblemBuilder(Severity.FATAL,
-            "Unable to establish a proxy against account " + account.getName()
-            + ":\n" + status.getStdOut() + "\n" + status.getStdErr()).build());
-      }
-
-      String connectionMessage = status.getStdOut();
-      Pattern portPattern = Pattern.compile(":(\\d+)");
-      Matcher matcher = portPattern.matcher(connectionMessage);
-      if (matcher.find()) {
-        proxy.setPort(Integer.valueOf(matcher.group(1)));
-        proxyMap.put(details.getDeploymentName(), proxy);
-        DaemonTaskHandler.log("Connected to kubernetes cluster for account " + account.getName() + " on port " + proxy.getPort());
-      } else {
-        throw new HalException(new ConfigProblemBuilder(Severity.FATAL,
-            "Could not parse connection information from:\n" + connectionMessage + "(" + status.getStdErr() + ")").build());
-      }
+    KubernetesClient client = getClient(account);
+    if (!(client instanceof HttpClientAware)) {
+      throw new HalException(new ConfigProblemBuilder(Severity.FATAL,
+          "Unable to reuse the kubernetes client's connection for account " + account.getName()).build());
     }
 
-    String endpoint = "http://localhost:" + proxy.getPort() + "/api/v1/proxy/namespaces/"
+    // Talk to the service through the apiserver's service proxy, over the same connection pool & credentials as
+    // every other call against this cluster.
+    String masterUrl = client.getMasterUrl().toString();
+    String endpoint = (masterUrl.endsWith("/") ? masterUrl : masterUrl + "/") + "api/v1/proxy/namespaces/"
         + getNamespaceFromAddress(service.getAddress()) + "/services/"
         + getServiceFromAddress(service.getAddress()) + ":" + service.getPort() + "/";
 
-    log.info("Connected to " + service.getAddress() + " on port " + proxy.getPort());
-    DaemonTaskHandler.log("View the kube ui on http://localhost:" + proxy.getPort() + "/ui/");
-    return serviceInterfaceFactory.createService(endpoint, service);
+    log.info("Connected to " + service.getAddress() + " via " + endpoint);
+    DaemonTaskHandler.log("Connected to kubernetes cluster for account " + account.getName() + " at " + masterUrl);
+    KubernetesApiServerClient apiServerClient = new KubernetesApiServerClient(((HttpClientAware) client).getHttpClient());
+    return serviceInterfaceFactory.createService(endpoint, service, apiServerClient);
   }
 
   @Override
@@ -235,16 +203,30 @@ public class KubernetesProviderInterface extends ProviderInterface<KubernetesAcc
     List<ConfigSource> configSources = configSources(details, service);
     String artifactVersion = componentArtifact(details, artifact);
     String monitoringVersion = componentArtifact(details, monitoringService.getArtifact());
-    DeploymentEnvironment.Size size = details.getDeploymentConfiguration().getDeploymentEnvironment().getSize();
+    DeploymentEnvironment deploymentEnvironment = details.getDeploymentConfiguration().getDeploymentEnvironment();
 
     boolean monitorSpinnaker = details.getDeploymentConfiguration().getMetricStores().isEnabled();
     boolean monitorService = service.isMonitoringEnabled();
 
     if (monitorService && monitorSpinnaker) {
-      return kubernetesOperationFactory.createDeployPipeline(accountName, service, artifactVersion, monitoringService, monitoringVersion, configSources, update, size);
+      return kubernetesOperationFactory.createDeployPipeline(accountName, service, artifactVersion, monitoringService, monitoringVersion, configSources, update, deploymentEnvironment);
     } else {
-      return kubernetesOperationFactory.createDeployPipeline(accountName, service, artifactVersion, configSources, update, size);
+      return kubernetesOperationFactory.createDeployPipeline(accountName, service, artifactVersion, configSources, update, deploymentEnvironment);
+    }
+  }
+
+  /**
+   * Creates (or updates) the namespace the first time it's needed in a deployment.
+   *
+   * Synchronized since services deployed concurrently share namespaces, and racing creates would conflict.
+   */
+  private synchronized void prepareNamespace(AccountDeploymentDetails<KubernetesAccount> details, KubernetesClient client, String namespace) {
+    if (details.getPreparedNamespaces().contains(namespace)) {
+      return;
     }
+
+    createNamespace(client, namespace);
+    details.getPreparedNamespaces().add(namespace);
   }
 
   private void createNamespace(KubernetesClient client, String namespace) {
@@ -274,7 +256,8 @@ public class KubernetesProviderInterface extends ProviderInterface<KubernetesAcc
       boolean recreate,
       String image,
       List<Pair<VolumeMount, Volume>> volumes,
-      Map<String, String> env) {
+      Map<String, String> env,
+      SizingTranslation.ServiceSize serviceSize) {
     String namespace = getNamespaceFromAddress(service.getAddress());
     String serviceName = getServiceFromAddress(service.getAddress());
     String replicaSetName = serviceName + "-v000";
@@ -282,7 +265,7 @@ public class KubernetesProviderInterface extends ProviderInterface<KubernetesAcc
     int port = service.getPort();
 
     KubernetesClient client = getClient(details.getAccount());
-    createNamespace(client, namespace);
+    prepareNamespace(details, client, namespace);
 
     Map<String, String> serviceSelector = new HashMap<>();
     serviceSelector.put("load-balancer-" + serviceName, "true");
@@ -340,13 +323,13 @@ public class KubernetesProviderInterface extends ProviderInterface<KubernetesAcc
           .endTcpSocket();
     }
 
-    /* TODO(lwander) this needs work
-    DeploymentEnvironment.Size size = details.getDeploymentConfiguration().getDeploymentEnvironment().getSize();
-    SizingTranslation.ServiceSize serviceSize = sizingTranslation.getServiceSize(size, service);
-    Map<String, Quantity> resources = new HashMap<>();
-    resources.put("cpu", new Quantity(serviceSize.getCpu()));
-    resources.put("memory", new Quantity(serviceSize.getRam()));
-    */
+    Map<String, Quantity> requests = new HashMap<>();
+    requests.put("cpu", new Quantity(serviceSize.getCpu()));
+    requests.put("memory", new Quantity(serviceSize.getRam()));
+
+    Map<String, Quantity> limits = new HashMap<>();
+    limits.put("cpu", new Quantity(serviceSize.getCpuLimit()));
+    limits.put("memory", new Quantity(serviceSize.getRamLimit()));
 
     ContainerBuilder containerBuilder = new ContainerBuilder();
 
@@ -356,11 +339,11 @@ public class KubernetesProviderInterface extends ProviderInterface<KubernetesAcc
         .withPorts(new ContainerPortBuilder().withContainerPort(port).build())
         .withVolumeMounts(volumes.stream().map(Pair::getLeft).collect(Collectors.toList()))
         .withEnv(envVars)
-        .withReadinessProbe(probeBuilder.build());
-    //  .withNewResources()
-    //  .withLimits(resources)
-    //  .withRequests(resources)
-    //  .endResources();
+        .withReadinessProbe(probeBuilder.build())
+        .withNewResources()
+        .withRequests(requests)
+        .withLimits(limits)
+        .endResources();
 
     ReplicaSetBuilder replicaSetBuilder = new ReplicaSetBuilder();
 
@@ -370,7 +353,7 @@ public class KubernetesProviderInterface extends ProviderInterface<KubernetesAcc
         .withNamespace(namespace)
         .endMetadata()
         .withNewSpec()
-        .withReplicas(1)
+        .withReplicas(serviceSize.getReplicas())
         .withNewSelector()
         .withMatchLabels(replicaSetSelector)
         .endSelector()
@@ -395,31 +378,82 @@ public class KubernetesProviderInterface extends ProviderInterface<KubernetesAcc
     }
 
     if (!serverExists) {
-      RunningServiceDetails serviceDetails = getRunningServiceDetails(details, service);
-      while (serviceDetails.getHealthy() != 0) {
-        try {
-          Thread.sleep(TimeUnit.SECONDS.toMillis(5));
-        } catch (InterruptedException ignored) {
-        }
-        serviceDetails = getRunningServiceDetails(details, service);
+      // Wait for the pods of any replica set deleted above to be gone, or at least to have stopped running, before
+      // replacing them. Pods being deleted are never ready, so readiness can't tell when they're done.
+      long deadline = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(TIMEOUT_MINUTES);
+      CompletableFuture<List<Pod>> drained = KubernetesPodWatcher.await(client,
+          namespace,
+          "load-balancer-" + serviceName,
+          pods -> pods.isEmpty() || pods.stream().noneMatch(KubernetesPodWatcher::isRunning));
+      try {
+        awaitDeadline(drained, deadline, serviceName + " to drain");
+      } finally {
+        drained.cancel(true);
       }
 
       client.extensions().replicaSets().inNamespace(namespace).create(replicaSetBuilder.build());
     }
 
+    upsertAutoscaler(client, namespace, replicaSetName, serviceSize.getAutoscaling());
     return replicaSetName;
   }
 
+  /**
+   * Scales the replica set between the configured bounds, or stops scaling it when autoscaling is no longer
+   * configured. The autoscaler shares the replica set's name.
+   */
+  private void upsertAutoscaler(KubernetesClient client, String namespace, String replicaSetName, DeploymentEnvironment.CustomSizing.Autoscaling autoscaling) {
+    boolean exists = client.extensions().horizontalPodAutoscalers().inNamespace(namespace).withName(replicaSetName).get() != null;
+    if (autoscaling == null) {
+      if (exists) {
+        client.extensions().horizontalPodAutoscalers().inNamespace(namespace).withName(replicaSetName).delete();
+      }
+
+      return;
+    }
+
+    HorizontalPodAutoscaler autoscaler = new HorizontalPodAutoscalerBuilder()
+        .withNewMetadata()
+        .withName(replicaSetName)
+        .withNamespace(namespace)
+        .endMetadata()
+        .withNewSpec()
+        .withNewScaleRef()
+        .withApiVersion("extensions/v1beta1")
+        .withKind("ReplicaSet")
+        .withName(replicaSetName)
+        .withSubresource("scale")
+        .endScaleRef()
+        .withMinReplicas(autoscaling.getMinReplicas())
+        .withMaxReplicas(autoscaling.getMaxReplicas())
+        .withNewCpuUtilization(autoscaling.getTargetCpuUtilization())
+        .endSpec()
+        .build();
+
+    if (exists) {
+      client.extensions().horizontalPodAutoscalers().inNamespace(namespace).withName(replicaSetName).replace(autoscaler);
+    } else {
+      client.extensions().horizontalPodAutoscalers().inNamespace(namespace).create(autoscaler);
+    }
+  }
+
   private String bootstrapService(AccountDeploymentDetails<KubernetesAccount> details, SpinnakerService service, boolean recreate) {
     SpinnakerArtifact artifact = service.getArtifact();
     List<Pair<VolumeMount, Volume>> volumes = serviceVolumes(details, service);
 
-    Map<String, String> env = service.getEnv();
+    Map<String, String> env = new HashMap<>(service.getEnv());
+    DeploymentEnvironment deploymentEnvironment = details.getDeploymentConfiguration().getDeploymentEnvironment();
+    SizingTranslation.ServiceSize serviceSize = sizingTranslation.getServiceSize(deploymentEnvironment, service);
 
+    List<String> opts = sizingTranslation.getJvmOptions(service, serviceSize);
     if (!service.getProfiles().isEmpty()) {
-      env.put(artifact.getName().toUpperCase() + "_OPTS", "-Dspring.profiles.active=" + service.getProfiles().stream().reduce((a, b) -> a + "," + b).get());
+      opts.add("-Dspring.profiles.active=" + service.getProfiles().stream().reduce((a, b) -> a + "," + b).get());
+    }
+
+    if (!opts.isEmpty()) {
+      env.put(artifact.getName().toUpperCase() + "_OPTS", String.join(" ", opts));
     }
-    return bootstrapService(details, service, recreate, componentArtifact(details, artifact), volumes, env);
+    return bootstrapService(details, service, recreate, componentArtifact(details, artifact), volumes, env, serviceSize);
   }
 
   @Override
@@ -441,6 +475,9 @@ public class KubernetesProviderInterface extends ProviderInterface<KubernetesAcc
     String namespace = getNamespaceFromAddress(service.getAddress());
 
     client.extensions().replicaSets().inNamespace(namespace).withName(serverGroupName).delete();
+    if (client.extensions().horizontalPodAutoscalers().inNamespace(namespace).withName(serverGroupName).get() != null) {
+      client.extensions().horizontalPodAutoscalers().inNamespace(namespace).withName(serverGroupName).delete();
+    }
   }
 
   @Override
@@ -584,25 +621,36 @@ public class KubernetesProviderInterface extends ProviderInterface<KubernetesAcc
     return res;
   }
 
+  /**
+   * Stages the given files as a secret, annotated with a digest of their names & contents. A secret whose digest is
+   * unchanged isn't rewritten, so redeploying unchanged config doesn't touch the secret (or remount it in pods).
+   */
   private void upsertSecret(AccountDeploymentDetails<KubernetesAccount> details, Set<String> files, String secretName, String namespace) {
     KubernetesClient client = getClient(details.getAccount());
-    createNamespace(client, namespace);
+    prepareNamespace(details, client, namespace);
+
+    // Entries are keyed by file name, and the first file with a given name wins.
+    Map<String, Path> entries = new TreeMap<>();
+    files.forEach(s -> {
+      Path path = Paths.get(s);
+      entries.putIfAbsent(path.getFileName().toString(), path);
+    });
 
-    if (client.secrets().inNamespace(namespace).withName(secretName).get() != null) {
-      client.secrets().inNamespace(namespace).withName(secretName).delete();
+    String digest = secretDigest(entries);
+    Secret existing = client.secrets().inNamespace(namespace).withName(secretName).get();
+    if (existing != null && existing.getMetadata().getAnnotations() != null
+        && digest.equals(existing.getMetadata().getAnnotations().get(SECRET_DIGEST_ANNOTATION))) {
+      log.info("Secret " + secretName + " in namespace " + namespace + " is unchanged");
+      return;
     }
 
     Map<String, String> secretContents = new HashMap<>();
-
-    files.forEach(s -> {
+    entries.forEach((name, path) -> {
       try {
-        File f = new File(s);
-        String name = f.getName();
-        String data = new String(Base64.getEncoder().encode(IOUtils.toString(new FileInputStream(f)).getBytes()));
-        secretContents.putIfAbsent(name, data);
+        secretContents.put(name, Base64.getEncoder().encodeToString(Files.readAllBytes(path)));
       } catch (IOException e) {
         throw new HalException(
-            new ConfigProblemBuilder(Severity.ERROR, "Unable to read contents of \"" + s + "\": " + e).build()
+            new ConfigProblemBuilder(Severity.ERROR, "Unable to read contents of \"" + path + "\": " + e).build()
         );
       }
     });
@@ -611,23 +659,50 @@ public class KubernetesProviderInterface extends ProviderInterface<KubernetesAcc
     secretBuilder = secretBuilder.withNewMetadata()
         .withName(secretName)
         .withNamespace(namespace)
+        .withAnnotations(Collections.singletonMap(SECRET_DIGEST_ANNOTATION, digest))
         .endMetadata()
         .withData(secretContents);
 
     log.info("Staging secret " + secretName + " in namespace " + namespace + " with contents " + files);
 
-    client.secrets().inNamespace(namespace).create(secretBuilder.build());
+    if (existing == null) {
+      client.secrets().inNamespace(namespace).create(secretBuilder.build());
+    } else {
+      client.secrets().inNamespace(namespace).withName(secretName).replace(secretBuilder.build());
+    }
+  }
+
+  private String secretDigest(Map<String, Path> entries) {
+    StringBuilder contents = new StringBuilder();
+    entries.forEach((name, path) -> {
+      try {
+        contents.append(name).append(':').append(configParser.hexDigest(path)).append('\n');
+      } catch (IOException e) {
+        throw new HalException(
+            new ConfigProblemBuilder(Severity.ERROR, "Unable to read contents of \"" + path + "\": " + e).build()
+        );
+      }
+    });
+
+    return configParser.hexDigest(contents.toString());
   }
 
   private KubernetesClient getClient(KubernetesAccount account) {
-    Config config = KubernetesConfigParser.parse(account.getKubeconfigFile(),
-        account.getContext(),
-        account.getCluster(),
-        account.getUser(),
-        account.getNamespaces(), 
-        false);
+    return clientPool.getClient(account);
+  }
+
+  @Override
+  public CompletableFuture<Void> serviceHealthy(AccountDeploymentDetails<KubernetesAccount> details, SpinnakerService service) {
+    String name = getServiceFromAddress(service.getAddress());
+    String namespace = getNamespaceFromAddress(service.getAddress());
+    CompletableFuture<List<Pod>> ready = KubernetesPodWatcher.await(getClient(details.getAccount()),
+        namespace,
+        "load-balancer-" + name,
+        pods -> pods.stream().anyMatch(KubernetesPodWatcher::isReady));
 
-    return new DefaultKubernetesClient(config);
+    CompletableFuture<Void> result = ready.thenApply(p -> null);
+    result.whenComplete((r, e) -> ready.cancel(true));
+    return result;
   }
 
   @Override
@@ -647,14 +722,7 @@ public class KubernetesProviderInterface extends ProviderInterface<KubernetesAcc
 
     res.getInstances().put(namespace, pods.stream().map(p -> p.getMetadata().getName()).collect(Collectors.toList()));
 
-    int count = (int) pods
-        .stream()
-        .filter(p -> p
-            .getStatus()
-            .getContainerStatuses()
-            .stream()
-            .allMatch(c -> c.getReady() && c.getState().getRunning() != null && c.getState().getTerminated() == null))
-        .count();
+    int count = (int) pods.stream().filter(KubernetesPodWatcher::isReady).count();
 
     res.setHealthy(count);
 
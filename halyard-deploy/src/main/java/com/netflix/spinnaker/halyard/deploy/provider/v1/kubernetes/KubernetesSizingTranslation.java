@@ -19,38 +19,63 @@ package com.netflix.spinnaker.halyard.deploy.provider.v1.kubernetes;
 
 import com.netflix.spinnaker.halyard.config.model.v1.node.DeploymentEnvironment;
 import com.netflix.spinnaker.halyard.deploy.provider.v1.SizingTranslation;
-import com.netflix.spinnaker.halyard.deploy.spinnaker.v1.SpinnakerArtifact;
 import com.netflix.spinnaker.halyard.deploy.spinnaker.v1.service.SpinnakerService;
 import org.springframework.stereotype.Component;
 
 @Component
 public class KubernetesSizingTranslation extends SizingTranslation {
   @Override
-  public ServiceSize getServiceSize(DeploymentEnvironment.Size size, SpinnakerService service) {
-    // todo(lwander) these are completely made up, we need sizing recommendations.
+  protected ServiceSize getDefaultServiceSize(DeploymentEnvironment.Size size, SpinnakerService service) {
+    // Memory is requested at its limit, so pods aren't scheduled onto nodes that can't actually hold them, while cpu
+    // is allowed to burst above what's requested. SMALL is the default size, and is meant to fit a small cluster, so
+    // it only requests a quarter of its memory limit; at the limit, all of Spinnaker would request over 10Gi.
     String cpu;
+    String cpuLimit;
     int ramMi;
+    int ramRequestMi;
     switch (size) {
       case LARGE:
-        cpu = "2";
-        ramMi = 2048;
+        cpu = "1";
+        cpuLimit = "4";
+        ramMi = 4096;
+        ramRequestMi = ramMi;
         break;
       case MEDIUM:
-        cpu = "1";
-        ramMi = 1024;
+        cpu = "500m";
+        cpuLimit = "2";
+        ramMi = 2048;
+        ramRequestMi = ramMi;
         break;
       case SMALL:
         cpu = "250m";
-        ramMi = 256;
+        cpuLimit = "1";
+        ramMi = 1024;
+        ramRequestMi = 256;
         break;
       default:
         throw new RuntimeException("Unknown service size " + size);
     }
 
-    if (service.getArtifact() == SpinnakerArtifact.REDIS) {
-      ramMi *= 2;
+    switch (service.getArtifact()) {
+      case CLOUDDRIVER:
+        // Clouddriver caches every account's resources in memory.
+        ramMi *= 2;
+        ramRequestMi *= 2;
+        break;
+      case DECK:
+      case SPINNAKER_MONITORING_DAEMON:
+        // Static content & a python daemon need a fraction of what a JVM does.
+        ramMi /= 4;
+        ramRequestMi /= 4;
+        break;
+      default:
+        break;
     }
 
-    return new ServiceSize().setCpu(cpu).setRam(ramMi + "Mi");
+    return new ServiceSize()
+        .setCpu(cpu)
+        .setCpuLimit(cpuLimit)
+        .setRam(ramRequestMi + "Mi")
+        .setRamLimit(ramMi + "Mi");
   }
 }
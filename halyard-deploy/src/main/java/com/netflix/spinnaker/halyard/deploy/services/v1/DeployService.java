@@ -94,7 +94,7 @@ public class DeployService {
     DeploymentConfiguration deploymentConfiguration = deploymentService.getDeploymentConfiguration(deploymentName);
     GenerateResult generateResult = generateService.generateConfig(deploymentName);
     Path generateResultPath = halconfigDirectoryStructure.getGenerateResultPath(deploymentName);
-    configParser.atomicWrite(generateResultPath, configParser.yamlToString(generateResult));
+    configParser.atomicWriteIfChanged(generateResultPath, configParser.yamlToString(generateResult));
     halconfigParser.backupConfig(deploymentName);
 
     Deployment deployment = deploymentFactory.create(deploymentConfiguration, generateResult);
@@ -102,9 +102,9 @@ public class DeployService {
     FileSystem defaultFileSystem = FileSystems.getDefault();
     Path path = defaultFileSystem.getPath(spinnakerOutputPath, "spinnaker.yml");
 
-    log.info("Writing spinnaker endpoints to " + path);
-
-    configParser.atomicWrite(path, configParser.yamlToString(deployment.getEndpoints()));
+    if (configParser.atomicWriteIfChanged(path, configParser.yamlToString(deployment.getEndpoints()))) {
+      log.info("Wrote spinnaker endpoints to " + path);
+    }
 
     RemoteAction result = deployment.deploy(spinnakerOutputPath);
 
@@ -118,7 +118,7 @@ public class DeployService {
   }
 
   private String writeExecutable(String contents, Path path) {
-    configParser.atomicWrite(path, contents);
+    configParser.atomicWriteIfChanged(path, contents);
     path.toFile().setExecutable(true);
     return path.toString();
   }
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2017 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.halyard.deploy.services.v1;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Records what a prior run of the GenerateService wrote to the spinnaker output directory, so that the next run
+ * only has to regenerate the profiles whose inputs changed, and can find the files that are no longer needed.
+ */
+@Data
+public class GenerateManifest {
+  /**
+   * Profile name -> what was generated for it.
+   */
+  private Map<String, ProfileEntry> profiles = new HashMap<>();
+
+  /**
+   * Output file name -> digest of the user-provided profile copied there.
+   */
+  private Map<String, String> userProfiles = new HashMap<>();
+
+  public Set<String> allOutputFiles() {
+    Set<String> result = new HashSet<>(userProfiles.keySet());
+    profiles.values().forEach(p -> result.addAll(p.getOutputs().keySet()));
+    return result;
+  }
+
+  public Set<String> allRequiredFiles() {
+    Set<String> result = new HashSet<>();
+    profiles.values().forEach(p -> result.addAll(p.getRequiredFiles()));
+    return result;
+  }
+
+  @Data
+  public static class ProfileEntry {
+    /**
+     * Digest of everything the profile is generated from.
+     */
+    private String inputHash;
+
+    /**
+     * Output file name -> digest of the contents generated for it.
+     */
+    private Map<String, String> outputs = new HashMap<>();
+
+    private List<String> requiredFiles = new ArrayList<>();
+  }
+}
@@ -19,13 +19,17 @@ package com.netflix.spinnaker.halyard.deploy.services.v1;
 import com.netflix.spinnaker.halyard.config.config.v1.HalconfigDirectoryStructure;
 import com.netflix.spinnaker.halyard.config.config.v1.HalconfigParser;
 import com.netflix.spinnaker.halyard.config.model.v1.node.DeploymentConfiguration;
+import com.netflix.spinnaker.halyard.config.model.v1.node.Halconfig;
+import com.netflix.spinnaker.halyard.config.model.v1.node.Node;
 import com.netflix.spinnaker.halyard.config.problem.v1.ConfigProblemBuilder;
 import com.netflix.spinnaker.halyard.config.services.v1.DeploymentService;
 import com.netflix.spinnaker.halyard.core.error.v1.HalException;
 import com.netflix.spinnaker.halyard.core.problem.v1.Problem.Severity;
+import com.netflix.spinnaker.halyard.core.registry.v1.BillOfMaterials;
 import com.netflix.spinnaker.halyard.core.tasks.v1.DaemonTaskHandler;
 import com.netflix.spinnaker.halyard.deploy.config.v1.ConfigParser;
 import com.netflix.spinnaker.halyard.deploy.deployment.v1.EndpointFactory;
+import com.netflix.spinnaker.halyard.deploy.services.v1.GenerateManifest.ProfileEntry;
 import com.netflix.spinnaker.halyard.deploy.spinnaker.v1.SpinnakerEndpoints;
 import com.netflix.spinnaker.halyard.deploy.spinnaker.v1.profile.ProfileConfig;
 import com.netflix.spinnaker.halyard.deploy.spinnaker.v1.profile.SpinnakerProfile;
@@ -33,22 +37,39 @@ import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.tomcat.util.http.fileupload.FileUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 
 @Component
 @Slf4j
 public class GenerateService {
+  private static final String MANIFEST_NAME = ".generate-manifest.yml";
+
   @Autowired
   private String spinnakerOutputPath;
 
+  @Autowired
+  private String spinnakerOutputDependencyPath;
+
+  @Autowired
+  private String halyardVersion;
+
   @Autowired
   private HalconfigParser halconfigParser;
 
+  @Value("${generate.profileParallelism:4}")
+  private int profileParallelism;
+
   @Autowired
   private DeploymentService deploymentService;
 
@@ -75,10 +96,16 @@ public class GenerateService {
    *
    * This involves a few steps:
    *
-   *   1. Clear out old config generated in a prior run.
+   *   1. Load the manifest written by a prior run. If there is none, clear out whatever is in the output directory.
    *   2. Generate configuration using the halconfig as the source of truth, while collecting files needed by
-   *      the deployment.
+   *      the deployment. Profiles whose inputs (the parts of the deployment config they read, endpoints,
+   *      artifact version and local files) are unchanged since the prior run, and whose output is still intact,
+   *      are not regenerated. The rest are generated concurrently.
    *   3. Copy custom profiles from the specified deployment over to the new deployment.
+   *   4. Delete files written by the prior run that are no longer part of the output, and record the new manifest.
+   *
+   * Nothing is written until every profile has been generated. The manifest is removed while files are being
+   * written, so a failure part way through forces the next run to start from a clean directory.
    *
    * @param deploymentName is the deployment whose config to generate
    * @return a mapping from components to the profile's required local files.
@@ -86,69 +113,126 @@ public class GenerateService {
   public GenerateResult generateConfig(String deploymentName) {
     log.info("Generating config from \"" + halconfigPath + "\" with deploymentName \"" + deploymentName + "\"");
     File spinnakerOutput = new File(spinnakerOutputPath);
+    Path manifestPath = Paths.get(spinnakerOutputPath, MANIFEST_NAME);
     DeploymentConfiguration deploymentConfiguration = deploymentService.getDeploymentConfiguration(deploymentName);
 
     SpinnakerEndpoints endpoints = endpointFactory.create(deploymentConfiguration);
 
     // Step 1.
-    try {
-      FileUtils.deleteDirectory(spinnakerOutput);
-    } catch (IOException e) {
-      throw new HalException(
-          new ConfigProblemBuilder(Severity.FATAL, "Unable to clear old spinnaker config: " + e.getMessage() + ".").build());
+    GenerateManifest priorManifest = loadManifest(manifestPath);
+    if (priorManifest == null) {
+      try {
+        FileUtils.deleteDirectory(spinnakerOutput);
+      } catch (IOException e) {
+        throw new HalException(
+            new ConfigProblemBuilder(Severity.FATAL, "Unable to clear old spinnaker config: " + e.getMessage() + ".").build());
+      }
+
+      priorManifest = new GenerateManifest();
     }
 
-    if (!spinnakerOutput.mkdirs()) {
+    if (!spinnakerOutput.isDirectory() && !spinnakerOutput.mkdirs()) {
       throw new HalException(
           new ConfigProblemBuilder(Severity.FATAL, "Unable to create new spinnaker config directory \"" + spinnakerOutputPath + "\".").build());
     }
 
     // Step 2.
     DaemonTaskHandler.newStage("Generating all Spinnaker profile files");
+    Set<String> userProfileNames = listUserProfiles(deploymentName).stream()
+        .map(File::getName)
+        .collect(Collectors.toSet());
+
+    Map<String, String> inputHashes = profileInputHashes(deploymentName, deploymentConfiguration, endpoints);
+
+    List<SpinnakerProfile> staleProfiles = new ArrayList<>();
+    for (SpinnakerProfile profile : spinnakerProfiles) {
+      String profileName = profileName(profile);
+      ProfileEntry priorEntry = priorManifest.getProfiles().get(profileName);
+      if (priorEntry == null || !inputHashes.get(profileName).equals(priorEntry.getInputHash()) || !outputsIntact(priorEntry, userProfileNames)) {
+        staleProfiles.add(profile);
+      }
+    }
+
+    Map<String, ProfileConfig> generatedConfigs = generateProfiles(staleProfiles, deploymentName, endpoints);
+
+    GenerateManifest manifest = new GenerateManifest();
     Map<String, Set<String>> profileRequirements = new HashMap<>();
-    FileSystem defaultFileSystem = FileSystems.getDefault();
-    Path path;
     for (SpinnakerProfile profile : spinnakerProfiles) {
       String artifactName = profile.getArtifact().getName();
+      String profileName = profileName(profile);
+      ProfileConfig config = generatedConfigs.get(profileName);
+
+      ProfileEntry entry;
+      if (config == null) {
+        log.info("Profile " + profileName + " for " + artifactName + " is up to date");
+        DaemonTaskHandler.log("Profile for " + artifactName + " is up to date");
+        entry = priorManifest.getProfiles().get(profileName);
+      } else {
+        entry = new ProfileEntry()
+            .setInputHash(inputHashes.get(profileName))
+            .setRequiredFiles(new ArrayList<>(config.getRequiredFiles()));
+      }
+
+      manifest.getProfiles().put(profileName, entry);
+
+      Set<String> currentRequirements = profileRequirements.getOrDefault(artifactName, new HashSet<>());
+      currentRequirements.addAll(entry.getRequiredFiles());
+      profileRequirements.put(artifactName, currentRequirements);
+    }
+
+    try {
+      Files.deleteIfExists(manifestPath);
+    } catch (IOException e) {
+      throw new HalException(
+          new ConfigProblemBuilder(Severity.FATAL, "Unable to invalidate old spinnaker config manifest: " + e.getMessage() + ".").build());
+    }
 
-      ProfileConfig config = profile.getFullConfig(deploymentName, endpoints);
+    FileSystem defaultFileSystem = FileSystems.getDefault();
+    Path path;
+    for (Map.Entry<String, ProfileConfig> generated : generatedConfigs.entrySet()) {
+      ProfileConfig config = generated.getValue();
+      ProfileEntry entry = manifest.getProfiles().get(generated.getKey());
       for (Map.Entry<String, String> e : config.getConfigContents().entrySet()) {
         String outputFileName = e.getKey();
         path = defaultFileSystem.getPath(spinnakerOutputPath, outputFileName);
-        log.info("Writing " + artifactName + " profile to " + path + " with " + config.getRequiredFiles().size() + " required files");
-        DaemonTaskHandler.log("Writing profile " + outputFileName);
+        if (configParser.atomicWriteIfChanged(path, e.getValue())) {
+          log.info("Wrote " + generated.getKey() + " profile to " + path + " with " + config.getRequiredFiles().size() + " required files");
+          DaemonTaskHandler.log("Writing profile " + outputFileName);
+        } else {
+          log.info("Profile " + path + " for " + generated.getKey() + " is unchanged");
+        }
 
-        configParser.atomicWrite(path, e.getValue());
+        entry.getOutputs().put(outputFileName, configParser.hexDigest(e.getValue()));
       }
-
-      Set<String> currentRequirements = profileRequirements.getOrDefault(artifactName, new HashSet<>());
-      currentRequirements.addAll(config.getRequiredFiles());
-      profileRequirements.put(artifactName, currentRequirements);
     }
 
     // Step 3.
-    Path userProfilePath = halconfigDirectoryStructure.getUserProfilePath(deploymentName);
-
-    if (Files.isDirectory(userProfilePath)) {
+    List<File> userProfiles = listUserProfiles(deploymentName);
+    if (!userProfiles.isEmpty()) {
       DaemonTaskHandler.newStage("Copying user-provided profiles");
-      File[] files = userProfilePath.toFile().listFiles();
-      if (files == null) {
-        files = new File[0];
-      }
+    }
 
-      Arrays.stream(files).forEach(f -> {
-        try {
+    for (File f : userProfiles) {
+      try {
+        Path target = Paths.get(spinnakerOutput.toString(), f.getName());
+        String digest = configParser.hexDigest(f.toPath());
+        if (!target.toFile().isFile() || !digest.equals(configParser.hexDigest(target))) {
           DaemonTaskHandler.log("Copying existing profile " + f.getName());
-          Files.copy(f.toPath(), Paths.get(spinnakerOutput.toString(), f.getName()), StandardCopyOption.REPLACE_EXISTING);
-        } catch (IOException e) {
-          throw new HalException(
-              new ConfigProblemBuilder(Severity.FATAL, "Unable to copy profile \"" + f.getName() + "\": " + e.getMessage() + ".").build()
-          );
+          Files.copy(f.toPath(), target, StandardCopyOption.REPLACE_EXISTING);
         }
-      });
+
+        manifest.getUserProfiles().put(f.getName(), digest);
+      } catch (IOException e) {
+        throw new HalException(
+            new ConfigProblemBuilder(Severity.FATAL, "Unable to copy profile \"" + f.getName() + "\": " + e.getMessage() + ".").build()
+        );
+      }
     }
 
     // Step 4.
+    deleteOrphans(priorManifest, manifest);
+    configParser.atomicWrite(manifestPath, configParser.yamlToString(manifest));
+
     GenerateResult result = new GenerateResult()
         .setProfileRequirements(profileRequirements)
         .setEndpoints(endpoints);
@@ -156,6 +240,212 @@ public class GenerateService {
     return result;
   }
 
+  /**
+   * Generates the given profiles concurrently. Profiles only read the halconfig (local files are staged without
+   * touching it), so they all share the current task's halconfig, prepared once here before fanning out. Events logged while generating a profile are
+   * replayed into the current task in profile order, so the task log doesn't depend on scheduling.
+   *
+   * @return profile name -> generated config, in the order the profiles were given.
+   */
+  private Map<String, ProfileConfig> generateProfiles(List<SpinnakerProfile> profiles, String deploymentName, SpinnakerEndpoints endpoints) {
+    Map<String, ProfileConfig> result = new LinkedHashMap<>();
+    if (profiles.isEmpty()) {
+      return result;
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(profileParallelism, profiles.size())));
+    Map<SpinnakerProfile, Future<ProfileConfig>> futures = new LinkedHashMap<>();
+    Map<SpinnakerProfile, List<String>> events = new HashMap<>();
+    Halconfig halconfig = halconfigParser.getHalconfig();
+    try {
+      for (SpinnakerProfile profile : profiles) {
+        List<String> profileEvents = Collections.synchronizedList(new ArrayList<>());
+        events.put(profile, profileEvents);
+        futures.put(profile, executor.submit(() -> DaemonTaskHandler.runDetached(halconfig, profileEvents, () -> {
+          long start = System.currentTimeMillis();
+          ProfileConfig config = profile.getFullConfig(deploymentName, endpoints);
+          long elapsed = System.currentTimeMillis() - start;
+          log.info("Generated " + profileName(profile) + " in " + elapsed + "ms");
+          DaemonTaskHandler.log("Generated profile for " + profile.getArtifact().getName() + " in " + elapsed + "ms");
+          return config;
+        })));
+      }
+
+      for (Map.Entry<SpinnakerProfile, Future<ProfileConfig>> entry : futures.entrySet()) {
+        SpinnakerProfile profile = entry.getKey();
+        try {
+          result.put(profileName(profile), awaitProfile(profile, entry.getValue()));
+        } finally {
+          DaemonTaskHandler.replay(events.get(profile));
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    return result;
+  }
+
+  private ProfileConfig awaitProfile(SpinnakerProfile profile, Future<ProfileConfig> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new HalException(
+          new ConfigProblemBuilder(Severity.FATAL, "Interrupted while generating profile for " + profile.getArtifact().getName() + ".").build());
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof HalException) {
+        throw (HalException) cause;
+      }
+
+      throw new HalException(
+          new ConfigProblemBuilder(Severity.FATAL, "Failed to generate profile for " + profile.getArtifact().getName() + ": " + cause.getMessage() + ".").build());
+    }
+  }
+
+  private static String profileName(SpinnakerProfile profile) {
+    return profile.getClass().getSimpleName();
+  }
+
+  private GenerateManifest loadManifest(Path manifestPath) {
+    if (!manifestPath.toFile().isFile()) {
+      return null;
+    }
+
+    try {
+      return configParser.read(manifestPath, GenerateManifest.class);
+    } catch (HalException e) {
+      log.warn("Ignoring unreadable generate manifest " + manifestPath + ", regenerating all profiles");
+      return null;
+    }
+  }
+
+  private List<File> listUserProfiles(String deploymentName) {
+    Path userProfilePath = halconfigDirectoryStructure.getUserProfilePath(deploymentName);
+    File[] files = null;
+    if (Files.isDirectory(userProfilePath)) {
+      files = userProfilePath.toFile().listFiles();
+    }
+
+    if (files == null) {
+      return Collections.emptyList();
+    }
+
+    return Arrays.stream(files).filter(File::isFile).collect(Collectors.toList());
+  }
+
+  /**
+   * A generated file is intact if it still holds what we generated, or if it is about to be overwritten by a
+   * user-provided profile anyway.
+   */
+  private boolean outputsIntact(ProfileEntry entry, Set<String> userProfileNames) {
+    for (Map.Entry<String, String> output : entry.getOutputs().entrySet()) {
+      if (userProfileNames.contains(output.getKey())) {
+        continue;
+      }
+
+      Path path = Paths.get(spinnakerOutputPath, output.getKey());
+      try {
+        if (!path.toFile().isFile() || !output.getValue().equals(configParser.hexDigest(path))) {
+          return false;
+        }
+      } catch (IOException e) {
+        return false;
+      }
+    }
+
+    for (String requiredFile : entry.getRequiredFiles()) {
+      if (!new File(requiredFile).isFile()) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * A profile's hash covers only the parts of the deployment configuration it declares as inputs, so a change to,
+   * e.g., the metric stores doesn't regenerate profiles that never read them.
+   */
+  private Map<String, String> profileInputHashes(String deploymentName, DeploymentConfiguration deploymentConfiguration, SpinnakerEndpoints endpoints) {
+    BillOfMaterials bom = artifactService.getBillOfMaterials(deploymentName);
+    String sharedInputs = String.join("\n",
+        String.valueOf(halyardVersion),
+        deploymentName,
+        configParser.yamlToString(endpoints));
+
+    Map<String, String> result = new HashMap<>();
+    for (SpinnakerProfile profile : spinnakerProfiles) {
+      String artifactVersion = bom.getArtifactVersion(profile.getArtifact().getName());
+      List<Object> configInputs = profile.getConfigInputs(deploymentConfiguration);
+      String localFiles = configInputs.stream()
+          .filter(i -> i instanceof Node)
+          .map(i -> localFileStamps((Node) i))
+          .collect(Collectors.joining("\n"));
+
+      result.put(profileName(profile), configParser.hexDigest(String.join("\n",
+          profileName(profile),
+          artifactVersion,
+          sharedInputs,
+          configParser.yamlToString(Collections.singletonMap("inputs", configInputs)),
+          localFiles)));
+    }
+
+    return result;
+  }
+
+  /**
+   * Files referenced by the config can change without the config itself changing, so their size and modification
+   * time are part of the inputs of every profile that reads them.
+   */
+  private String localFileStamps(Node node) {
+    List<String> stamps = new ArrayList<>();
+    node.recursiveConsume(n -> n.localFiles().forEach(f -> {
+      try {
+        f.setAccessible(true);
+        String fPath = (String) f.get(n);
+        if (fPath != null) {
+          File file = new File(fPath);
+          stamps.add(fPath + ":" + file.length() + ":" + file.lastModified());
+        }
+      } catch (IllegalAccessException e) {
+        throw new RuntimeException("Failed to get local files for node " + n.getNodeName(), e);
+      } finally {
+        f.setAccessible(false);
+      }
+    }));
+
+    return String.join("\n", stamps);
+  }
+
+  private void deleteOrphans(GenerateManifest priorManifest, GenerateManifest manifest) {
+    Set<String> orphanedOutputs = priorManifest.allOutputFiles();
+    orphanedOutputs.removeAll(manifest.allOutputFiles());
+    for (String orphan : orphanedOutputs) {
+      deleteOrphan(Paths.get(spinnakerOutputPath, orphan));
+    }
+
+    Set<String> orphanedDependencies = priorManifest.allRequiredFiles();
+    orphanedDependencies.removeAll(manifest.allRequiredFiles());
+    for (String orphan : orphanedDependencies) {
+      Path path = Paths.get(orphan);
+      if (path.startsWith(spinnakerOutputDependencyPath)) {
+        deleteOrphan(path);
+      }
+    }
+  }
+
+  private void deleteOrphan(Path path) {
+    try {
+      if (Files.deleteIfExists(path)) {
+        log.info("Deleted orphaned file " + path);
+      }
+    } catch (IOException e) {
+      log.warn("Unable to delete orphaned file " + path + ": " + e.getMessage());
+    }
+  }
+
   @Data
   public static class GenerateResult {
     private Map<String, Set<String>> profileRequirements = new HashMap<>();
@@ -22,7 +22,9 @@ import com.netflix.spinnaker.halyard.deploy.spinnaker.v1.SpinnakerArtifact;
 import com.netflix.spinnaker.halyard.deploy.spinnaker.v1.SpinnakerEndpoints;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 @Component
 public class ClouddriverProfile extends SpringProfile {
@@ -31,11 +33,18 @@ public class ClouddriverProfile extends SpringProfile {
     return SpinnakerArtifact.CLOUDDRIVER;
   }
 
+  @Override
+  public List<Object> getConfigInputs(DeploymentConfiguration deploymentConfiguration) {
+    List<Object> inputs = new ArrayList<>(super.getConfigInputs(deploymentConfiguration));
+    inputs.add(deploymentConfiguration.getProviders());
+    return inputs;
+  }
+
   @Override
   public ProfileConfig generateFullConfig(ProfileConfig config, DeploymentConfiguration deploymentConfiguration, SpinnakerEndpoints endpoints) {
     config = super.generateFullConfig(config, deploymentConfiguration, endpoints);
     Providers providers = deploymentConfiguration.getProviders();
-    List<String> files = processRequiredFiles(providers);
-    return config.extendConfig(config.getPrimaryConfigFile(), yamlToString(deploymentConfiguration.getProviders())).setRequiredFiles(files);
+    Map<String, String> files = processRequiredFiles(providers);
+    return config.extendConfig(config.getPrimaryConfigFile(), yamlToString(providers, files)).setRequiredFiles(new ArrayList<>(files.values()));
   }
 }
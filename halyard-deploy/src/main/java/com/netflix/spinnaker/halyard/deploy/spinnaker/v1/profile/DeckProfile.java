@@ -32,7 +32,9 @@ import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 @Component
@@ -56,6 +58,14 @@ public class DeckProfile extends SpinnakerProfile {
     return SpinnakerArtifact.DECK;
   }
 
+  @Override
+  public List<Object> getConfigInputs(DeploymentConfiguration deploymentConfiguration) {
+    return Arrays.asList(deploymentConfiguration.getFeatures(),
+        deploymentConfiguration.getTimezone(),
+        deploymentConfiguration.getProviders(),
+        deploymentConfiguration.getSecurity());
+  }
+
   @Override
   public ProfileConfig generateFullConfig(ProfileConfig config, DeploymentConfiguration deploymentConfiguration, SpinnakerEndpoints endpoints) {
     StringResource configTemplate = new StringResource(config.getPrimaryConfigContents());
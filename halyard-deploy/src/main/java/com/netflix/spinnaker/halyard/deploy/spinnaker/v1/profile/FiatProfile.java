@@ -23,7 +23,9 @@ import com.netflix.spinnaker.halyard.deploy.spinnaker.v1.SpinnakerEndpoints;
 import lombok.Data;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 @Component
 public class FiatProfile extends SpringProfile {
@@ -32,13 +34,20 @@ public class FiatProfile extends SpringProfile {
     return SpinnakerArtifact.FIAT;
   }
 
+  @Override
+  public List<Object> getConfigInputs(DeploymentConfiguration deploymentConfiguration) {
+    List<Object> inputs = new ArrayList<>(super.getConfigInputs(deploymentConfiguration));
+    inputs.add(deploymentConfiguration.getSecurity());
+    return inputs;
+  }
+
   @Override
   public ProfileConfig generateFullConfig(ProfileConfig config, DeploymentConfiguration deploymentConfiguration, SpinnakerEndpoints endpoints) {
     config = super.generateFullConfig(config, deploymentConfiguration, endpoints);
     Authz authz = deploymentConfiguration.getSecurity().getAuthz();
-    List<String> files = processRequiredFiles(authz);
+    Map<String, String> files = processRequiredFiles(authz);
     AuthConfig authConfig = new AuthConfig().setAuth(authz);
-    return config.extendConfig(config.getPrimaryConfigFile(), yamlToString(authConfig)).setRequiredFiles(files);
+    return config.extendConfig(config.getPrimaryConfigFile(), yamlToString(authConfig, files)).setRequiredFiles(new ArrayList<>(files.values()));
   }
 
   @Data
@@ -27,6 +27,10 @@ import lombok.Data;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
 @Component
 public class Front50Profile extends SpringProfile {
   @Autowired
@@ -37,6 +41,14 @@ public class Front50Profile extends SpringProfile {
     return SpinnakerArtifact.FRONT50;
   }
 
+  @Override
+  public List<Object> getConfigInputs(DeploymentConfiguration deploymentConfiguration) {
+    List<Object> inputs = new ArrayList<>(super.getConfigInputs(deploymentConfiguration));
+    inputs.add(deploymentConfiguration.getPersistentStorage());
+    inputs.add(deploymentConfiguration.getProviders());
+    return inputs;
+  }
+
   @Override
   public ProfileConfig generateFullConfig(ProfileConfig config, DeploymentConfiguration deploymentConfiguration, SpinnakerEndpoints endpoints) {
     config = super.generateFullConfig(config, deploymentConfiguration, endpoints);
@@ -50,8 +62,9 @@ public class Front50Profile extends SpringProfile {
 
     if (account instanceof CommonGoogleAccount) {
       credentials.getSpinnaker().setGcs(new Front50Credentials.Spinnaker.GCS(storage, (CommonGoogleAccount) account));
-      config.setRequiredFiles(processRequiredFiles(account));
-      config.extendConfig(config.getPrimaryConfigFile(), yamlToString(credentials));
+      Map<String, String> files = processRequiredFiles(account);
+      config.setRequiredFiles(new ArrayList<>(files.values()));
+      config.extendConfig(config.getPrimaryConfigFile(), yamlToString(credentials, files));
       return config;
     } else {
       throw new RuntimeException("Validation failure: GCE or Appengine account name expected in PersistentStorage configuration.");
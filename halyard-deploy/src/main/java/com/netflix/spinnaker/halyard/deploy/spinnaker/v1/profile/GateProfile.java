@@ -26,6 +26,9 @@ import lombok.Data;
 import lombok.EqualsAndHashCode;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Component
 public class GateProfile extends SpringProfile {
   @Override
@@ -33,6 +36,13 @@ public class GateProfile extends SpringProfile {
     return SpinnakerArtifact.GATE;
   }
 
+  @Override
+  public List<Object> getConfigInputs(DeploymentConfiguration deploymentConfiguration) {
+    List<Object> inputs = new ArrayList<>(super.getConfigInputs(deploymentConfiguration));
+    inputs.add(deploymentConfiguration.getSecurity());
+    return inputs;
+  }
+
   @Override
   public ProfileConfig generateFullConfig(ProfileConfig config, DeploymentConfiguration deploymentConfiguration, SpinnakerEndpoints endpoints) {
     config = super.generateFullConfig(config, deploymentConfiguration, endpoints);
@@ -23,7 +23,9 @@ import com.netflix.spinnaker.halyard.deploy.spinnaker.v1.SpinnakerArtifact;
 import com.netflix.spinnaker.halyard.deploy.spinnaker.v1.SpinnakerEndpoints;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 @Component
 public class IgorProfile extends SpringProfile {
@@ -32,6 +34,14 @@ public class IgorProfile extends SpringProfile {
     return SpinnakerArtifact.IGOR;
   }
 
+  @Override
+  public List<Object> getConfigInputs(DeploymentConfiguration deploymentConfiguration) {
+    List<Object> inputs = new ArrayList<>(super.getConfigInputs(deploymentConfiguration));
+    inputs.add(deploymentConfiguration.getProviders());
+    inputs.add(deploymentConfiguration.getWebhooks());
+    return inputs;
+  }
+
   @Override
   public ProfileConfig generateFullConfig(ProfileConfig config, DeploymentConfiguration deploymentConfiguration, SpinnakerEndpoints endpoints) {
     config = super.generateFullConfig(config, deploymentConfiguration, endpoints);
@@ -41,7 +51,7 @@ public class IgorProfile extends SpringProfile {
     }
 
     Webhooks webhooks = deploymentConfiguration.getWebhooks();
-    List<String> files = processRequiredFiles(webhooks);
-    return config.extendConfig(config.getPrimaryConfigFile(), yamlToString(webhooks)).setRequiredFiles(files);
+    Map<String, String> files = processRequiredFiles(webhooks);
+    return config.extendConfig(config.getPrimaryConfigFile(), yamlToString(webhooks, files)).setRequiredFiles(new ArrayList<>(files.values()));
   }
 }
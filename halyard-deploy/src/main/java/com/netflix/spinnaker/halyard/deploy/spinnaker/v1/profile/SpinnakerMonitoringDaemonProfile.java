@@ -34,6 +34,7 @@ import org.springframework.stereotype.Component;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 @EqualsAndHashCode(callSuper = true)
@@ -52,6 +53,11 @@ public class SpinnakerMonitoringDaemonProfile extends SpinnakerProfile {
     return SpinnakerArtifact.SPINNAKER_MONITORING_DAEMON;
   }
 
+  @Override
+  public List<Object> getConfigInputs(DeploymentConfiguration deploymentConfiguration) {
+    return Collections.singletonList(deploymentConfiguration.getMetricStores());
+  }
+
   @Override
   protected ProfileConfig generateFullConfig(ProfileConfig config, DeploymentConfiguration deploymentConfiguration, SpinnakerEndpoints endpoints) {
     String primaryConfig = config.getPrimaryConfigFile();
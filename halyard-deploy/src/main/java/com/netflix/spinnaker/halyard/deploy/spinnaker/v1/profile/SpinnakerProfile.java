@@ -24,8 +24,8 @@ import com.netflix.spinnaker.halyard.config.model.v1.node.Node;
 import com.netflix.spinnaker.halyard.config.problem.v1.ConfigProblemBuilder;
 import com.netflix.spinnaker.halyard.config.services.v1.DeploymentService;
 import com.netflix.spinnaker.halyard.core.error.v1.HalException;
-import com.netflix.spinnaker.halyard.core.problem.v1.ProblemBuilder;
 import com.netflix.spinnaker.halyard.core.registry.v1.ProfileRegistry;
+import com.netflix.spinnaker.halyard.deploy.config.v1.DependencyStore;
 import com.netflix.spinnaker.halyard.deploy.services.v1.ArtifactService;
 import com.netflix.spinnaker.halyard.deploy.spinnaker.v1.SpinnakerArtifact;
 import com.netflix.spinnaker.halyard.deploy.spinnaker.v1.SpinnakerEndpoints;
@@ -33,20 +33,12 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.yaml.snakeyaml.Yaml;
 import retrofit.RetrofitError;
 
-import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
-import java.util.function.Consumer;
-import java.util.stream.Collectors;
 
 import static com.netflix.spinnaker.halyard.core.problem.v1.Problem.Severity.FATAL;
-import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
 
 /**
  * A profile is a specialization of an artifact by means of feature flipping in .js and .yml
@@ -62,9 +54,6 @@ abstract public class SpinnakerProfile {
   @Autowired
   ObjectMapper objectMapper;
 
-  @Autowired
-  String spinnakerOutputDependencyPath;
-
   @Autowired
   DeploymentService deploymentService;
 
@@ -74,6 +63,9 @@ abstract public class SpinnakerProfile {
   @Autowired
   ArtifactService artifactService;
 
+  @Autowired
+  DependencyStore dependencyStore;
+
   final String EDIT_WARNING =
       commentPrefix() + "WARNING\n" +
       commentPrefix() + "This file was autogenerated, and _will_ be overwritten by Halyard.\n" +
@@ -110,6 +102,19 @@ abstract public class SpinnakerProfile {
     return config;
   }
 
+  /**
+   * Overwrite this alongside generateFullConfig to narrow what a change to the halconfig regenerates.
+   * Every part of the deployment configuration that generateFullConfig reads must be listed, since a
+   * profile whose inputs (together with its artifact version and the endpoints) are unchanged is
+   * not regenerated.
+   *
+   * @param deploymentConfiguration the deployment configuration being translated into Spinnaker config.
+   * @return the nodes and values this profile's config is derived from.
+   */
+  public List<Object> getConfigInputs(DeploymentConfiguration deploymentConfiguration) {
+    return Collections.singletonList(deploymentConfiguration);
+  }
+
   /**
    * @return the base config (typically found in a profile's ./halconfig/ directory) for
    * the version of the profile specified by the Spinnaker version in the loaded halconfig.
@@ -133,46 +138,36 @@ abstract public class SpinnakerProfile {
   }
 
   /**
+   * Stages the files required by the node. The node keeps pointing at the original files; use
+   * yamlToString(Object, Map) to serialize it with the staged paths instead.
+   *
    * @param node is the node to find required files in.
-   * @return the list of files required by the node to function.
+   * @return a mapping from each file required by the node to function, to the path it was staged at.
    */
-  List<String> processRequiredFiles(Node node) {
-    List<String> files = new ArrayList<>();
-
-    Consumer<Node> fileFinder = n -> files.addAll(n.localFiles().stream().map(f -> {
-      try {
-        f.setAccessible(true);
-        String fPath = (String) f.get(n);
-        if (fPath == null) {
-          return null;
-        }
-
-        File fFile = new File(fPath);
-        String fName = fFile.getName();
-
-        // Hash the path to uniquely flatten all files into the output directory
-        Path newName = Paths.get(spinnakerOutputDependencyPath, Math.abs(fPath.hashCode()) + "-" + fName);
-        File parent = newName.toFile().getParentFile();
-        if (!parent.exists()) {
-          parent.mkdirs();
-        } else if (fFile.getParent().equals(parent.toString())) {
-          // Don't move paths that are already in the right folder
-          return fPath;
-        }
-        Files.copy(Paths.get(fPath), newName, REPLACE_EXISTING);
-
-        f.set(n, newName.toString());
-        return newName.toString();
-      } catch (IllegalAccessException e) {
-        throw new RuntimeException("Failed to get local files for node " + n.getNodeName(), e);
-      } catch (IOException e) {
-        throw new HalException(new ProblemBuilder(FATAL, "Failed to backup user file: " + e.getMessage()).build());
-      } finally {
-        f.setAccessible(false);
-      }
-    }).filter(Objects::nonNull).collect(Collectors.toList()));
-    node.recursiveConsume(fileFinder);
-
-    return files;
+  Map<String, String> processRequiredFiles(Node node) {
+    return dependencyStore.stage(node);
+  }
+
+  /**
+   * Serializes o, replacing any value that is the path of a staged file with the path it was staged at.
+   */
+  String yamlToString(Object o, Map<String, String> stagedFiles) {
+    return yamlParser.dump(replaceStagedPaths(objectMapper.convertValue(o, Map.class), stagedFiles));
+  }
+
+  private static Object replaceStagedPaths(Object value, Map<String, String> stagedFiles) {
+    if (value instanceof Map) {
+      Map<Object, Object> map = (Map<Object, Object>) value;
+      map.replaceAll((k, v) -> replaceStagedPaths(v, stagedFiles));
+      return map;
+    } else if (value instanceof List) {
+      List<Object> list = (List<Object>) value;
+      list.replaceAll(v -> replaceStagedPaths(v, stagedFiles));
+      return list;
+    } else if (value instanceof String) {
+      return stagedFiles.getOrDefault(value, (String) value);
+    } else {
+      return value;
+    }
   }
 }
@@ -21,6 +21,9 @@ import com.netflix.spinnaker.halyard.deploy.spinnaker.v1.SpinnakerEndpoints;
 import com.netflix.spinnaker.halyard.deploy.spinnaker.v1.service.SpinnakerService;
 import lombok.Data;
 
+import java.util.Collections;
+import java.util.List;
+
 abstract public class SpringProfile extends SpinnakerProfile {
   @Override
   public String getProfileFileName() {
@@ -36,6 +39,11 @@ abstract public class SpringProfile extends SpinnakerProfile {
     return null;
   }
 
+  @Override
+  public List<Object> getConfigInputs(DeploymentConfiguration deploymentConfiguration) {
+    return Collections.singletonList(deploymentConfiguration.getMetricStores());
+  }
+
   @Override
   public ProfileConfig generateFullConfig(ProfileConfig config, DeploymentConfiguration deploymentConfiguration, SpinnakerEndpoints endpoints) {
     SpectatorConfig spectatorConfig = new SpectatorConfig();
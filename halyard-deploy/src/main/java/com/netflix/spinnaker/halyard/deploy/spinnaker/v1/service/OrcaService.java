@@ -21,6 +21,7 @@ package com.netflix.spinnaker.halyard.deploy.spinnaker.v1.service;
 import com.netflix.spinnaker.halyard.deploy.spinnaker.v1.SpinnakerArtifact;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
+import retrofit.client.Response;
 import retrofit.http.*;
 
 import java.util.Map;
@@ -55,8 +56,10 @@ public class OrcaService extends SpinnakerService<OrcaService.Orca> {
     @POST("/orchestrate")
     Map<String, String> orchestrate(@Body Map pipeline);
 
+    // Streamed, so the (potentially large) execution can be deserialized straight from the response body.
+    @Streaming
     @GET("/{id}")
-    Map<String, Object> getRef(@Path(encode = false, value = "id") String id);
+    Response getRef(@Path(encode = false, value = "id") String id);
 
     @GET("/executions/activeByInstance")
     Map<String, ActiveExecutions> getActiveExecutions();
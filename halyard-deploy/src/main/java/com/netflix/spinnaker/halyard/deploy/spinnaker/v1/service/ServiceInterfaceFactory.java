@@ -20,6 +20,7 @@ package com.netflix.spinnaker.halyard.deploy.spinnaker.v1.service;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import retrofit.RestAdapter;
+import retrofit.client.Client;
 import retrofit.client.OkClient;
 
 @Component
@@ -31,9 +32,13 @@ public class ServiceInterfaceFactory {
   RestAdapter.LogLevel retrofitLogLevel;
 
   public <T> T createService(String endpoint, SpinnakerService<T> service) {
+    return createService(endpoint, service, okClient);
+  }
+
+  public <T> T createService(String endpoint, SpinnakerService<T> service, Client client) {
     Class<T> clazz = service.getEndpointClass();
     return new RestAdapter.Builder()
-        .setClient(okClient)
+        .setClient(client)
         .setLogLevel(retrofitLogLevel)
         .setEndpoint(endpoint)
         .build()
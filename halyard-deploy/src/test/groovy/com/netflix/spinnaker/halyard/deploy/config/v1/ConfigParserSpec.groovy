@@ -0,0 +1,87 @@
+/*
+ * Copyright 2017 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.halyard.deploy.config.v1
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import org.yaml.snakeyaml.Yaml
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.attribute.FileTime
+
+class ConfigParserSpec extends Specification {
+  static final FileTime LONG_AGO = FileTime.fromMillis(1000000000000L)
+
+  ConfigParser configParser
+  Path file
+
+  void setup() {
+    configParser = new ConfigParser()
+    configParser.yamlParser = new Yaml()
+    configParser.objectMapper = new ObjectMapper()
+    file = Files.createTempDirectory("config-parser").resolve("profile.yml")
+  }
+
+  void "leaves a file with identical contents untouched"() {
+    setup:
+    file.text = "server:\n  port: 8080\n"
+    Files.setLastModifiedTime(file, LONG_AGO)
+
+    when:
+    boolean written = configParser.atomicWriteIfChanged(file, "server:\n  port: 8080\n")
+
+    then:
+    !written
+    Files.getLastModifiedTime(file) == LONG_AGO
+  }
+
+  void "rewrites a file of the same size with different contents"() {
+    setup:
+    file.text = "server:\n  port: 8080\n"
+    Files.setLastModifiedTime(file, LONG_AGO)
+
+    when:
+    boolean written = configParser.atomicWriteIfChanged(file, "server:\n  port: 9090\n")
+
+    then:
+    written
+    file.text == "server:\n  port: 9090\n"
+    Files.getLastModifiedTime(file) != LONG_AGO
+  }
+
+  void "rewrites a file of a different size"() {
+    setup:
+    file.text = "server:\n  port: 8080\n"
+
+    when:
+    boolean written = configParser.atomicWriteIfChanged(file, "server:\n  port: 8080\n  address: 0.0.0.0\n")
+
+    then:
+    written
+    file.text == "server:\n  port: 8080\n  address: 0.0.0.0\n"
+  }
+
+  void "writes a file that doesn't exist yet"() {
+    when:
+    boolean written = configParser.atomicWriteIfChanged(file, "contents")
+
+    then:
+    written
+    file.text == "contents"
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2017 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.halyard.deploy.config.v1
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.netflix.spinnaker.halyard.config.model.v1.providers.kubernetes.KubernetesAccount
+import org.yaml.snakeyaml.Yaml
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.nio.file.Path
+
+class DependencyStoreSpec extends Specification {
+  Path inputDir
+  Path dependencyDir
+  DependencyStore store
+
+  void setup() {
+    inputDir = Files.createTempDirectory("input")
+    dependencyDir = Files.createTempDirectory("dependency")
+
+    ConfigParser configParser = new ConfigParser()
+    configParser.yamlParser = new Yaml()
+    configParser.objectMapper = new ObjectMapper()
+
+    store = new DependencyStore()
+    store.spinnakerOutputDependencyPath = dependencyDir.toString()
+    store.configParser = configParser
+  }
+
+  KubernetesAccount accountWithKubeconfig(String name, String contents) {
+    Path kubeconfig = inputDir.resolve(name)
+    kubeconfig.toFile().text = contents
+    KubernetesAccount account = new KubernetesAccount()
+    account.kubeconfigFile = kubeconfig.toString()
+    return account
+  }
+
+  void "stages files by content without modifying the node"() {
+    setup:
+    KubernetesAccount account = accountWithKubeconfig("config", "contents")
+    String original = account.kubeconfigFile
+
+    when:
+    Map<String, String> staged = store.stage(account)
+
+    then:
+    account.kubeconfigFile == original
+    staged.size() == 1
+    new File(staged[original]).parentFile.toPath() == dependencyDir
+    new File(staged[original]).text == "contents"
+  }
+
+  void "identical contents share a staged file and different contents don't collide"() {
+    setup:
+    KubernetesAccount a = accountWithKubeconfig("a", "same")
+    KubernetesAccount b = accountWithKubeconfig("b", "same")
+    KubernetesAccount c = accountWithKubeconfig("c", "different")
+
+    when:
+    String stagedA = store.stage(a)[a.kubeconfigFile]
+    String stagedB = store.stage(b)[b.kubeconfigFile]
+    String stagedC = store.stage(c)[c.kubeconfigFile]
+
+    then:
+    stagedA == stagedB
+    stagedA != stagedC
+  }
+
+  void "restages a file whose contents changed"() {
+    setup:
+    KubernetesAccount account = accountWithKubeconfig("config", "old")
+    String first = store.stage(account)[account.kubeconfigFile]
+
+    when:
+    new File(account.kubeconfigFile).text = "new contents"
+    String second = store.stage(account)[account.kubeconfigFile]
+
+    then:
+    first != second
+    new File(second).text == "new contents"
+  }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2017 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.halyard.deploy.deployment.v1
+
+import com.netflix.spinnaker.halyard.core.error.v1.HalException
+import com.netflix.spinnaker.halyard.core.tasks.v1.DaemonStage
+import com.netflix.spinnaker.halyard.core.tasks.v1.DaemonTask
+import com.netflix.spinnaker.halyard.core.tasks.v1.DaemonTaskHandler
+import spock.lang.Specification
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.atomic.AtomicInteger
+
+class ServiceDependencyGraphSpec extends Specification {
+  void "rolls out services after their dependencies"() {
+    setup:
+    def graph = new ServiceDependencyGraph()
+        .add("a")
+        .add("b", "a")
+        .add("c", "a")
+        .add("d", "b", "c", "disabled")
+    def finished = new CopyOnWriteArrayList<String>()
+    def started = new ConcurrentHashMap<String, List<String>>()
+
+    when:
+    graph.run(4, null) { s ->
+      started.put(s, new ArrayList<>(finished))
+      finished.add(s)
+    }
+
+    then:
+    finished.size() == 4
+    started["b"].contains("a")
+    started["c"].contains("a")
+    started["d"].containsAll(["b", "c"])
+  }
+
+  void "never exceeds the parallelism limit"() {
+    setup:
+    def graph = new ServiceDependencyGraph()
+    (1..6).each { graph.add("s" + it) }
+    def active = new AtomicInteger()
+    def peak = new AtomicInteger()
+
+    when:
+    graph.run(2, null) { s ->
+      peak.accumulateAndGet(active.incrementAndGet(), { a, b -> Math.max(a, b) })
+      Thread.sleep(20)
+      active.decrementAndGet()
+    }
+
+    then:
+    peak.get() <= 2
+  }
+
+  void "does not start dependents of a failed service"() {
+    setup:
+    def graph = new ServiceDependencyGraph()
+        .add("a")
+        .add("b", "a")
+    def ran = new CopyOnWriteArrayList<String>()
+
+    when:
+    graph.run(2, null) { s ->
+      ran.add(s)
+      if (s == "a") {
+        throw new IllegalStateException("boom")
+      }
+    }
+
+    then:
+    IllegalStateException e = thrown()
+    e.message == "boom"
+    ran == ["a"]
+  }
+
+  void "logs each rollout to its own stage as it happens"() {
+    setup:
+    def task = new DaemonTask()
+    task.newStage("Deploying")
+    DaemonTaskHandler.setTask(task)
+    def graph = new ServiceDependencyGraph()
+        .add("a")
+        .add("b")
+    def contexts = new CopyOnWriteArrayList<Object>()
+    def loggedBeforeFinishing = new CopyOnWriteArrayList<String>()
+
+    when:
+    graph.run(2, "halconfig") { s ->
+      contexts.add(DaemonTaskHandler.getContext())
+      DaemonTaskHandler.log("Deploying " + s)
+      synchronized (task) {
+        if (task.stages.find { it.name == "Rolling out " + s }.events*.message.contains("Deploying " + s)) {
+          loggedBeforeFinishing.add(s)
+        }
+      }
+    }
+
+    then:
+    contexts == ["halconfig", "halconfig"]
+    loggedBeforeFinishing.sort() == ["a", "b"]
+    task.stages*.name == ["Deploying", "Rolling out a", "Rolling out b"]
+    task.stages[1].events*.message == ["Deploying a", "Rolled out a in 0s"]
+    task.stages[2].events*.message == ["Deploying b", "Rolled out b in 0s"]
+    task.stages[1..2].every { it.state == DaemonStage.State.INACTIVE }
+    task.stages[0].state == DaemonStage.State.ACTIVE
+
+    cleanup:
+    DaemonTaskHandler.setTask(null)
+  }
+
+  void "rejects cyclic dependencies"() {
+    setup:
+    def graph = new ServiceDependencyGraph()
+        .add("a", "b")
+        .add("b", "a")
+
+    when:
+    graph.topologicalOrder()
+
+    then:
+    thrown(HalException)
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2017 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.halyard.deploy.provider.v1
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.netflix.spinnaker.halyard.deploy.spinnaker.v1.service.OrcaService
+import com.netflix.spinnaker.halyard.deploy.spinnaker.v1.service.SpringHealth
+import retrofit.client.Response
+import retrofit.mime.TypedByteArray
+
+/**
+ * An in-memory orca that plays back a scripted sequence of execution states, one per poll. The last state is
+ * repeated once the script runs out.
+ */
+class FakeOrca implements OrcaService.Orca {
+  ObjectMapper objectMapper = new ObjectMapper()
+  List<Map> executions = []
+  List<Long> pollTimes = []
+  List<String> pollThreads = []
+  int polls = 0
+  long pollDelayMillis = 0
+
+  /**
+   * Adds a pipeline execution state to the script.
+   * @param status is the pipeline's status.
+   * @param stages maps stage id -> list of task statuses in that stage.
+   */
+  FakeOrca then(String status, Map<String, List<String>> stages) {
+    executions.add([
+        status: status,
+        stages: stages.collect { id, tasks ->
+          [id: id, type: id, status: status, tasks: tasks.withIndex().collect { s, i -> [id: "$i", name: "${id}Task$i", status: s] }]
+        }
+    ])
+    return this
+  }
+
+  @Override
+  Map<String, String> submitTask(Map task) {
+    return [ref: "/tasks/fake"]
+  }
+
+  @Override
+  Map<String, String> orchestrate(Map pipeline) {
+    return [ref: "/pipelines/fake"]
+  }
+
+  @Override
+  Response getRef(String id) {
+    pollTimes.add(System.currentTimeMillis())
+    pollThreads.add(Thread.currentThread().name)
+    sleep(pollDelayMillis)
+    Map execution = executions[Math.min(polls++, executions.size() - 1)]
+    Map body = id.startsWith("tasks") ? [execution: execution] : execution
+    return new Response("http://orca/$id", 200, "OK", [], new TypedByteArray("application/json", objectMapper.writeValueAsBytes(body)))
+  }
+
+  @Override
+  Map<String, OrcaService.Orca.ActiveExecutions> getActiveExecutions() {
+    return [:]
+  }
+
+  @Override
+  Map<String, String> resolvedEnv() {
+    return [:]
+  }
+
+  @Override
+  SpringHealth health() {
+    return null
+  }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2017 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.halyard.deploy.provider.v1
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.netflix.spinnaker.halyard.core.error.v1.HalException
+import com.netflix.spinnaker.halyard.core.tasks.v1.DaemonTaskHandler
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+class OrcaRunnerSpec extends Specification {
+  OrcaRunner runner
+
+  void setup() {
+    runner = new OrcaRunner()
+    runner.objectMapper = new ObjectMapper()
+    runner.minPollMillis = 10
+    runner.maxPollMillis = 80
+  }
+
+  List<String> monitor(FakeOrca orca) {
+    List<String> events = []
+    DaemonTaskHandler.runDetached(null, events, {
+      runner.monitorPipeline({ orca.orchestrate([:]).get("ref") }, orca)
+      return null
+    })
+    return events
+  }
+
+  void "logs each task once, in order"() {
+    setup:
+    FakeOrca orca = new FakeOrca()
+        .then("RUNNING", [deploy: ["RUNNING", "NOT_STARTED"]])
+        .then("RUNNING", [deploy: ["SUCCEEDED", "RUNNING"]])
+        .then("RUNNING", [deploy: ["SUCCEEDED", "RUNNING"]])
+        .then("SUCCEEDED", [deploy: ["SUCCEEDED", "SUCCEEDED"]])
+
+    when:
+    List<String> events = monitor(orca)
+
+    then:
+    events == ["Deploy task0", "Deploy task1"]
+    orca.polls == 4
+  }
+
+  void "only logs tasks that are running or succeeded"() {
+    setup:
+    FakeOrca orca = new FakeOrca()
+        .then("RUNNING", [deploy: ["SKIPPED", "RUNNING", "NOT_STARTED"]])
+        .then("RUNNING", [deploy: ["SKIPPED", "FAILED_CONTINUE", "RUNNING"]])
+        .then("SUCCEEDED", [deploy: ["SKIPPED", "FAILED_CONTINUE", "SUCCEEDED"]])
+
+    when:
+    List<String> events = monitor(orca)
+
+    then:
+    events == ["Deploy task1", "Deploy task2"]
+  }
+
+  void "backs off while nothing changes, and resets once something does"() {
+    setup:
+    FakeOrca orca = new FakeOrca()
+    orca.then("RUNNING", [deploy: ["RUNNING", "NOT_STARTED"]])
+    5.times { orca.then("RUNNING", [deploy: ["RUNNING", "NOT_STARTED"]]) }
+    orca.then("RUNNING", [deploy: ["SUCCEEDED", "RUNNING"]])
+    orca.then("SUCCEEDED", [deploy: ["SUCCEEDED", "SUCCEEDED"]])
+
+    when:
+    monitor(orca)
+    List<Long> gaps = (1..<orca.pollTimes.size()).collect { orca.pollTimes[it] - orca.pollTimes[it - 1] }
+
+    then:
+    gaps[4] > gaps[0]
+    gaps[4] <= runner.maxPollMillis + 50
+    gaps[6] < gaps[5]
+  }
+
+  void "monitors many executions from a small pool of threads"() {
+    setup:
+    runner.pollThreads = 2
+    List<FakeOrca> orcas = (1..5).collect {
+      new FakeOrca()
+          .then("RUNNING", [deploy: ["RUNNING"]])
+          .then("SUCCEEDED", [deploy: ["SUCCEEDED"]])
+    }
+
+    when:
+    def futures = orcas.collect { o -> runner.watchPipeline({ o.orchestrate([:]).get("ref") }, o) }
+    futures.each { it.get() }
+
+    then:
+    orcas.every { it.polls == 2 }
+    orcas.collectMany { it.pollThreads }.unique() == ["orca-poll"]
+  }
+
+  void "keeps polling other executions while one orca is slow to answer"() {
+    setup:
+    FakeOrca slow = new FakeOrca()
+        .then("RUNNING", [deploy: ["RUNNING"]])
+        .then("SUCCEEDED", [deploy: ["SUCCEEDED"]])
+    slow.pollDelayMillis = 1000
+    FakeOrca fast = new FakeOrca()
+        .then("RUNNING", [deploy: ["RUNNING"]])
+        .then("SUCCEEDED", [deploy: ["SUCCEEDED"]])
+
+    when:
+    def slowResult = runner.watchPipeline({ slow.orchestrate([:]).get("ref") }, slow)
+    runner.watchPipeline({ fast.orchestrate([:]).get("ref") }, fast).get()
+
+    then:
+    !slowResult.isDone()
+    slow.pollTimes.size() == 1
+
+    when:
+    slowResult.get()
+
+    then:
+    slow.polls == 2
+  }
+
+  void "stops ticking once there's nothing left to monitor"() {
+    setup:
+    PollingConditions conditions = new PollingConditions(timeout: 5)
+    FakeOrca orca = new FakeOrca()
+        .then("RUNNING", [deploy: ["RUNNING"]])
+        .then("SUCCEEDED", [deploy: ["SUCCEEDED"]])
+
+    when:
+    runner.watchPipeline({ orca.orchestrate([:]).get("ref") }, orca).get()
+
+    then:
+    conditions.eventually {
+      assert runner.ticker == null
+    }
+
+    when:
+    runner.watchPipeline({ orca.orchestrate([:]).get("ref") }, orca).get()
+
+    then:
+    orca.polls == 3
+    conditions.eventually {
+      assert runner.ticker == null
+    }
+  }
+
+  void "fails with the execution's error"() {
+    setup:
+    FakeOrca orca = new FakeOrca()
+    orca.executions.add([
+        status: "TERMINAL",
+        stages: [[id: "deploy", type: "deploy", status: "TERMINAL", tasks: [], context: [exception: [details: [error: "boom", errors: ["bad image"]]]]]]
+    ])
+
+    when:
+    monitor(orca)
+
+    then:
+    HalException e = thrown()
+    e.problems.problems[0].message.contains("bad image")
+  }
+}
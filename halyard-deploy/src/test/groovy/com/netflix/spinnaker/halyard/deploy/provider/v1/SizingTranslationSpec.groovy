@@ -0,0 +1,149 @@
+/*
+ * Copyright 2017 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.halyard.deploy.provider.v1
+
+import com.netflix.spinnaker.halyard.config.model.v1.node.DeploymentEnvironment
+import com.netflix.spinnaker.halyard.core.error.v1.HalException
+import com.netflix.spinnaker.halyard.deploy.spinnaker.v1.service.ClouddriverService
+import com.netflix.spinnaker.halyard.deploy.spinnaker.v1.service.RedisService
+import com.netflix.spinnaker.halyard.deploy.spinnaker.v1.service.SpinnakerService
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class SizingTranslationSpec extends Specification {
+  @Unroll
+  void "converts #quantity to #expected mebibytes"() {
+    expect:
+    SizingTranslation.toMebibytes(quantity) == expected
+
+    where:
+    quantity     | expected
+    "2048Mi"     | 2048
+    "2Gi"        | 2048
+    "1.5Gi"      | 1536
+    "1048576Ki"  | 1024
+    "1G"         | 953
+    "1073741824" | 1024
+  }
+
+  void "rejects unrecognized quantities"() {
+    when:
+    SizingTranslation.toMebibytes("2 gigs")
+
+    then:
+    thrown(HalException)
+  }
+
+  @Unroll
+  void "converts #quantity to #expected millicores"() {
+    expect:
+    SizingTranslation.toMillicores(quantity) == expected
+
+    where:
+    quantity | expected
+    "250m"   | 250
+    "1"      | 1000
+    "1.5"    | 1500
+  }
+
+  SizingTranslation sizingTranslation = new SizingTranslation() {
+    @Override
+    protected SizingTranslation.ServiceSize getDefaultServiceSize(DeploymentEnvironment.Size size, SpinnakerService service) {
+      return new SizingTranslation.ServiceSize(cpu: "1", ram: "1Gi", cpuLimit: "1", ramLimit: "1Gi")
+    }
+  }
+
+  DeploymentEnvironment environment(String service, DeploymentEnvironment.CustomSizing sizing) {
+    DeploymentEnvironment environment = new DeploymentEnvironment()
+    environment.customSizing.put(service, sizing)
+    return environment
+  }
+
+  void "runs a single replica by default"() {
+    when:
+    def size = sizingTranslation.getServiceSize(new DeploymentEnvironment(), new ClouddriverService())
+
+    then:
+    size.replicas == 1
+    size.autoscaling == null
+  }
+
+  void "starts autoscaled services within their bounds"() {
+    setup:
+    def autoscaling = new DeploymentEnvironment.CustomSizing.Autoscaling(minReplicas: 2, maxReplicas: 4)
+    def sizing = new DeploymentEnvironment.CustomSizing(replicas: replicas, autoscaling: autoscaling)
+
+    when:
+    def size = sizingTranslation.getServiceSize(environment("clouddriver", sizing), new ClouddriverService())
+
+    then:
+    size.replicas == expected
+    size.autoscaling == autoscaling
+
+    where:
+    replicas | expected
+    null     | 2
+    3        | 3
+    10       | 4
+  }
+
+  void "rejects invalid scaling"() {
+    when:
+    sizingTranslation.getServiceSize(environment(service.artifact.name, sizing), service)
+
+    then:
+    thrown(HalException)
+
+    where:
+    service                  | sizing
+    new ClouddriverService() | new DeploymentEnvironment.CustomSizing(replicas: 0)
+    new ClouddriverService() | new DeploymentEnvironment.CustomSizing(autoscaling: new DeploymentEnvironment.CustomSizing.Autoscaling(minReplicas: 3, maxReplicas: 2))
+    new RedisService()       | new DeploymentEnvironment.CustomSizing(replicas: 2)
+  }
+
+  void "rejects requests above their limit, naming the service"() {
+    setup:
+    def sizing = new DeploymentEnvironment.CustomSizing(requests: requests, limits: limits)
+
+    when:
+    sizingTranslation.getServiceSize(environment("clouddriver", sizing), new ClouddriverService())
+
+    then:
+    HalException e = thrown()
+    e.problems.problems[0].message.contains("clouddriver")
+
+    where:
+    requests                                                        | limits
+    new DeploymentEnvironment.CustomSizing.Resources(memory: "2Gi") | null
+    new DeploymentEnvironment.CustomSizing.Resources(cpu: "2")      | null
+    null                                                            | new DeploymentEnvironment.CustomSizing.Resources(cpu: "500m")
+  }
+
+  void "accepts requests raised along with their limits"() {
+    setup:
+    def sizing = new DeploymentEnvironment.CustomSizing(
+        requests: new DeploymentEnvironment.CustomSizing.Resources(memory: "2Gi"),
+        limits: new DeploymentEnvironment.CustomSizing.Resources(memory: "2Gi"))
+
+    when:
+    def size = sizingTranslation.getServiceSize(environment("clouddriver", sizing), new ClouddriverService())
+
+    then:
+    size.ram == "2Gi"
+    size.ramLimit == "2Gi"
+  }
+}
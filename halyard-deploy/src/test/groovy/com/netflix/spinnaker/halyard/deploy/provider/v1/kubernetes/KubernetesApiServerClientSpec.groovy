@@ -0,0 +1,131 @@
+/*
+ * Copyright 2017 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.halyard.deploy.provider.v1.kubernetes
+
+import okhttp3.Interceptor
+import okhttp3.MediaType
+import okhttp3.OkHttpClient
+import okhttp3.Protocol
+import okhttp3.ResponseBody
+import okio.Buffer
+import retrofit.client.Header
+import retrofit.client.Request
+import retrofit.mime.TypedString
+import spock.lang.Specification
+
+class KubernetesApiServerClientSpec extends Specification {
+  static final String URL = "https://apiserver/api/v1/proxy/namespaces/spinnaker/services/spin-orca:8083/ops"
+  static final MediaType JSON = MediaType.parse("application/json")
+
+  okhttp3.Request sent
+  String sentBody
+  ResponseBody reply
+
+  KubernetesApiServerClient client
+
+  void setup() {
+    // Answers every call in place of the apiserver, recording what was sent.
+    Interceptor apiserver = { Interceptor.Chain chain ->
+      sent = chain.request()
+      if (sent.body() != null) {
+        Buffer buffer = new Buffer()
+        sent.body().writeTo(buffer)
+        sentBody = buffer.readUtf8()
+      }
+
+      return new okhttp3.Response.Builder()
+          .request(sent)
+          .protocol(Protocol.HTTP_1_1)
+          .code(200)
+          .message("OK")
+          .header("X-Served-By", "apiserver")
+          .body(reply)
+          .build()
+    } as Interceptor
+
+    client = new KubernetesApiServerClient(new OkHttpClient.Builder().addInterceptor(apiserver).build())
+  }
+
+  void "passes headers and the body through to the apiserver"() {
+    setup:
+    reply = ResponseBody.create(JSON, "{}")
+    def headers = [new Header("X-Spinnaker-User", "hal"), new Header("X-Empty", null)]
+
+    when:
+    def response = client.execute(new Request("POST", URL, headers, new TypedString('{"type":"deploy"}')))
+
+    then:
+    sent.method() == "POST"
+    sent.url().toString() == URL
+    sent.header("X-Spinnaker-User") == "hal"
+    sent.header("X-Empty") == ""
+    sent.body().contentType().toString().startsWith("text/plain")
+    sentBody == '{"type":"deploy"}'
+
+    response.status == 200
+    response.url == URL
+    response.headers.find { it.name == "X-Served-By" }.value == "apiserver"
+  }
+
+  void "sends an empty body on a POST without one"() {
+    setup:
+    reply = ResponseBody.create(JSON, "{}")
+
+    when:
+    client.execute(new Request("POST", URL, [], null))
+
+    then:
+    sent.body().contentLength() == 0
+    sentBody == ""
+  }
+
+  void "sends no body on a GET"() {
+    setup:
+    reply = ResponseBody.create(JSON, "{}")
+
+    when:
+    client.execute(new Request("GET", URL, [], null))
+
+    then:
+    sent.body() == null
+  }
+
+  void "returns no body for an empty response"() {
+    setup:
+    reply = ResponseBody.create(JSON, "")
+
+    when:
+    def response = client.execute(new Request("GET", URL, [], null))
+
+    then:
+    response.body == null
+  }
+
+  void "streams a response of unknown length"() {
+    setup:
+    // A chunked response doesn't know its length up front.
+    reply = ResponseBody.create(JSON, -1, new Buffer().writeUtf8('{"id":"1"}'))
+
+    when:
+    def response = client.execute(new Request("GET", URL, [], null))
+
+    then:
+    response.body.length() == -1
+    response.body.mimeType() == "application/json"
+    response.body.in().text == '{"id":"1"}'
+  }
+}
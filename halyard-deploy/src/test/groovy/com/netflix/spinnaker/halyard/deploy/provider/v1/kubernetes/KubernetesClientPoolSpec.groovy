@@ -0,0 +1,148 @@
+/*
+ * Copyright 2017 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.halyard.deploy.provider.v1.kubernetes
+
+import com.netflix.spinnaker.halyard.config.model.v1.providers.kubernetes.KubernetesAccount
+import io.fabric8.kubernetes.client.KubernetesClient
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+class KubernetesClientPoolSpec extends Specification {
+  Path kubeconfig
+  List<KubernetesClient> built
+  CountDownLatch slowBuild
+  KubernetesClientPool pool
+
+  void setup() {
+    kubeconfig = Files.createTempFile("kubeconfig", ".yml")
+    built = Collections.synchronizedList([])
+    slowBuild = new CountDownLatch(1)
+    pool = new KubernetesClientPool() {
+      @Override
+      protected KubernetesClient buildClient(KubernetesAccount account) {
+        if (account.context == "slow") {
+          slowBuild.await(5, TimeUnit.SECONDS)
+        }
+
+        KubernetesClient client = Mock(KubernetesClient)
+        built.add(client)
+        return client
+      }
+    }
+    pool.evictedClientCloseDelaySeconds = 0
+  }
+
+  void cleanup() {
+    slowBuild.countDown()
+    pool.destroy()
+  }
+
+  KubernetesAccount account(String context) {
+    KubernetesAccount account = new KubernetesAccount()
+    account.kubeconfigFile = kubeconfig.toString()
+    account.context = context
+    return account
+  }
+
+  void "reuses the client for an unchanged account"() {
+    when:
+    def first = pool.getClient(account("a"))
+    def second = pool.getClient(account("a"))
+
+    then:
+    first.is(second)
+    built.size() == 1
+  }
+
+  void "replaces and closes the client when the kubeconfig changes"() {
+    setup:
+    def first = pool.getClient(account("a"))
+    def other = pool.getClient(account("b"))
+
+    when:
+    kubeconfig.toFile().setLastModified(kubeconfig.toFile().lastModified() + 10000)
+    def second = pool.getClient(account("a"))
+
+    then:
+    !first.is(second)
+    1 * first.close()
+    0 * other.close()
+    pool.size() == 2
+  }
+
+  void "closes the least recently used client past the size limit"() {
+    setup:
+    pool.maxCachedClients = 2
+    def a = pool.getClient(account("a"))
+    pool.getClient(account("b"))
+    pool.getClient(account("a"))
+
+    when:
+    pool.getClient(account("c"))
+
+    then:
+    1 * built[1].close()
+    0 * a.close()
+    pool.size() == 2
+  }
+
+  void "keeps an evicted client open until the close delay passes"() {
+    setup:
+    pool.evictedClientCloseDelaySeconds = 3600
+    def first = pool.getClient(account("a"))
+
+    when:
+    kubeconfig.toFile().setLastModified(kubeconfig.toFile().lastModified() + 10000)
+    pool.getClient(account("a"))
+
+    then:
+    0 * first.close()
+
+    when:
+    pool.destroy()
+
+    then:
+    1 * first.close()
+  }
+
+  void "builds a client without blocking other accounts"() {
+    setup:
+    pool.getClient(account("a"))
+    def slow = CompletableFuture.supplyAsync { pool.getClient(account("slow")) }
+
+    when:
+    def a = pool.getClient(account("a"))
+    def b = pool.getClient(account("b"))
+
+    then:
+    a.is(built[0])
+    !slow.isDone()
+    b != null
+
+    when:
+    slowBuild.countDown()
+
+    then:
+    slow.get(5, TimeUnit.SECONDS) != null
+    pool.size() == 3
+  }
+}
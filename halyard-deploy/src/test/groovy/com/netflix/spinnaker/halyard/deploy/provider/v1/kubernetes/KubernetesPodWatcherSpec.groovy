@@ -0,0 +1,191 @@
+/*
+ * Copyright 2017 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.halyard.deploy.provider.v1.kubernetes
+
+import com.netflix.spinnaker.halyard.core.error.v1.HalException
+import com.netflix.spinnaker.halyard.deploy.provider.v1.ProviderInterface
+import io.fabric8.kubernetes.api.model.ContainerState
+import io.fabric8.kubernetes.api.model.ContainerStateRunning
+import io.fabric8.kubernetes.api.model.ContainerStatus
+import io.fabric8.kubernetes.api.model.ListMeta
+import io.fabric8.kubernetes.api.model.ObjectMeta
+import io.fabric8.kubernetes.api.model.Pod
+import io.fabric8.kubernetes.api.model.PodList
+import io.fabric8.kubernetes.api.model.PodStatus
+import io.fabric8.kubernetes.client.KubernetesClient
+import io.fabric8.kubernetes.client.KubernetesClientException
+import io.fabric8.kubernetes.client.Watch
+import io.fabric8.kubernetes.client.Watcher
+import io.fabric8.kubernetes.client.dsl.ClientMixedOperation
+import io.fabric8.kubernetes.client.dsl.ClientNonNamespaceOperation
+import io.fabric8.kubernetes.client.dsl.FilterWatchListDeletable
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.TimeUnit
+
+class KubernetesPodWatcherSpec extends Specification {
+  static final String NAMESPACE = "spinnaker"
+  static final String LABEL = "load-balancer-spin-echo"
+
+  List<PodList> lists
+  List<String> watchedVersions
+  List<Watcher<Pod>> watchers
+  Watch watch
+  KubernetesClient client
+
+  void setup() {
+    lists = []
+    watchedVersions = Collections.synchronizedList([])
+    watchers = Collections.synchronizedList([])
+    watch = Mock(Watch)
+
+    FilterWatchListDeletable labeled = Stub(FilterWatchListDeletable) {
+      list() >> { lists.remove(0) }
+      watch(_, _) >> { String version, Watcher<Pod> watcher ->
+        watchedVersions.add(version)
+        watchers.add(watcher)
+        return watch
+      }
+    }
+
+    ClientNonNamespaceOperation namespaced = Stub(ClientNonNamespaceOperation) {
+      withLabel(LABEL, "true") >> labeled
+    }
+
+    ClientMixedOperation pods = Stub(ClientMixedOperation) {
+      inNamespace(NAMESPACE) >> namespaced
+    }
+
+    client = Stub(KubernetesClient) {
+      pods() >> pods
+    }
+  }
+
+  static Pod pod(String name, boolean ready, boolean running = ready, boolean deleting = false) {
+    ContainerState state = new ContainerState(running: running ? new ContainerStateRunning() : null)
+    return new Pod(
+        metadata: new ObjectMeta(name: name, deletionTimestamp: deleting ? "2017-05-01T00:00:00Z" : null),
+        status: new PodStatus(containerStatuses: [new ContainerStatus(ready: ready, state: state)]))
+  }
+
+  static PodList podList(String resourceVersion, List<Pod> pods) {
+    return new PodList(items: pods, metadata: new ListMeta(resourceVersion: resourceVersion))
+  }
+
+  CompletableFuture<List<Pod>> awaitReady() {
+    return KubernetesPodWatcher.await(client, NAMESPACE, LABEL, { pods -> pods.any { KubernetesPodWatcher.isReady(it) } })
+  }
+
+  void "watches from the resource version of the initial list"() {
+    setup:
+    lists << podList("10", [pod("echo-1", false)])
+
+    when:
+    def ready = awaitReady()
+
+    then:
+    watchedVersions == ["10"]
+    !ready.isDone()
+
+    when:
+    watchers[0].eventReceived(Watcher.Action.MODIFIED, pod("echo-1", true))
+
+    then:
+    ready.get(1, TimeUnit.SECONDS)*.metadata*.name == ["echo-1"]
+    1 * watch.close()
+  }
+
+  void "doesn't watch when the listed pods already satisfy the condition"() {
+    setup:
+    lists << podList("10", [pod("echo-1", true)])
+
+    when:
+    def ready = awaitReady()
+
+    then:
+    ready.isDone()
+    watchedVersions.isEmpty()
+  }
+
+  void "closes the watch when the deadline passes"() {
+    setup:
+    lists << podList("10", [pod("echo-1", false)])
+    def ready = awaitReady()
+
+    when:
+    try {
+      ProviderInterface.awaitDeadline(ready, System.currentTimeMillis() + 100, "echo to appear healthy")
+    } finally {
+      ready.cancel(true)
+    }
+
+    then:
+    HalException e = thrown()
+    e.problems.problems[0].message.contains("Timed out waiting for echo")
+    1 * watch.close()
+  }
+
+  void "lists and watches again when the watch is dropped"() {
+    setup:
+    lists << podList("10", [pod("echo-1", false)])
+    lists << podList("20", [pod("echo-1", false), pod("echo-2", false)])
+    def ready = awaitReady()
+
+    when:
+    watchers[0].onClose(new KubernetesClientException("too old resource version"))
+    new PollingConditions(timeout: 5).eventually {
+      assert watchedVersions.size() == 2
+    }
+
+    then:
+    watchedVersions == ["10", "20"]
+    !ready.isDone()
+
+    when:
+    watchers[1].eventReceived(Watcher.Action.MODIFIED, pod("echo-2", true))
+
+    then:
+    ready.get(1, TimeUnit.SECONDS)*.metadata*.name.sort() == ["echo-1", "echo-2"]
+  }
+
+  void "doesn't reopen a watch that was closed deliberately"() {
+    setup:
+    lists << podList("10", [pod("echo-1", false)])
+    def ready = awaitReady()
+
+    when:
+    ready.cancel(true)
+    watchers[0].onClose(null)
+    sleep(500)
+
+    then:
+    watchedVersions == ["10"]
+  }
+
+  void "counts a pod that is being deleted as running, but not as ready"() {
+    setup:
+    def terminating = pod("echo-1", true, true, true)
+    def stopped = pod("echo-2", false, false, true)
+
+    expect:
+    !KubernetesPodWatcher.isReady(terminating)
+    KubernetesPodWatcher.isRunning(terminating)
+    !KubernetesPodWatcher.isRunning(stopped)
+  }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2017 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.halyard.deploy.provider.v1.kubernetes
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.netflix.spinnaker.halyard.config.model.v1.providers.kubernetes.KubernetesAccount
+import com.netflix.spinnaker.halyard.deploy.config.v1.ConfigParser
+import com.netflix.spinnaker.halyard.deploy.deployment.v1.AccountDeploymentDetails
+import com.netflix.spinnaker.halyard.deploy.deployment.v1.DeploymentDetails
+import io.fabric8.kubernetes.api.model.Namespace
+import io.fabric8.kubernetes.api.model.Secret
+import io.fabric8.kubernetes.client.KubernetesClient
+import io.fabric8.kubernetes.client.dsl.ClientMixedOperation
+import io.fabric8.kubernetes.client.dsl.ClientNonNamespaceOperation
+import io.fabric8.kubernetes.client.dsl.ClientResource
+import org.yaml.snakeyaml.Yaml
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.nio.file.Path
+
+class KubernetesProviderInterfaceSpec extends Specification {
+  static final String NAMESPACE = "spinnaker"
+  static final String SECRET = "spin-clouddriver-config"
+  static final String DIGEST_ANNOTATION = "halyard.spinnaker.io/content-digest"
+
+  Path configFile
+  Secret existing
+  Namespace existingNamespace
+  List<Secret> created
+  List<Secret> replaced
+  List<Namespace> createdNamespaces
+  AccountDeploymentDetails<KubernetesAccount> details
+  KubernetesProviderInterface providerInterface
+
+  void setup() {
+    configFile = Files.createTempDirectory("secret").resolve("clouddriver.yml")
+    configFile.text = "server:\n  port: 7002\n"
+    created = []
+    replaced = []
+    createdNamespaces = []
+
+    ClientResource secret = Stub(ClientResource) {
+      get() >> { existing }
+      replace(_) >> { Secret s -> replaced.add(s); s }
+    }
+
+    ClientNonNamespaceOperation secretsInNamespace = Stub(ClientNonNamespaceOperation) {
+      withName(SECRET) >> secret
+      create(*_) >> { args -> created.addAll(args.flatten()); null }
+    }
+
+    ClientMixedOperation secrets = Stub(ClientMixedOperation) {
+      inNamespace(NAMESPACE) >> secretsInNamespace
+    }
+
+    ClientResource namespace = Stub(ClientResource) {
+      get() >> { existingNamespace }
+    }
+
+    ClientNonNamespaceOperation namespaces = Stub(ClientNonNamespaceOperation) {
+      withName(NAMESPACE) >> namespace
+      create(*_) >> { args -> createdNamespaces.addAll(args.flatten()); null }
+    }
+
+    KubernetesClient client = Stub(KubernetesClient) {
+      secrets() >> secrets
+      namespaces() >> namespaces
+    }
+
+    ConfigParser configParser = new ConfigParser()
+    configParser.yamlParser = new Yaml()
+    configParser.objectMapper = new ObjectMapper()
+
+    providerInterface = new KubernetesProviderInterface()
+    providerInterface.configParser = configParser
+    providerInterface.clientPool = Stub(KubernetesClientPool) {
+      getClient(_) >> client
+    }
+
+    details = newDetails()
+  }
+
+  static AccountDeploymentDetails<KubernetesAccount> newDetails() {
+    AccountDeploymentDetails<KubernetesAccount> details = new AccountDeploymentDetails<>(new DeploymentDetails())
+    details.account = new KubernetesAccount()
+    return details
+  }
+
+  void upsertSecret() {
+    providerInterface.upsertSecret(details, [configFile.toString()] as Set, SECRET, NAMESPACE)
+  }
+
+  void "creates a missing secret annotated with a digest of its contents"() {
+    when:
+    upsertSecret()
+
+    then:
+    created.size() == 1
+    replaced.isEmpty()
+    created[0].metadata.name == SECRET
+    created[0].metadata.annotations[DIGEST_ANNOTATION] != null
+    new String(Base64.decoder.decode(created[0].data["clouddriver.yml"])) == configFile.text
+  }
+
+  void "leaves a secret whose contents are unchanged alone"() {
+    setup:
+    upsertSecret()
+    existing = created[0]
+    created.clear()
+
+    when:
+    upsertSecret()
+
+    then:
+    created.isEmpty()
+    replaced.isEmpty()
+  }
+
+  void "replaces a secret whose contents changed"() {
+    setup:
+    upsertSecret()
+    existing = created[0]
+    created.clear()
+    configFile.text = "server:\n  port: 7003\n"
+
+    when:
+    upsertSecret()
+
+    then:
+    created.isEmpty()
+    replaced.size() == 1
+    replaced[0].metadata.annotations[DIGEST_ANNOTATION] != existing.metadata.annotations[DIGEST_ANNOTATION]
+    new String(Base64.decoder.decode(replaced[0].data["clouddriver.yml"])) == configFile.text
+  }
+
+  void "prepares each namespace once per deployment"() {
+    when:
+    upsertSecret()
+    upsertSecret()
+
+    then:
+    createdNamespaces.size() == 1
+    createdNamespaces[0].metadata.name == NAMESPACE
+    details.preparedNamespaces == [NAMESPACE] as Set
+
+    when:
+    details = newDetails()
+    upsertSecret()
+
+    then:
+    createdNamespaces.size() == 2
+  }
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright 2017 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.halyard.deploy.services.v1
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.netflix.spinnaker.halyard.config.config.v1.HalconfigDirectoryStructure
+import com.netflix.spinnaker.halyard.config.config.v1.HalconfigParser
+import com.netflix.spinnaker.halyard.config.model.v1.node.DeploymentConfiguration
+import com.netflix.spinnaker.halyard.config.model.v1.node.Halconfig
+import com.netflix.spinnaker.halyard.config.services.v1.DeploymentService
+import com.netflix.spinnaker.halyard.core.error.v1.HalException
+import com.netflix.spinnaker.halyard.core.registry.v1.BillOfMaterials
+import com.netflix.spinnaker.halyard.core.tasks.v1.DaemonTask
+import com.netflix.spinnaker.halyard.core.tasks.v1.DaemonTaskHandler
+import com.netflix.spinnaker.halyard.deploy.config.v1.ConfigParser
+import com.netflix.spinnaker.halyard.deploy.deployment.v1.EndpointFactory
+import com.netflix.spinnaker.halyard.deploy.spinnaker.v1.SpinnakerArtifact
+import com.netflix.spinnaker.halyard.deploy.spinnaker.v1.SpinnakerEndpoints
+import com.netflix.spinnaker.halyard.deploy.spinnaker.v1.profile.ProfileConfig
+import com.netflix.spinnaker.halyard.deploy.spinnaker.v1.profile.SpinnakerProfile
+import org.yaml.snakeyaml.Yaml
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.nio.file.Path
+
+class GenerateServiceSpec extends Specification {
+  static final String DEPLOYMENT = "default"
+
+  Path outputPath
+  Path userProfilePath
+  DeploymentConfiguration deploymentConfiguration
+  FakeEchoProfile echo
+  FakeOrcaProfile orca
+  GenerateService generateService
+  DaemonTask task
+
+  void setup() {
+    task = new DaemonTask()
+    task.newStage("generate")
+    DaemonTaskHandler.setTask(task)
+
+    outputPath = Files.createTempDirectory("generate-output")
+    userProfilePath = Files.createTempDirectory("generate-profiles")
+    deploymentConfiguration = new DeploymentConfiguration()
+
+    echo = new FakeEchoProfile()
+    echo.inputs = { DeploymentConfiguration d -> [d.timezone] }
+    echo.outputs = ["echo.yml": "echo: 1"]
+
+    orca = new FakeOrcaProfile()
+    orca.inputs = { DeploymentConfiguration d -> [d.metricStores] }
+    orca.outputs = ["orca.yml": "orca: 1"]
+
+    ConfigParser configParser = new ConfigParser()
+    configParser.yamlParser = new Yaml()
+    configParser.objectMapper = new ObjectMapper()
+
+    generateService = new GenerateService()
+    generateService.spinnakerOutputPath = outputPath.toString()
+    generateService.halyardVersion = "0.1.0"
+    generateService.halconfigPath = "/dev/null"
+    generateService.profileParallelism = 2
+    generateService.spinnakerProfiles = [echo, orca]
+    generateService.configParser = configParser
+    generateService.deploymentService = Stub(DeploymentService) {
+      getDeploymentConfiguration(DEPLOYMENT) >> { deploymentConfiguration }
+    }
+    generateService.endpointFactory = Stub(EndpointFactory) {
+      create(_) >> new SpinnakerEndpoints()
+    }
+    generateService.halconfigParser = Stub(HalconfigParser) {
+      getHalconfig() >> new Halconfig()
+    }
+    generateService.halconfigDirectoryStructure = Stub(HalconfigDirectoryStructure) {
+      getUserProfilePath(DEPLOYMENT) >> userProfilePath
+    }
+    generateService.artifactService = Stub(ArtifactService) {
+      getBillOfMaterials(DEPLOYMENT) >> Stub(BillOfMaterials) {
+        getArtifactVersion(_) >> "1.0.0"
+      }
+    }
+  }
+
+  void cleanup() {
+    DaemonTaskHandler.setTask(null)
+  }
+
+  void "writes every profile and records them in the manifest"() {
+    when:
+    generateService.generateConfig(DEPLOYMENT)
+
+    then:
+    outputPath.resolve("echo.yml").text == "echo: 1"
+    outputPath.resolve("orca.yml").text == "orca: 1"
+    Files.isRegularFile(outputPath.resolve(".generate-manifest.yml"))
+    echo.generated == 1
+    orca.generated == 1
+  }
+
+  void "regenerates only the profiles whose inputs changed"() {
+    setup:
+    generateService.generateConfig(DEPLOYMENT)
+
+    when:
+    generateService.generateConfig(DEPLOYMENT)
+
+    then:
+    echo.generated == 1
+    orca.generated == 1
+
+    when:
+    deploymentConfiguration.timezone = "Europe/London"
+    generateService.generateConfig(DEPLOYMENT)
+
+    then:
+    echo.generated == 2
+    orca.generated == 1
+  }
+
+  void "regenerates a profile whose output was modified"() {
+    setup:
+    generateService.generateConfig(DEPLOYMENT)
+    outputPath.resolve("orca.yml").text = "orca: edited"
+
+    when:
+    generateService.generateConfig(DEPLOYMENT)
+
+    then:
+    echo.generated == 1
+    orca.generated == 2
+    outputPath.resolve("orca.yml").text == "orca: 1"
+  }
+
+  void "deletes outputs that are no longer generated"() {
+    setup:
+    orca.outputs = ["orca.yml": "orca: 1", "orca-local.yml": "local: true"]
+    generateService.generateConfig(DEPLOYMENT)
+    assert Files.isRegularFile(outputPath.resolve("orca-local.yml"))
+
+    when:
+    orca.outputs = ["orca.yml": "orca: 1"]
+    deploymentConfiguration.metricStores.period = 60
+    generateService.generateConfig(DEPLOYMENT)
+
+    then:
+    orca.generated == 2
+    !Files.exists(outputPath.resolve("orca-local.yml"))
+    outputPath.resolve("orca.yml").text == "orca: 1"
+  }
+
+  void "starts from a clean directory after a run fails part way through writing"() {
+    setup:
+    generateService.generateConfig(DEPLOYMENT)
+    // A file where a directory is expected makes the write of orca's output fail.
+    outputPath.resolve("blocked").text = "not a directory"
+    orca.outputs = ["blocked/orca.yml": "orca: 2"]
+    deploymentConfiguration.metricStores.period = 60
+
+    when:
+    generateService.generateConfig(DEPLOYMENT)
+
+    then:
+    thrown(HalException)
+    !Files.exists(outputPath.resolve(".generate-manifest.yml"))
+
+    when:
+    orca.outputs = ["orca.yml": "orca: 2"]
+    generateService.generateConfig(DEPLOYMENT)
+
+    then:
+    echo.generated == 2
+    orca.generated == 3
+    !Files.exists(outputPath.resolve("blocked"))
+    outputPath.resolve("echo.yml").text == "echo: 1"
+    outputPath.resolve("orca.yml").text == "orca: 2"
+    Files.isRegularFile(outputPath.resolve(".generate-manifest.yml"))
+  }
+
+  void "keeps each profile's events together while generating them concurrently"() {
+    setup:
+    echo.messages = ["echo 1", "echo 2", "echo 3"]
+    orca.messages = ["orca 1", "orca 2", "orca 3"]
+
+    when:
+    generateService.generateConfig(DEPLOYMENT)
+
+    then:
+    profileEvents() == ["echo 1", "echo 2", "echo 3", "orca 1", "orca 2", "orca 3"]
+  }
+
+  void "reports a profile that fails to generate, and writes nothing"() {
+    setup:
+    echo.messages = ["echo 1", "echo 2"]
+    orca.messages = ["orca 1"]
+    orca.failure = new RuntimeException("boom")
+
+    when:
+    generateService.generateConfig(DEPLOYMENT)
+
+    then:
+    HalException e = thrown()
+    e.problems.problems[0].message.contains("orca")
+    e.problems.problems[0].message.contains("boom")
+    profileEvents() == ["echo 1", "echo 2", "orca 1"]
+    !Files.exists(outputPath.resolve("echo.yml"))
+    !Files.exists(outputPath.resolve(".generate-manifest.yml"))
+  }
+
+  List<String> profileEvents() {
+    return task.stages.collectMany { it.events*.message }.findAll { it ==~ /(echo|orca) \d/ }
+  }
+
+  static class FakeProfile extends SpinnakerProfile {
+    SpinnakerArtifact artifact
+    Closure<List<Object>> inputs
+    Map<String, String> outputs
+    List<String> messages = []
+    RuntimeException failure
+    int generated = 0
+
+    @Override
+    SpinnakerArtifact getArtifact() {
+      return artifact
+    }
+
+    @Override
+    String getProfileFileName() {
+      return outputs.keySet().first()
+    }
+
+    @Override
+    protected String commentPrefix() {
+      return "# "
+    }
+
+    @Override
+    List<Object> getConfigInputs(DeploymentConfiguration deploymentConfiguration) {
+      return inputs(deploymentConfiguration)
+    }
+
+    @Override
+    ProfileConfig getFullConfig(String deploymentName, SpinnakerEndpoints endpoints) {
+      generated++
+      messages.each {
+        DaemonTaskHandler.log(it)
+        // Give the other profile a chance to log in between.
+        sleep(20)
+      }
+
+      if (failure != null) {
+        throw failure
+      }
+
+      ProfileConfig config = new ProfileConfig().setPrimaryConfigFile(profileFileName)
+      outputs.each { k, v -> config.setConfig(k, v) }
+      return config
+    }
+  }
+
+  static class FakeEchoProfile extends FakeProfile {
+    FakeEchoProfile() {
+      artifact = SpinnakerArtifact.ECHO
+    }
+  }
+
+  static class FakeOrcaProfile extends FakeProfile {
+    FakeOrcaProfile() {
+      artifact = SpinnakerArtifact.ORCA
+    }
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2017 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.halyard.controllers.v1;
+
+import com.netflix.spinnaker.halyard.config.config.v1.HalconfigParser;
+import com.netflix.spinnaker.halyard.config.services.v1.VersionsService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Tags reads whose result only depends on the halconfig or the published versions with an ETag, and answers a
+ * request carrying a matching If-None-Match with a 304 before any task is submitted, so nothing is re-read, re-built,
+ * re-validated or sent.
+ *
+ * Validated reads are tagged apart from unvalidated ones, and also change tag with the published versions, which
+ * validators check the configured versions against.
+ */
+@Component
+public class ConditionalRequestFilter extends OncePerRequestFilter {
+  @Autowired
+  HalconfigParser halconfigParser;
+
+  @Autowired
+  VersionsService versionsService;
+
+  @Override
+  protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+      throws ServletException, IOException {
+    String tag = request.getMethod().equals("GET") ? entityTag(request) : null;
+    if (tag != null) {
+      response.setHeader("ETag", tag);
+      String ifNoneMatch = request.getHeader("If-None-Match");
+      if (ifNoneMatch != null && Arrays.stream(ifNoneMatch.split(",")).anyMatch(t -> t.trim().equals(tag))) {
+        response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        return;
+      }
+    }
+
+    filterChain.doFilter(request, response);
+  }
+
+  private String entityTag(HttpServletRequest request) {
+    try {
+      return computeEntityTag(request);
+    } catch (RuntimeException e) {
+      // e.g. an unparseable halconfig, which the request itself then reports.
+      return null;
+    }
+  }
+
+  private String computeEntityTag(HttpServletRequest request) {
+    String path = request.getRequestURI();
+    if (path.equals("/v1/versions/") || path.equals("/v1/versions/latest/")) {
+      return "\"versions-" + versionsService.getEntityTag() + "\"";
+    }
+
+    // Diffs & service details describe what is deployed, not just what is configured.
+    boolean configRead = path.startsWith("/v1/config/") && !path.contains("/configDiff/") && !path.contains("/details/");
+    if (!configRead) {
+      return null;
+    }
+
+    String halconfigTag = halconfigParser.getEntityTag();
+    if (halconfigTag == null) {
+      return null;
+    }
+
+    if (Boolean.parseBoolean(request.getParameter("validate"))) {
+      return "\"validated-" + halconfigTag + "-" + versionsService.getEntityTag() + "\"";
+    } else {
+      return "\"config-" + halconfigTag + "\"";
+    }
+  }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2017 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.netflix.spinnaker.halyard.controllers.v1
+
+import com.netflix.spinnaker.halyard.config.config.v1.HalconfigParser
+import com.netflix.spinnaker.halyard.config.config.v1.StrictObjectMapper
+import com.netflix.spinnaker.halyard.config.services.v1.VersionsService
+import com.netflix.spinnaker.halyard.core.tasks.v1.DaemonTaskHandler
+import org.yaml.snakeyaml.Yaml
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import javax.servlet.FilterChain
+import javax.servlet.http.HttpServletRequest
+import javax.servlet.http.HttpServletResponse
+import java.nio.file.Files
+import java.util.function.Supplier
+
+class ConditionalRequestFilterSpec extends Specification {
+  static final String ACCOUNTS = "/v1/config/deployments/default/providers/kubernetes/accounts/"
+
+  HalconfigParser halconfigParser
+  ConditionalRequestFilter filter
+  Map<String, String> headers
+  Integer status
+  int forwarded
+  String versionsTag = "1a2b"
+
+  void setup() {
+    File halconfig = Files.createTempDirectory("halconfig").resolve("config").toFile()
+    halconfig.text = "halyardVersion: 0.1.0\ncurrentDeployment: default\n"
+
+    halconfigParser = new HalconfigParser()
+    halconfigParser.halconfigPath = halconfig.path
+    halconfigParser.halyardVersion = "0.1.0"
+    halconfigParser.objectMapper = new StrictObjectMapper()
+    halconfigParser.yamlParser = new Yaml()
+
+    filter = new ConditionalRequestFilter()
+    filter.halconfigParser = halconfigParser
+    filter.versionsService = Stub(VersionsService) {
+      getEntityTag() >> { versionsTag }
+    }
+  }
+
+  // Sends a request through the filter, recording the headers & status it responds with, and whether it was passed on.
+  void send(String method, String path, Map<String, String> parameters = [:], String ifNoneMatch = null) {
+    headers = [:]
+    status = null
+    forwarded = 0
+
+    HttpServletRequest request = Stub(HttpServletRequest) {
+      getMethod() >> method
+      getRequestURI() >> path
+      getParameter(_) >> { String name -> parameters[name] }
+      getHeader("If-None-Match") >> ifNoneMatch
+    }
+
+    HttpServletResponse response = Stub(HttpServletResponse) {
+      setHeader(_, _) >> { String name, String value -> headers[name] = value }
+      setStatus(_) >> { int code -> status = code }
+    }
+
+    filter.doFilterInternal(request, response, { req, res -> forwarded++ } as FilterChain)
+  }
+
+  void "answers an unvalidated config read with a matching tag without running it"() {
+    when:
+    send("GET", ACCOUNTS, [validate: "false"])
+    String tag = headers.ETag
+
+    then:
+    tag != null
+    forwarded == 1
+
+    when:
+    send("GET", ACCOUNTS, [validate: "false"], tag)
+
+    then:
+    status == HttpServletResponse.SC_NOT_MODIFIED
+    forwarded == 0
+  }
+
+  void "tags validated config reads apart from unvalidated ones, and by the published versions"() {
+    when:
+    send("GET", ACCOUNTS, [validate: "false"])
+    String unvalidated = headers.ETag
+    send("GET", ACCOUNTS, [validate: "true"])
+    String validated = headers.ETag
+
+    then:
+    validated != null
+    validated != unvalidated
+
+    when:
+    send("GET", ACCOUNTS, [validate: "true"], validated)
+
+    then:
+    status == HttpServletResponse.SC_NOT_MODIFIED
+    forwarded == 0
+
+    when:
+    versionsTag = "3c4d"
+    send("GET", ACCOUNTS, [validate: "true"], validated)
+
+    then:
+    headers.ETag != validated
+    status == null
+    forwarded == 1
+  }
+
+  void "tags reads of the published versions"() {
+    when:
+    send("GET", "/v1/versions/", [:], '"versions-1a2b"')
+
+    then:
+    status == HttpServletResponse.SC_NOT_MODIFIED
+    forwarded == 0
+  }
+
+  @Unroll
+  void "never tags a #method of #path with #parameters"() {
+    setup:
+    // Would be answered with a 304, were the request tagged like an unvalidated config read.
+    String configTag = '"config-' + halconfigParser.entityTag + '"'
+
+    when:
+    send(method, path, parameters, configTag)
+
+    then:
+    !headers.containsKey("ETag")
+    status == null
+    forwarded == 1
+
+    where:
+    method   | path                                                       | parameters
+    "GET"    | "/v1/config/deployments/default/configDiff/"               | [validate: "false"]
+    "GET"    | "/v1/config/deployments/default/details/spin-clouddriver/" | [validate: "false"]
+    "PUT"    | ACCOUNTS                                                   | [validate: "false"]
+    "POST"   | ACCOUNTS                                                   | [validate: "false"]
+    "DELETE" | ACCOUNTS + "my-account/"                                   | [validate: "false"]
+  }
+
+  void "changes the tag when the halconfig is written"() {
+    setup:
+    send("GET", ACCOUNTS, [validate: "false"])
+    String before = headers.ETag
+
+    when:
+    DaemonTaskHandler.runDetached(null, [], {
+      halconfigParser.getHalconfig().currentDeployment = "other"
+      halconfigParser.saveConfig()
+    } as Supplier)
+    send("GET", ACCOUNTS, [validate: "false"], before)
+
+    then:
+    headers.ETag != null
+    headers.ETag != before
+    status == null
+    forwarded == 1
+  }
+}